@@ -0,0 +1,195 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import io.cdap.cdap.api.metrics.MetricsContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Stops sending requests to a destination while Cloud Monitoring is degraded, so that writes do not block on
+ * requests that are likely to fail or time out. See {@link CircuitBreakerConfig} for the rules that drive the
+ * transitions between the {@link State states}.
+ * <p>
+ * The outcome of the last requests is kept in a ring buffer. Requests rejected for non transient reasons, such as
+ * invalid points, are successes for the breaker since the backend did answer.
+ * This class is thread safe.
+ */
+public class CircuitBreaker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+  private static final String STATE_METRIC = "gcp.monitoring.circuit.state";
+  private static final String OPENED_METRIC = "gcp.monitoring.circuit.opened";
+
+  /**
+   * State of a breaker, with the value of its state metric.
+   */
+  public enum State {
+    CLOSED(0),
+    HALF_OPEN(1),
+    OPEN(2);
+
+    private final int metricValue;
+
+    State(int metricValue) {
+      this.metricValue = metricValue;
+    }
+  }
+
+  private final String name;
+  private final CircuitBreakerConfig config;
+  @Nullable
+  private final MetricsContext metricsContext;
+  // Outcome of the last requests, true for failures
+  private final boolean[] outcomes;
+  private int outcomeCount;
+  private int nextOutcome;
+  private int failures;
+  private State state = State.CLOSED;
+  private long openUntilMillis;
+  private int probesStarted;
+  private int probesSucceeded;
+
+  public CircuitBreaker(String name, CircuitBreakerConfig config, @Nullable MetricsContext metricsContext) {
+    this.name = name;
+    this.config = config;
+    this.metricsContext = metricsContext;
+    this.outcomes = new boolean[config.getWindowSize()];
+  }
+
+  public CircuitBreakerConfig getConfig() {
+    return config;
+  }
+
+  /**
+   * Returns the current state, moving from open to half-open if the open period is over.
+   */
+  public synchronized State getState(long nowMillis) {
+    if (state == State.OPEN && nowMillis >= openUntilMillis) {
+      transition(State.HALF_OPEN, nowMillis);
+    }
+    return state;
+  }
+
+  /**
+   * Returns true if a request can be sent. In half-open state, only a limited number of probe requests are allowed.
+   * Every allowed request must be followed by a call to {@link #onResult}.
+   */
+  public synchronized boolean allowRequest(long nowMillis) {
+    if (!config.isEnabled()) {
+      return true;
+    }
+    switch (getState(nowMillis)) {
+      case CLOSED:
+        return true;
+      case HALF_OPEN:
+        if (probesStarted < config.getProbeRequests()) {
+          probesStarted++;
+          return true;
+        }
+        return false;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Records the outcome of a request.
+   *
+   * @param failed        whether the request failed with a transient error
+   * @param latencyMillis time the request took
+   * @param nowMillis     the current time
+   */
+  public synchronized void onResult(boolean failed, long latencyMillis, long nowMillis) {
+    if (!config.isEnabled()) {
+      return;
+    }
+    boolean failure = failed || latencyMillis > config.getSlowRequestMillis();
+    switch (state) {
+      case HALF_OPEN:
+        if (failure) {
+          transition(State.OPEN, nowMillis);
+        } else if (++probesSucceeded >= config.getProbeRequests()) {
+          transition(State.CLOSED, nowMillis);
+        }
+        break;
+      case CLOSED:
+        record(failure);
+        if (outcomeCount >= config.getMinimumRequests()
+          && failures >= config.getFailureRateThreshold() * outcomeCount) {
+          transition(State.OPEN, nowMillis);
+        }
+        break;
+      default:
+        // Result of a request started before the breaker opened
+        break;
+    }
+  }
+
+  private void record(boolean failure) {
+    if (outcomeCount == outcomes.length) {
+      if (outcomes[nextOutcome]) {
+        failures--;
+      }
+    } else {
+      outcomeCount++;
+    }
+    outcomes[nextOutcome] = failure;
+    if (failure) {
+      failures++;
+    }
+    nextOutcome = (nextOutcome + 1) % outcomes.length;
+  }
+
+  private void transition(State newState, long nowMillis) {
+    State oldState = state;
+    state = newState;
+    switch (newState) {
+      case OPEN:
+        openUntilMillis = nowMillis + TimeUnit.SECONDS.toMillis(config.getOpenSeconds());
+        LOG.warn("Circuit breaker of {} opened after {} failed or slow requests out of {}, "
+                   + "requests are suspended for {} seconds", name, failures, outcomeCount, config.getOpenSeconds());
+        if (metricsContext != null) {
+          metricsContext.increment(OPENED_METRIC, 1);
+        }
+        break;
+      case HALF_OPEN:
+        probesStarted = 0;
+        probesSucceeded = 0;
+        LOG.info("Circuit breaker of {} is half-open, probing with {} requests", name, config.getProbeRequests());
+        break;
+      default:
+        LOG.info("Circuit breaker of {} closed, moving from {}", name, oldState);
+        break;
+    }
+    // Start over with a clean window whatever the state
+    outcomeCount = 0;
+    nextOutcome = 0;
+    failures = 0;
+    if (metricsContext != null) {
+      metricsContext.gauge(STATE_METRIC, newState.metricValue);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CircuitBreaker{name=" + name + '}';
+  }
+}
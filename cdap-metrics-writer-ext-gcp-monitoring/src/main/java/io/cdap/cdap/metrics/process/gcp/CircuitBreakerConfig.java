@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import java.util.Locale;
+import javax.annotation.Nullable;
+
+/**
+ * Settings of the {@link CircuitBreaker} of each destination.
+ * Example below.
+ * {"enabled": true, "windowSize": 20, "minimumRequests": 5, "failureRateThreshold": 0.5,
+ *  "slowRequestMillis": 10000, "openSeconds": 60, "probeRequests": 1, "openPolicy": "buffer"}
+ * <p>
+ * The breaker opens when, among the last windowSize requests and with at least minimumRequests of them, the
+ * fraction of requests that failed with a transient error or took more than slowRequestMillis reaches
+ * failureRateThreshold. While open, nothing is sent for openSeconds, then probeRequests requests are let through
+ * and the breaker closes if they all succeed.
+ * The openPolicy tells what happens to new values while the breaker is open: "buffer" keeps accumulating them, and
+ * they are sent once the breaker lets requests through again, and "shed" drops them. Either way, the series are
+ * neither converted nor queued while the breaker is open.
+ */
+public class CircuitBreakerConfig {
+
+  public static final CircuitBreakerConfig DEFAULT = new CircuitBreakerConfig(null, null, null, null, null, null,
+                                                                              null, null);
+
+  private static final int DEFAULT_WINDOW_SIZE = 20;
+  private static final int DEFAULT_MINIMUM_REQUESTS = 5;
+  private static final double DEFAULT_FAILURE_RATE_THRESHOLD = 0.5;
+  private static final long DEFAULT_SLOW_REQUEST_MILLIS = 10000;
+  private static final long DEFAULT_OPEN_SECONDS = 60;
+  private static final int DEFAULT_PROBE_REQUESTS = 1;
+
+  /**
+   * What to do with the series written while the breaker is open.
+   */
+  public enum OpenPolicy {
+    BUFFER,
+    SHED
+  }
+
+  private final Boolean enabled;
+  private final Integer windowSize;
+  private final Integer minimumRequests;
+  private final Double failureRateThreshold;
+  private final Long slowRequestMillis;
+  private final Long openSeconds;
+  private final Integer probeRequests;
+  private final String openPolicy;
+
+  public CircuitBreakerConfig(@Nullable Boolean enabled, @Nullable Integer windowSize,
+                              @Nullable Integer minimumRequests, @Nullable Double failureRateThreshold,
+                              @Nullable Long slowRequestMillis, @Nullable Long openSeconds,
+                              @Nullable Integer probeRequests, @Nullable String openPolicy) {
+    this.enabled = enabled;
+    this.windowSize = windowSize;
+    this.minimumRequests = minimumRequests;
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowRequestMillis = slowRequestMillis;
+    this.openSeconds = openSeconds;
+    this.probeRequests = probeRequests;
+    this.openPolicy = openPolicy;
+  }
+
+  public boolean isEnabled() {
+    return enabled == null || enabled;
+  }
+
+  public int getWindowSize() {
+    return windowSize == null ? DEFAULT_WINDOW_SIZE : Math.max(1, windowSize);
+  }
+
+  public int getMinimumRequests() {
+    return minimumRequests == null ? DEFAULT_MINIMUM_REQUESTS : Math.max(1, minimumRequests);
+  }
+
+  public double getFailureRateThreshold() {
+    return failureRateThreshold == null ? DEFAULT_FAILURE_RATE_THRESHOLD : failureRateThreshold;
+  }
+
+  public long getSlowRequestMillis() {
+    return slowRequestMillis == null ? DEFAULT_SLOW_REQUEST_MILLIS : slowRequestMillis;
+  }
+
+  public long getOpenSeconds() {
+    return openSeconds == null ? DEFAULT_OPEN_SECONDS : openSeconds;
+  }
+
+  public int getProbeRequests() {
+    return probeRequests == null ? DEFAULT_PROBE_REQUESTS : Math.max(1, probeRequests);
+  }
+
+  /**
+   * @throws IllegalArgumentException if the open policy is not valid
+   */
+  public OpenPolicy getOpenPolicy() {
+    if (openPolicy == null) {
+      return OpenPolicy.BUFFER;
+    }
+    try {
+      return OpenPolicy.valueOf(openPolicy.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(String.format("Invalid circuit breaker open policy '%s'.", openPolicy), e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("CircuitBreakerConfig{enabled=").append(enabled);
+    sb.append(", windowSize=").append(windowSize);
+    sb.append(", minimumRequests=").append(minimumRequests);
+    sb.append(", failureRateThreshold=").append(failureRateThreshold);
+    sb.append(", slowRequestMillis=").append(slowRequestMillis);
+    sb.append(", openSeconds=").append(openSeconds);
+    sb.append(", probeRequests=").append(probeRequests);
+    sb.append(", openPolicy=").append(openPolicy);
+    sb.append('}');
+    return sb.toString();
+  }
+}
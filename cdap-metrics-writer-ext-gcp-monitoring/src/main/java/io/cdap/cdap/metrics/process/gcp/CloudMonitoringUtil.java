@@ -17,6 +17,7 @@
 package io.cdap.cdap.metrics.process.gcp;
 
 import com.google.api.Metric;
+import com.google.api.MetricDescriptor;
 import com.google.api.MonitoredResource;
 import com.google.cloud.monitoring.v3.MetricServiceClient;
 import com.google.common.collect.Lists;
@@ -41,7 +42,7 @@ import java.util.OptionalDouble;
 public final class CloudMonitoringUtil {
 
   // Max time series per request - Limit is 200 based on https://cloud.google.com/monitoring/quotas
-  private static final int MAX_TIMESERIES_PER_REQUEST = 150;
+  static final int MAX_TIMESERIES_PER_REQUEST = 150;
 
   private CloudMonitoringUtil() {
 
@@ -62,37 +63,78 @@ public final class CloudMonitoringUtil {
 
     List<TimeSeries> timeSeriesList = new ArrayList<>();
     for (Map.Entry<TimeSeriesMetadata, List<Long>> entry : timeSeries.entrySet()) {
-      TimeSeriesMetadata metadata = entry.getKey();
-      long value = getAggregateValue(entry.getValue(), metadata.getAggregation());
-      TimeInterval interval = TimeInterval.newBuilder()
-        .setStartTime(Timestamps.fromSeconds(metadata.getMetricKind() == MetricType.GAUGE ?
-                                               endTimeSeconds : startTimeSeconds))
-        .setEndTime(Timestamps.fromSeconds(endTimeSeconds))
-        .build();
-
-      TypedValue typedValue = TypedValue.newBuilder().setInt64Value(value).build();
-      Point point = Point.newBuilder().setInterval(interval).setValue(typedValue).build();
-      // Prepares the metric descriptor
-      Metric metric = Metric.newBuilder()
-        .setType(metadata.getMetricType())
-        .putAllLabels(metadata.getMetricLabels())
-        .build();
-      // Prepares the monitored resource descriptor
-      MonitoredResource resource = MonitoredResource.newBuilder()
-        .setType(metadata.getResourceType())
-        .putAllLabels(metadata.getResourceLabels())
-        .build();
-      // Prepares the time series
-      TimeSeries series = TimeSeries.newBuilder()
-        .setMetric(metric)
-        .setResource(resource)
-        .addAllPoints(Collections.singletonList(point))
-        .build();
-      timeSeriesList.add(series);
+      timeSeriesList.add(convertToMonitoringTimeSeries(entry.getKey(), entry.getValue(), startTimeSeconds,
+                                                       endTimeSeconds));
     }
     return timeSeriesList;
   }
 
+  /**
+   * Convert a CDAP {@link TimeSeriesMetadata} and its values to a {@link TimeSeries} with a single point.
+   *
+   * @param metadata         {@link TimeSeriesMetadata} of the series
+   * @param values           values to aggregate into the point
+   * @param startTimeSeconds start timestamp
+   * @param endTimeSeconds   end timestamp
+   * @return {@link TimeSeries} value
+   */
+  public static TimeSeries convertToMonitoringTimeSeries(TimeSeriesMetadata metadata, List<Long> values,
+                                                         long startTimeSeconds, long endTimeSeconds) {
+    long value = getAggregateValue(values, metadata.getAggregation());
+    TimeInterval interval = TimeInterval.newBuilder()
+      .setStartTime(Timestamps.fromSeconds(metadata.getMetricKind() == MetricType.GAUGE ?
+                                             endTimeSeconds : startTimeSeconds))
+      .setEndTime(Timestamps.fromSeconds(endTimeSeconds))
+      .build();
+
+    TypedValue typedValue = TypedValue.newBuilder().setInt64Value(value).build();
+    Point point = Point.newBuilder().setInterval(interval).setValue(typedValue).build();
+    // Prepares the metric descriptor
+    Metric metric = Metric.newBuilder()
+      .setType(metadata.getMetricType())
+      .putAllLabels(metadata.getMetricLabels())
+      .build();
+    // Prepares the monitored resource descriptor
+    MonitoredResource resource = MonitoredResource.newBuilder()
+      .setType(metadata.getResourceType())
+      .putAllLabels(metadata.getResourceLabels())
+      .build();
+    // Prepares the time series
+    return TimeSeries.newBuilder()
+      .setMetric(metric)
+      .setResource(resource)
+      .addAllPoints(Collections.singletonList(point))
+      .build();
+  }
+
+  /**
+   * Convert a CDAP {@link TimeSeriesMetadata} and its per second rate to a DOUBLE GAUGE {@link TimeSeries} with a
+   * single point.
+   *
+   * @param metadata       {@link TimeSeriesMetadata} of the series
+   * @param rate           rate of the series, see {@link RateTracker}
+   * @param endTimeSeconds end timestamp
+   * @return {@link TimeSeries} value
+   */
+  public static TimeSeries convertRateToMonitoringTimeSeries(TimeSeriesMetadata metadata, double rate,
+                                                             long endTimeSeconds) {
+    TimeInterval interval = TimeInterval.newBuilder()
+      .setEndTime(Timestamps.fromSeconds(endTimeSeconds))
+      .build();
+    Point point = Point.newBuilder()
+      .setInterval(interval)
+      .setValue(TypedValue.newBuilder().setDoubleValue(rate).build())
+      .build();
+    return TimeSeries.newBuilder()
+      .setMetric(Metric.newBuilder().setType(metadata.getMetricType()).putAllLabels(metadata.getMetricLabels()))
+      .setResource(MonitoredResource.newBuilder().setType(metadata.getResourceType())
+                     .putAllLabels(metadata.getResourceLabels()))
+      .setMetricKind(MetricDescriptor.MetricKind.GAUGE)
+      .setValueType(MetricDescriptor.ValueType.DOUBLE)
+      .addPoints(point)
+      .build();
+  }
+
   /**
    * Send the {@link TimeSeries} list to cloud monitoring using {@link MetricServiceClient}
    *
@@ -114,7 +156,7 @@ public final class CloudMonitoringUtil {
     }
   }
 
-  private static long getAggregateValue(List<Long> timeSeriesValues, AggregationType aggregation) {
+  static long getAggregateValue(List<Long> timeSeriesValues, AggregationType aggregation) {
     switch (aggregation) {
       case MEAN:
         OptionalDouble average = timeSeriesValues.stream().mapToLong(value -> value).average();
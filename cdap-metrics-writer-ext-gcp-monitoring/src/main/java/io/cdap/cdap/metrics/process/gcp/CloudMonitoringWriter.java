@@ -19,31 +19,61 @@ package io.cdap.cdap.metrics.process.gcp;
 import com.google.cloud.monitoring.v3.MetricServiceClient;
 import com.google.cloud.monitoring.v3.MetricServiceSettings;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
-import com.google.monitoring.v3.TimeSeries;
 import io.cdap.cdap.api.metrics.MetricType;
 import io.cdap.cdap.api.metrics.MetricValue;
 import io.cdap.cdap.api.metrics.MetricValues;
+import io.cdap.cdap.api.metrics.MetricsContext;
 import io.cdap.cdap.api.metrics.MetricsWriter;
 import io.cdap.cdap.api.metrics.MetricsWriterContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 
 /**
  * {@link MetricsWriter} implementation for writing metrics to Google Cloud Monitoring
+ * <p>
+ * {@link #write} can be called by several threads concurrently. The values are added to the series tables of the
+ * destinations, then the first caller that finds no flush in progress sends the content of the tables, while the
+ * other callers return right away and leave their values to that flush or the next one.
+ * <p>
+ * With several destinations, each destination is sent on a thread of its own and the flush does not wait for the
+ * sends to complete. A destination whose previous send is still in progress keeps its values in its table until a
+ * flush finds it done, with a time window that starts where its previous one ended, so that a slow project does not
+ * delay the others. A failed send is reported by the next write.
+ * <p>
+ * If a checkpoint file is configured, the end time of the last write is saved to it in the background at most once
+ * per write interval, and the per series state of the lanes periodically and on close, see {@link WriterCheckpoint}.
+ * On initialization only the header of the checkpoint is read, so that the first write continues the time window of
+ * the previous writer right away, while the series state is read in the background and restored by the first flush
+ * after it is read.
  */
 public class CloudMonitoringWriter implements MetricsWriter {
 
@@ -59,14 +89,87 @@ public class CloudMonitoringWriter implements MetricsWriter {
   private static final String WRITE_FREQUENCY_SECONDS = "write.frequency.seconds";
   private static final String MONITORING_ENDPOINT = "monitoring.endpoint";
   private static final String CONFIG_FILE_PATH = "config.file.path";
+  private static final String SEND_PARALLELISM = "send.parallelism";
+  private static final String PRIORITY_SEND_PARALLELISM = "priority.send.parallelism";
+  private static final String CAPTURE_FILE_PATH = "capture.file.path";
+  private static final String CAPTURE_MAX_BYTES = "capture.max.bytes";
+  private static final String COST_REPORT_INTERVAL_SECONDS = "cost.report.interval.seconds";
+  private static final String INSTANCE_INDEX = "instance.index";
+  private static final String INSTANCE_COUNT = "instance.count";
+  private static final String PARTITION_MODE = "partition.mode";
+  private static final String PARTITION_LABEL = "partition.label";
+  private static final String PARTITION_INPUTS_REPLICATED = "partition.inputs.replicated";
+  private static final String CHECKPOINT_FILE_PATH = "checkpoint.file.path";
+  private static final String CHECKPOINT_INTERVAL_SECONDS = "checkpoint.interval.seconds";
+  private static final String FIRST_WRITE_METRIC = "gcp.monitoring.restart.first.write.ms";
   private static final String WRITER_NAME = "google_cloud_monitoring_writer";
+  private static final int DEFAULT_SEND_PARALLELISM = 8;
+  private static final int DEFAULT_PRIORITY_SEND_PARALLELISM = 2;
+  private static final long DEFAULT_CAPTURE_MAX_BYTES = 1024L * 1024 * 1024;
+  private static final int DEFAULT_COST_REPORT_INTERVAL_SECONDS = 3600;
+  private static final int DEFAULT_CHECKPOINT_INTERVAL_SECONDS = 60;
 
   private final AtomicLong lastEndTime = new AtomicLong(-1);
+  // Held by the thread sending the series tables
+  private final Lock flushLock = new ReentrantLock();
+  private final List<MonitoringDestination> allDestinations = new ArrayList<>();
+  // Clients by endpoint, shared by all destinations on the same endpoint
+  private final Map<String, MetricServiceClient> metricServiceClients = new HashMap<>();
+  // Destinations of the routing rules
+  private final Map<RoutingRule, MonitoringDestination> ruleDestinations = new HashMap<>();
+  // The fields below are only accessed while holding the flush lock
+  // Sends in progress or not collected yet, by destination
+  private final Map<MonitoringDestination, Future<?>> pendingSends = new HashMap<>();
+  // End time of the last window of each destination
+  private final Map<MonitoringDestination, Long> destinationEndTimes = new HashMap<>();
+  // Series state of each destination in the last checkpoint, saved again while the destination is sending
+  private final Map<MonitoringDestination, List<WriterCheckpoint.SeriesState>> savedStates = new HashMap<>();
+  // Series state read from the checkpoint and not restored yet, restored once the destination is not sending
+  private final Map<MonitoringDestination, List<WriterCheckpoint.SeriesState>> statesToRestore = new HashMap<>();
   private Map<String, MetricsMapping> metricsMapping;
+  private MetricNameMatcher metricNameMatcher;
+  // The series of each mapping, by the tags of their values
+  private Map<MetricsMapping, SeriesLookup> seriesLookups;
+  private List<RoutingRule> routingRules;
+  private String tenantTag;
   @Nullable
-  private MetricServiceClient metricServiceClient;
+  private MonitoringDestination defaultDestination;
   @Nullable
   private String projectName;
+  // Only created if metrics can be sent to more than one destination
+  @Nullable
+  private ExecutorService sendExecutor;
+  // Sends the high priority lanes, only created if a mapping has high priority
+  @Nullable
+  private ExecutorService priorityExecutor;
+  // Records the incoming batches for offline replay, only created if a capture file is configured
+  @Nullable
+  private volatile MetricsCaptureWriter captureWriter;
+  // Tracks the volume sent per mapping, not created if the report interval is not positive
+  @Nullable
+  private CostEstimator costEstimator;
+  // Splits the series between the metrics processor instances, only created if there is more than one
+  @Nullable
+  private SeriesPartitioner partitioner;
+  // Saves the state of the writer across restarts, only created if a checkpoint file is configured
+  @Nullable
+  private WriterCheckpoint checkpoint;
+  // Reads and writes the checkpoint in the background
+  @Nullable
+  private ExecutorService checkpointExecutor;
+  // Series state being read from the checkpoint, restored by the first flush after it is read
+  @Nullable
+  private Future<Map<String, List<WriterCheckpoint.SeriesState>>> pendingRestore;
+  @Nullable
+  private Future<?> pendingCheckpoint;
+  private long checkpointIntervalMillis;
+  private long lastCheckpointMillis;
+  // Time the end time was last saved to the header of the checkpoint, -1 if it was not saved since initialization
+  private long lastHeaderMillis = -1L;
+  @Nullable
+  private MetricsContext metricsContext;
+  // Time of the initialization, until the first successful write
+  private final AtomicLong initializeMillis = new AtomicLong(-1L);
   private Map<String, String> autoFilledLabelMap;
   private int pollFreqInSeconds;
 
@@ -79,20 +182,315 @@ public class CloudMonitoringWriter implements MetricsWriter {
     if (!isInitComplete()) {
       return;
     }
+    capture(metricValues);
+    accumulate(metricValues);
+
+    if (!flushLock.tryLock()) {
+      LOG.trace("A flush is in progress, values will be sent by the next flush");
+      return;
+    }
+    boolean flushed = false;
+    try {
+      RuntimeException failure = collectSends();
+      restoreCheckpoint(false);
+      long endTimeSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+      Map<MonitoringDestination, Runnable> writes = flushSeriesTables(endTimeSeconds);
+      lastEndTime.getAndUpdate(value -> Math.max(value, endTimeSeconds));
+      send(writes);
+      flushed = true;
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      long nowMillis = System.currentTimeMillis();
+      if (costEstimator != null) {
+        costEstimator.reportIfDue(nowMillis);
+      }
+      if (checkpoint != null && nowMillis - lastCheckpointMillis >= checkpointIntervalMillis) {
+        saveCheckpoint(nowMillis, false);
+      } else if (checkpoint != null && flushed && (lastHeaderMillis < 0
+        || nowMillis - lastHeaderMillis >= TimeUnit.SECONDS.toMillis(pollFreqInSeconds))) {
+        saveCheckpointHeader(nowMillis);
+      }
+      flushLock.unlock();
+    }
+  }
+
+  /**
+   * Restores the series state read from the checkpoint to the destinations that are not sending, if it was read.
+   * Must be called while holding the flush lock.
+   *
+   * @param wait whether to wait for the state to be read
+   */
+  private void restoreCheckpoint(boolean wait) {
+    Future<Map<String, List<WriterCheckpoint.SeriesState>>> future = pendingRestore;
+    if (future != null && (wait || future.isDone())) {
+      pendingRestore = null;
+      try {
+        Map<String, List<WriterCheckpoint.SeriesState>> states = future.get();
+        int read = 0;
+        for (MonitoringDestination destination : allDestinations) {
+          List<WriterCheckpoint.SeriesState> destinationStates = states.get(destination.getProjectName());
+          if (destinationStates != null) {
+            statesToRestore.put(destination, destinationStates);
+            read += destinationStates.size();
+          }
+        }
+        LOG.info("Read the state of {} series from {}", read, checkpoint.getPath());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LOG.warn("Interrupted while reading the series state from {}", checkpoint.getPath());
+      } catch (ExecutionException e) {
+        LOG.warn("Failed to read the series state from {}, continuing without it.", checkpoint.getPath(),
+                 e.getCause());
+      }
+    }
+    // The lanes of a destination that is sending are being changed by its send
+    statesToRestore.entrySet().removeIf(entry -> {
+      if (pendingSends.containsKey(entry.getKey())) {
+        return false;
+      }
+      entry.getKey().restore(checkMetricKinds(entry.getValue()));
+      return true;
+    });
+  }
+
+  /**
+   * Returns the series states that have the metric kind of their mapping. The mappings that did not get a value yet
+   * take the kind of their first restored series, so that a restarted writer keeps the kinds of the previous one.
+   */
+  private List<WriterCheckpoint.SeriesState> checkMetricKinds(List<WriterCheckpoint.SeriesState> states) {
+    List<WriterCheckpoint.SeriesState> result = new ArrayList<>(states.size());
+    for (WriterCheckpoint.SeriesState state : states) {
+      TimeSeriesMetadata metadata = state.getMetadata();
+      SeriesLookup lookup = seriesLookups.get(metadata.getMapping());
+      if (lookup != null && lookup.resolveKind(metadata.getMetricKind()) == metadata.getMetricKind()) {
+        result.add(state);
+      }
+    }
+    if (result.size() < states.size()) {
+      LOG.warn("Ignored the saved state of {} series whose metric kind is no longer the kind of their mapping",
+               states.size() - result.size());
+    }
+    return result;
+  }
 
-    Map<TimeSeriesMetadata, List<Long>> timeSeriesMap = createTimeSeriesMap(metricValues);
-    long endTimeSeconds = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
-    long startTimeSeconds = (lastEndTime.get() == -1 || lastEndTime.get() == endTimeSeconds) ?
-      endTimeSeconds - pollFreqInSeconds : lastEndTime.get() + 1;
-    List<TimeSeries> timeSeries = CloudMonitoringUtil.convertToMonitoringTimeSeries(timeSeriesMap,
-                                                                                    startTimeSeconds,
-                                                                                    endTimeSeconds);
-    CloudMonitoringUtil.send(metricServiceClient, projectName, timeSeries);
-    lastEndTime.getAndUpdate(value -> Math.max(value, endTimeSeconds));
+  /**
+   * Takes the state of the writer and saves it to the checkpoint file. Must be called while holding the flush lock,
+   * since the state of the lanes is only changed by flushes.
+   *
+   * @param wait whether to wait for the checkpoint to be written
+   */
+  private void saveCheckpoint(long nowMillis, boolean wait) {
+    if (checkpoint == null || pendingRestore != null || !statesToRestore.isEmpty()
+      || (pendingCheckpoint != null && !pendingCheckpoint.isDone())) {
+      // The state is not saved until the previous one has been restored, so that it is not lost
+      return;
+    }
+    lastCheckpointMillis = nowMillis;
+    lastHeaderMillis = nowMillis;
+    long endTime = lastEndTime.get();
+    Map<String, List<WriterCheckpoint.SeriesState>> states = new HashMap<>();
+    for (MonitoringDestination destination : allDestinations) {
+      // The state of a destination that is sending is being changed, its last saved state is saved again
+      List<WriterCheckpoint.SeriesState> destinationStates = pendingSends.containsKey(destination) ?
+        savedStates.getOrDefault(destination, Collections.emptyList()) : destination.getState();
+      savedStates.put(destination, destinationStates);
+      states.computeIfAbsent(destination.getProjectName(), key -> new ArrayList<>()).addAll(destinationStates);
+    }
+    WriterCheckpoint target = checkpoint;
+    Runnable task = () -> {
+      try {
+        target.write(endTime, states, nowMillis);
+        LOG.trace("Saved the state of the writer to {}", target.getPath());
+      } catch (IOException e) {
+        LOG.warn("Failed to save the state of the writer to {}", target.getPath(), e);
+      }
+    };
+    if (wait) {
+      task.run();
+    } else {
+      pendingCheckpoint = checkpointExecutor.submit(task);
+    }
+  }
+
+  /**
+   * Saves the end time of the last write to the header of the checkpoint file, so that a restarted writer resumes
+   * from a recent write rather than from the last full checkpoint. It is saved at most once per write interval,
+   * whatever the number of threads writing. Must be called while holding the flush lock.
+   */
+  private void saveCheckpointHeader(long nowMillis) {
+    if (pendingCheckpoint != null && !pendingCheckpoint.isDone()) {
+      // The next write saves a newer end time
+      return;
+    }
+    lastHeaderMillis = nowMillis;
+    long endTime = lastEndTime.get();
+    WriterCheckpoint target = checkpoint;
+    pendingCheckpoint = checkpointExecutor.submit(() -> {
+      try {
+        target.writeHeader(endTime, nowMillis);
+      } catch (IOException e) {
+        LOG.warn("Failed to save the end time of the last write to {}", target.getPath(), e);
+      }
+    });
+  }
+
+  /**
+   * Takes the content of the series tables of the destinations that are not sending, and returns the writes of
+   * those that have series to send. The window of each destination starts where its previous window ended.
+   */
+  private Map<MonitoringDestination, Runnable> flushSeriesTables(long endTimeSeconds) {
+    Map<MonitoringDestination, Runnable> writes = new HashMap<>();
+    for (MonitoringDestination destination : allDestinations) {
+      if (pendingSends.containsKey(destination)) {
+        continue;
+      }
+      if (destination.holdIfOpen(endTimeSeconds)) {
+        // Values dropped under the SHED policy are not part of the next window, buffered values are
+        if (destination.getCircuitBreaker().getConfig().getOpenPolicy() == CircuitBreakerConfig.OpenPolicy.SHED) {
+          destinationEndTimes.put(destination, endTimeSeconds);
+        }
+        continue;
+      }
+      Map<TimeSeriesMetadata, List<Long>> timeSeries = destination.flush(endTimeSeconds);
+      if (partitioner != null) {
+        timeSeries = partitioner.apply(timeSeries);
+      }
+      Long previousEndTime = destinationEndTimes.put(destination, endTimeSeconds);
+      long lastEndTimeSeconds = previousEndTime == null ? lastEndTime.get() : previousEndTime;
+      long startTimeSeconds = (lastEndTimeSeconds == -1 || lastEndTimeSeconds >= endTimeSeconds) ?
+        endTimeSeconds - pollFreqInSeconds : lastEndTimeSeconds + 1;
+      if (!timeSeries.isEmpty() || destination.getQueuedSeries() > 0) {
+        Map<TimeSeriesMetadata, List<Long>> destinationSeries = timeSeries;
+        writes.put(destination, () -> {
+          destination.write(destinationSeries, startTimeSeconds, endTimeSeconds);
+          onWriteSucceeded();
+        });
+      }
+    }
+    return writes;
+  }
+
+  /**
+   * Reports the time between the initialization and the first successful write. Can be called by any thread.
+   */
+  private void onWriteSucceeded() {
+    long startMillis = initializeMillis.getAndSet(-1L);
+    if (startMillis < 0) {
+      return;
+    }
+    long elapsedMillis = System.currentTimeMillis() - startMillis;
+    LOG.info("First successful write {} ms after initialization", elapsedMillis);
+    if (metricsContext != null) {
+      metricsContext.gauge(FIRST_WRITE_METRIC, elapsedMillis);
+    }
+  }
+
+  private void capture(Collection<MetricValues> metricValues) {
+    MetricsCaptureWriter writer = captureWriter;
+    if (writer == null) {
+      return;
+    }
+    try {
+      if (!writer.append(metricValues, System.currentTimeMillis())) {
+        LOG.info("Capture file reached its maximum size, stopped capturing metrics.");
+        closeCapture();
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to capture metrics, stopped capturing.", e);
+      closeCapture();
+    }
+  }
+
+  private void closeCapture() {
+    MetricsCaptureWriter writer = captureWriter;
+    captureWriter = null;
+    if (writer != null) {
+      try {
+        writer.close();
+      } catch (IOException e) {
+        LOG.warn("Failed to close the capture file.", e);
+      }
+      if (writer.getDroppedBatches() > 0) {
+        LOG.info("Did not capture {} batches that came faster than the capture file was written.",
+                 writer.getDroppedBatches());
+      }
+    }
+  }
+
+  /**
+   * Writes the destinations. With a single destination, it is written by the caller. Otherwise each destination is
+   * written on the send executor, without waiting for it, see {@link #collectSends}.
+   */
+  private void send(Map<MonitoringDestination, Runnable> writes) {
+    if (sendExecutor == null) {
+      writes.values().forEach(Runnable::run);
+      return;
+    }
+    writes.forEach((destination, write) -> pendingSends.put(destination, sendExecutor.submit(write)));
+  }
+
+  /**
+   * Forgets the sends that completed, so that their destinations are flushed again. Must be called while holding
+   * the flush lock.
+   *
+   * @return the failure of the sends that failed, or {@code null} if none failed
+   */
+  @Nullable
+  private RuntimeException collectSends() {
+    RuntimeException failure = null;
+    for (Iterator<Map.Entry<MonitoringDestination, Future<?>>> iterator = pendingSends.entrySet().iterator();
+         iterator.hasNext(); ) {
+      Map.Entry<MonitoringDestination, Future<?>> entry = iterator.next();
+      if (!entry.getValue().isDone()) {
+        continue;
+      }
+      iterator.remove();
+      try {
+        Futures.getDone(entry.getValue());
+      } catch (ExecutionException e) {
+        LOG.debug("Failed to send metrics to {}", entry.getKey(), e.getCause());
+        RuntimeException cause = e.getCause() instanceof RuntimeException ?
+          (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        if (failure == null) {
+          failure = cause;
+        } else {
+          failure.addSuppressed(cause);
+        }
+      } catch (CancellationException e) {
+        LOG.debug("Sending metrics to {} was cancelled", entry.getKey());
+      }
+    }
+    return failure;
+  }
+
+  /**
+   * Waits for the sends in progress to complete, so that the next write flushes every destination.
+   *
+   * @return false if interrupted while waiting
+   */
+  boolean awaitSends() {
+    flushLock.lock();
+    try {
+      for (Future<?> future : pendingSends.values()) {
+        try {
+          future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        } catch (ExecutionException | CancellationException e) {
+          // Reported by the next write
+        }
+      }
+      return true;
+    } finally {
+      flushLock.unlock();
+    }
   }
 
   private boolean isInitComplete() {
-    if (metricServiceClient == null) {
+    if (defaultDestination == null) {
       LOG.debug(
         "MetricServiceClient is not available. Returning with out writing values in GoogleCloudMonitoringWriter.");
       return false;
@@ -112,30 +510,179 @@ public class CloudMonitoringWriter implements MetricsWriter {
 
   @Override
   public void initialize(MetricsWriterContext metricsWriterContext) {
-    if (this.metricServiceClient != null) {
+    if (this.defaultDestination != null) {
       LOG.debug("GoogleCloudMonitoringWriter is already initialized");
       return;
     }
 
     MonitoringConfig config = getConfig(metricsWriterContext.getProperties().get(CONFIG_FILE_PATH));
     this.metricsMapping = config.getMetricsMapping();
+    this.metricNameMatcher = MetricNameMatcher.compile(metricsMapping);
+    // Compile the label templates and transforms and check the roll-ups upfront, so that invalid ones fail here
+    for (MetricsMapping mapping : metricsMapping.values()) {
+      mapping.getMetricLabels().forEach(LabelMapping::getEvaluator);
+      mapping.getResourceLabels().forEach(LabelMapping::getEvaluator);
+      mapping.getRollups().forEach(rollup -> rollup.getMetricType(mapping));
+    }
+    MappingConflictDetector.check(metricsMapping);
+    this.seriesLookups = new HashMap<>();
+    for (MetricsMapping mapping : metricsMapping.values()) {
+      seriesLookups.computeIfAbsent(mapping, SeriesLookup::new);
+    }
+    this.routingRules = config.getRoutingRules();
+    this.tenantTag = config.getSchedulingConfig().getTag();
     this.projectName = metricsWriterContext.getProperties().get(PROJECT);
     this.pollFreqInSeconds = Integer.parseInt(metricsWriterContext.getProperties().get(WRITE_FREQUENCY_SECONDS));
 
+    this.initializeMillis.set(System.currentTimeMillis());
     populateAutoFilledMap(metricsWriterContext.getProperties(), metricsWriterContext.getPlatformVersion());
+    this.partitioner = createPartitioner(metricsWriterContext.getProperties());
 
     try {
+      if (metricsMapping.values().stream().anyMatch(mapping -> mapping.getPriority() == Priority.HIGH)) {
+        priorityExecutor = Executors.newFixedThreadPool(
+          getIntProperty(metricsWriterContext.getProperties(), PRIORITY_SEND_PARALLELISM,
+                         DEFAULT_PRIORITY_SEND_PARALLELISM),
+          new ThreadFactoryBuilder().setNameFormat("cloud-monitoring-writer-priority-%d").setDaemon(true).build());
+      }
       String endPoint = metricsWriterContext.getProperties().get(MONITORING_ENDPOINT);
-      MetricServiceSettings metricServiceSettings =
-        MetricServiceSettings.newBuilder().setEndpoint(endPoint)
-          .build();
-      metricServiceClient = MetricServiceClient.create(metricServiceSettings);
+      // Destinations by project and endpoint, so that rules with the same target share a destination
+      Map<List<String>, MonitoringDestination> destinations = new HashMap<>();
+      SchedulingConfig schedulingConfig = config.getSchedulingConfig();
+      CircuitBreakerConfig circuitBreakerConfig = config.getCircuitBreakerConfig();
+      // Fail on an invalid policy here rather than on the first write
+      circuitBreakerConfig.getOpenPolicy();
+      metricsContext = metricsWriterContext.getMetricsContext();
+      int costReportInterval = getIntProperty(metricsWriterContext.getProperties(), COST_REPORT_INTERVAL_SECONDS,
+                                              DEFAULT_COST_REPORT_INTERVAL_SECONDS);
+      if (costReportInterval > 0) {
+        costEstimator = new CostEstimator(metricsMapping, TimeUnit.SECONDS.toMillis(costReportInterval),
+                                          metricsContext, System.currentTimeMillis());
+      }
+      MonitoringDestination destination = new MonitoringDestination(projectName, getMetricServiceClient(endPoint),
+                                                                    schedulingConfig, circuitBreakerConfig,
+                                                                    metricsContext, priorityExecutor,
+                                                                    costEstimator);
+      destinations.put(Arrays.asList(projectName, endPoint), destination);
+      for (RoutingRule rule : routingRules) {
+        String ruleEndpoint = rule.getEndpoint() == null ? endPoint : rule.getEndpoint();
+        ruleDestinations.put(rule, destinations.computeIfAbsent(
+          Arrays.asList(rule.getProject(), ruleEndpoint),
+          key -> new MonitoringDestination(rule.getProject(), getMetricServiceClient(ruleEndpoint),
+                                           schedulingConfig, circuitBreakerConfig, metricsContext,
+                                           priorityExecutor, costEstimator)));
+      }
+      if (destinations.size() > 1) {
+        int threads = Math.min(destinations.size(), getIntProperty(metricsWriterContext.getProperties(),
+                                                                   SEND_PARALLELISM, DEFAULT_SEND_PARALLELISM));
+        sendExecutor = Executors.newFixedThreadPool(
+          threads, new ThreadFactoryBuilder().setNameFormat("cloud-monitoring-writer-%d").setDaemon(true).build());
+      }
+      allDestinations.addAll(destinations.values());
+      LOG.debug("Created {} destinations with {} clients", destinations.size(), metricServiceClients.size());
+      String capturePath = metricsWriterContext.getProperties().get(CAPTURE_FILE_PATH);
+      if (capturePath != null && !capturePath.isEmpty()) {
+        String maxBytes = metricsWriterContext.getProperties().get(CAPTURE_MAX_BYTES);
+        captureWriter = new MetricsCaptureWriter(Paths.get(capturePath), maxBytes == null ?
+          DEFAULT_CAPTURE_MAX_BYTES : Long.parseLong(maxBytes));
+        LOG.info("Capturing metrics to {}", capturePath);
+      }
+      String checkpointPath = metricsWriterContext.getProperties().get(CHECKPOINT_FILE_PATH);
+      if (checkpointPath != null && !checkpointPath.isEmpty()) {
+        checkpointIntervalMillis = TimeUnit.SECONDS.toMillis(
+          getIntProperty(metricsWriterContext.getProperties(), CHECKPOINT_INTERVAL_SECONDS,
+                         DEFAULT_CHECKPOINT_INTERVAL_SECONDS));
+        initializeCheckpoint(new WriterCheckpoint(Paths.get(checkpointPath), metricsMapping));
+      }
+      defaultDestination = destination;
     } catch (Exception ex) {
       throw new RuntimeException(
         "Exception while creating MetricServiceClient, Metrics will not be sent to Google Cloud Monitoring.", ex);
     }
   }
 
+  /**
+   * Resumes the time window from the header of the checkpoint, and starts reading its series state in the background.
+   */
+  private void initializeCheckpoint(WriterCheckpoint writerCheckpoint) {
+    checkpoint = writerCheckpoint;
+    lastCheckpointMillis = initializeMillis.get();
+    checkpointExecutor = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder().setNameFormat("cloud-monitoring-writer-checkpoint").setDaemon(true).build());
+    WriterCheckpoint.Header header;
+    try {
+      header = writerCheckpoint.readHeader();
+    } catch (IOException e) {
+      LOG.warn("Failed to read the checkpoint {}, starting without it.", writerCheckpoint.getPath(), e);
+      return;
+    }
+    if (header == null) {
+      LOG.debug("No checkpoint at {}", writerCheckpoint.getPath());
+      return;
+    }
+    // A checkpoint ahead of the clock would produce windows ending before they start
+    if (header.getLastEndTime() <= TimeUnit.MILLISECONDS.toSeconds(initializeMillis.get())) {
+      lastEndTime.set(header.getLastEndTime());
+    }
+    LOG.info("Resuming from the checkpoint taken at {} in {}, last end time {}", header.getCheckpointTimeMillis(),
+             writerCheckpoint.getPath(), header.getLastEndTime());
+    pendingRestore = checkpointExecutor.submit(writerCheckpoint::readSeries);
+  }
+
+  /**
+   * Creates the partitioner of the series of this instance, or returns {@code null} if it is the only instance.
+   *
+   * @throws IllegalArgumentException if slice mode is configured without declaring that every instance receives all
+   *                                  the values, since the values of the series owned by other instances are dropped
+   */
+  @Nullable
+  private static SeriesPartitioner createPartitioner(Map<String, String> properties) {
+    int count = getIntProperty(properties, INSTANCE_COUNT, 1);
+    if (count <= 1) {
+      return null;
+    }
+    String modeName = properties.get(PARTITION_MODE);
+    SeriesPartitioner.Mode mode = modeName == null ? SeriesPartitioner.Mode.LABEL :
+      SeriesPartitioner.parseMode(modeName);
+    if (mode == SeriesPartitioner.Mode.SLICE && !Boolean.parseBoolean(properties.get(PARTITION_INPUTS_REPLICATED))) {
+      throw new IllegalArgumentException(String.format(
+        "Partition mode 'slice' drops the values of the series owned by other instances, so it requires every "
+          + "instance to receive all the values. Set '%s' to true if they do, or use the 'label' mode.",
+        PARTITION_INPUTS_REPLICATED));
+    }
+    String label = properties.get(PARTITION_LABEL);
+    SeriesPartitioner result = new SeriesPartitioner(
+      getIntProperty(properties, INSTANCE_INDEX, 0), count, mode,
+      label == null || label.isEmpty() ? SeriesPartitioner.DEFAULT_LABEL : label);
+    LOG.info("Partitioning series with {}", result);
+    return result;
+  }
+
+  private static int getIntProperty(Map<String, String> properties, String key, int defaultValue) {
+    String value = properties.get(key);
+    return value == null ? defaultValue : Integer.parseInt(value);
+  }
+
+  private MetricServiceClient getMetricServiceClient(@Nullable String endPoint) {
+    return metricServiceClients.computeIfAbsent(endPoint, key -> {
+      try {
+        return createMetricServiceClient(endPoint);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  /**
+   * Creates the client for the given endpoint. Overridden in tests to send to a stub.
+   */
+  MetricServiceClient createMetricServiceClient(@Nullable String endPoint) throws IOException {
+    MetricServiceSettings metricServiceSettings =
+      MetricServiceSettings.newBuilder().setEndpoint(endPoint)
+        .build();
+    return MetricServiceClient.create(metricServiceSettings);
+  }
+
   private void populateAutoFilledMap(Map<String, String> properties, String platformVersion) {
     List<String> errors = new ArrayList<>();
     if (platformVersion == null || platformVersion.isEmpty()) {
@@ -174,12 +721,41 @@ public class CloudMonitoringWriter implements MetricsWriter {
     return WRITER_NAME;
   }
 
+  @VisibleForTesting
+  long getLastEndTime() {
+    return lastEndTime.get();
+  }
+
   @Override
   public void close() {
-    if (metricServiceClient == null) {
-      return;
+    boolean sendsDone = awaitSends();
+    if (checkpoint != null && sendsDone) {
+      flushLock.lock();
+      try {
+        collectSends();
+        restoreCheckpoint(true);
+        if (pendingCheckpoint != null) {
+          Futures.getUnchecked(pendingCheckpoint);
+        }
+        saveCheckpoint(System.currentTimeMillis(), true);
+      } finally {
+        flushLock.unlock();
+      }
+    } else if (checkpoint != null) {
+      LOG.warn("Interrupted while waiting for the sends in progress, the state of the writer is not saved to {}",
+               checkpoint.getPath());
+    }
+    if (checkpointExecutor != null) {
+      checkpointExecutor.shutdownNow();
     }
-    metricServiceClient.close();
+    if (sendExecutor != null) {
+      sendExecutor.shutdownNow();
+    }
+    if (priorityExecutor != null) {
+      priorityExecutor.shutdownNow();
+    }
+    metricServiceClients.values().forEach(MetricServiceClient::close);
+    closeCapture();
   }
 
   MonitoringConfig getConfig(String configFilePath) {
@@ -193,62 +769,101 @@ public class CloudMonitoringWriter implements MetricsWriter {
     }
   }
 
-  private Map<TimeSeriesMetadata, List<Long>> createTimeSeriesMap(Collection<MetricValues> metricValues) {
-    Map<TimeSeriesMetadata, List<Long>> timeSeries = new HashMap<>();
+  /**
+   * Adds the mapped values to the series tables of their destinations.
+   */
+  private void accumulate(Collection<MetricValues> metricValues) {
     for (MetricValues values : metricValues) {
+      MonitoringDestination destination = null;
       for (MetricValue metricValue : values.getMetrics()) {
-        Optional<Map.Entry<String, MetricsMapping>> mappingEntry = getMappingEntry(metricsMapping, metricValue,
-                                                                                   values.getTags());
-        if (!mappingEntry.isPresent()) {
+        MetricNameMatcher.Match match = findMatch(metricNameMatcher, metricValue, values.getTags());
+        if (match == null) {
           continue;
         }
-        MetricsMapping mapping = mappingEntry.get().getValue();
-        TimeSeriesMetadata metadata = createTimeSeriesMetadata(mapping, metricValue, values.getTags());
-        timeSeries.computeIfAbsent(metadata, timeSeriesMetadata -> new ArrayList<>()).add(metricValue.getValue());
+        if (destination == null) {
+          destination = getDestination(values.getTags());
+        }
+        SeriesLookup lookup = seriesLookups.get(match.getMapping());
+        MetricType metricKind = lookup.resolveKind(metricValue.getType());
+        TimeSeriesMetadata metadata = lookup.get(values.getTags(), match.getCaptures());
+        if (metadata == null) {
+          metadata = createTimeSeriesMetadata(match.getMapping(), metricKind, match.addCaptures(values.getTags()),
+                                              destination.getProjectName());
+          lookup.put(values.getTags(), match.getCaptures(), metadata);
+        }
+        if (partitioner != null && !partitioner.accepts(metadata)) {
+          continue;
+        }
+        destination.add(metadata, metricValue.getValue());
       }
     }
-    return timeSeries;
+  }
+
+  private MonitoringDestination getDestination(Map<String, String> tags) {
+    return getRoutingRule(routingRules, tags).map(ruleDestinations::get).orElse(defaultDestination);
   }
 
   @VisibleForTesting
-  Optional<Map.Entry<String, MetricsMapping>> getMappingEntry(Map<String, MetricsMapping> metricsMapping,
-                                                              MetricValue metricValue, Map<String, String> tags) {
-    return metricsMapping.entrySet()
-      .stream()
-      .filter(e -> metricValue.getName().equals(e.getKey()))
-      .filter(e -> allTagsMatch(e.getValue().getTagFilters(), tags))
-      .findFirst();
+  Optional<RoutingRule> getRoutingRule(List<RoutingRule> routingRules, Map<String, String> tags) {
+    return routingRules.stream().filter(rule -> rule.matches(tags)).findFirst();
+  }
+
+  @VisibleForTesting
+  Optional<MetricNameMatcher.Match> getMappingEntry(MetricNameMatcher metricNameMatcher, MetricValue metricValue,
+                                                    Map<String, String> tags) {
+    return Optional.ofNullable(findMatch(metricNameMatcher, metricValue, tags));
+  }
+
+  /**
+   * Returns the most specific match of the metric whose tag filters match the tags, or null.
+   */
+  @Nullable
+  private MetricNameMatcher.Match findMatch(MetricNameMatcher metricNameMatcher, MetricValue metricValue,
+                                            Map<String, String> tags) {
+    List<MetricNameMatcher.Match> matches = metricNameMatcher.getMatches(metricValue.getName());
+    for (int i = 0; i < matches.size(); i++) {
+      MetricNameMatcher.Match match = matches.get(i);
+      if (allTagsMatch(match.getMapping().getTagFilters(), tags)) {
+        return match;
+      }
+    }
+    return null;
   }
 
   @VisibleForTesting
   boolean allTagsMatch(List<TagFilter> configTagFilters, Map<String, String> cdapTags) {
-    return configTagFilters
-      .stream()
-      .allMatch(configTag ->
-                  cdapTags.containsKey(configTag.getTag()) &&
-                    configTag.getValuesList().contains(cdapTags.get(configTag.getTag())));
+    for (int i = 0; i < configTagFilters.size(); i++) {
+      TagFilter tagFilter = configTagFilters.get(i);
+      if (!tagFilter.matches(cdapTags.get(tagFilter.getTag()))) {
+        return false;
+      }
+    }
+    return true;
   }
 
-  private TimeSeriesMetadata createTimeSeriesMetadata(MetricsMapping mapping, MetricValue metricValue,
-                                                      Map<String, String> tags) {
-    MetricType metricKind = metricValue.getType();
+  private TimeSeriesMetadata createTimeSeriesMetadata(MetricsMapping mapping, MetricType metricKind,
+                                                      Map<String, String> tags, String destinationProject) {
     Map<String, String> metricLabels = getLabels(mapping.getMetricLabels(), tags);
     Map<String, String> resourceLabels = getLabels(mapping.getResourceLabels(), tags);
     resourceLabels.putAll(getAutoFilledLabels(mapping.getAutoFillLabels(), this.autoFilledLabelMap));
+    // The resource of a series routed to another project belongs to that project
+    resourceLabels.computeIfPresent(RESOURCE_CONTAINER, (key, value) -> destinationProject);
     return new TimeSeriesMetadata(mapping.getMetricType(),
                                   mapping.getResourceType(),
                                   metricLabels, resourceLabels, metricKind,
-                                  mapping.getAggregation());
+                                  mapping.getAggregation(), mapping, tags.get(tenantTag));
   }
 
   @VisibleForTesting
   Map<String, String> getLabels(List<LabelMapping> labelMappings, Map<String, String> tags) {
-    //If value is a tag, get from tags map
-    Map<String, String> labels = labelMappings.stream().filter(LabelMapping::getValueIsTag)
-      .filter(lm -> tags.get(lm.getValue()) != null)
-      .collect(Collectors.toMap(LabelMapping::getLabel, lm -> tags.get(lm.getValue())));
-    labels.putAll(labelMappings.stream().filter(lm -> !lm.getValueIsTag())
-                    .collect(Collectors.toMap(LabelMapping::getLabel, LabelMapping::getValue)));
+    Map<String, String> labels = new HashMap<>();
+    for (LabelMapping labelMapping : labelMappings) {
+      // Labels whose tags are missing are left out
+      String value = labelMapping.getEvaluator().evaluate(tags);
+      if (value != null) {
+        labels.put(labelMapping.getLabel(), value);
+      }
+    }
     return labels;
   }
 
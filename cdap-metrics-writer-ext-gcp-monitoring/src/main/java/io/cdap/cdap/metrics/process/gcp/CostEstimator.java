@@ -0,0 +1,219 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.monitoring.v3.TimeSeries;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Tracks the volume sent to Cloud Monitoring per key of the metrics mapping, so that the mappings that drive the
+ * ingestion cost and the quota usage can be found. The series of the roll-ups of a mapping count for the mapping.
+ * <p>
+ * For every series sent successfully, the series, its points and its serialized size are recorded. The size is the
+ * one computed, and cached, by protobuf when the request is serialized. The distinct series are counted with a
+ * {@link HyperLogLog}, so the memory of a mapping does not grow with its series. Every report interval, the distinct
+ * series, points and bytes of the interval, the totals since the start and the monthly volumes projected from the
+ * interval are logged and emitted as metrics, under a "mapping" child context.
+ * This class is thread safe.
+ */
+public class CostEstimator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CostEstimator.class);
+  private static final String SERIES_METRIC = "gcp.monitoring.cost.series";
+  private static final String POINTS_METRIC = "gcp.monitoring.cost.points";
+  private static final String BYTES_METRIC = "gcp.monitoring.cost.bytes";
+  private static final String MONTHLY_POINTS_METRIC = "gcp.monitoring.cost.monthly.points";
+  private static final String MONTHLY_BYTES_METRIC = "gcp.monitoring.cost.monthly.bytes";
+  private static final long MONTH_MILLIS = TimeUnit.DAYS.toMillis(30);
+  // 4096 registers per mapping, for a standard error of 1.6% on the distinct series
+  private static final int SERIES_PRECISION = 12;
+
+  private final Map<MetricsMapping, String> mappingKeys = new IdentityHashMap<>();
+  private final ConcurrentMap<String, MappingUsage> usages = new ConcurrentHashMap<>();
+  private final long reportIntervalMillis;
+  @Nullable
+  private final MetricsContext metricsContext;
+  private final Map<String, MetricsContext> mappingContexts = new HashMap<>();
+  private long periodStartMillis;
+
+  public CostEstimator(Map<String, MetricsMapping> metricsMapping, long reportIntervalMillis,
+                       @Nullable MetricsContext metricsContext, long nowMillis) {
+    metricsMapping.forEach((key, mapping) -> mappingKeys.put(mapping, key));
+    this.reportIntervalMillis = reportIntervalMillis;
+    this.metricsContext = metricsContext;
+    this.periodStartMillis = nowMillis;
+  }
+
+  /**
+   * Records a series sent successfully.
+   */
+  public void record(TimeSeriesMetadata metadata, TimeSeries timeSeries) {
+    usages.computeIfAbsent(getKey(metadata), key -> new MappingUsage())
+      .record(metadata, timeSeries.getPointsCount(), timeSeries.getSerializedSize());
+  }
+
+  /**
+   * Reports the usage if the report interval elapsed since the last report. Must not be called concurrently.
+   *
+   * @return the usage of the interval, or an empty list if it was not reported
+   */
+  public List<MappingCost> reportIfDue(long nowMillis) {
+    if (nowMillis - periodStartMillis < reportIntervalMillis) {
+      return Collections.emptyList();
+    }
+    return report(nowMillis);
+  }
+
+  /**
+   * Logs and emits the usage since the last report and starts a new interval. Must not be called concurrently.
+   *
+   * @return the usage of the interval, by decreasing projected monthly bytes
+   */
+  public List<MappingCost> report(long nowMillis) {
+    long periodMillis = Math.max(1L, nowMillis - periodStartMillis);
+    periodStartMillis = nowMillis;
+    List<MappingCost> costs = new ArrayList<>();
+    for (Map.Entry<String, MappingUsage> entry : usages.entrySet()) {
+      costs.add(entry.getValue().drain(entry.getKey(), periodMillis));
+    }
+    costs.sort(Comparator.comparingLong(MappingCost::getMonthlyBytes).reversed());
+    for (MappingCost cost : costs) {
+      LOG.info("Mapping '{}' sent {} series, {} points, {} bytes in the last {} s, {} points and {} bytes in total, "
+                 + "projected monthly {} points and {} bytes", cost.getKey(), cost.getSeries(), cost.getPoints(),
+               cost.getBytes(), TimeUnit.MILLISECONDS.toSeconds(periodMillis), cost.getTotalPoints(),
+               cost.getTotalBytes(), cost.getMonthlyPoints(), cost.getMonthlyBytes());
+      if (metricsContext == null) {
+        continue;
+      }
+      MetricsContext context = mappingContexts.computeIfAbsent(cost.getKey(), key ->
+        metricsContext.childContext("mapping", key));
+      context.gauge(SERIES_METRIC, cost.getSeries());
+      context.increment(POINTS_METRIC, cost.getPoints());
+      context.increment(BYTES_METRIC, cost.getBytes());
+      context.gauge(MONTHLY_POINTS_METRIC, cost.getMonthlyPoints());
+      context.gauge(MONTHLY_BYTES_METRIC, cost.getMonthlyBytes());
+    }
+    return costs;
+  }
+
+  private String getKey(TimeSeriesMetadata metadata) {
+    String key = metadata.getMapping() == null ? null : mappingKeys.get(metadata.getMapping());
+    return key == null ? metadata.getMetricType() : key;
+  }
+
+  /**
+   * Usage of a mapping key.
+   */
+  private static final class MappingUsage {
+    // Series sent since the last report
+    private final HyperLogLog series = new HyperLogLog(SERIES_PRECISION);
+    private long points;
+    private long bytes;
+    private long totalPoints;
+    private long totalBytes;
+
+    private synchronized void record(TimeSeriesMetadata metadata, int pointCount, int size) {
+      series.add(metadata.hashCode());
+      points += pointCount;
+      bytes += size;
+    }
+
+    private synchronized MappingCost drain(String key, long periodMillis) {
+      totalPoints += points;
+      totalBytes += bytes;
+      MappingCost cost = new MappingCost(key, (int) series.estimate(), points, bytes, totalPoints, totalBytes,
+                                         (long) ((double) points * MONTH_MILLIS / periodMillis),
+                                         (long) ((double) bytes * MONTH_MILLIS / periodMillis));
+      series.clear();
+      points = 0;
+      bytes = 0;
+      return cost;
+    }
+  }
+
+  /**
+   * Usage of a mapping key over a report interval.
+   */
+  public static final class MappingCost {
+    private final String key;
+    private final int series;
+    private final long points;
+    private final long bytes;
+    private final long totalPoints;
+    private final long totalBytes;
+    private final long monthlyPoints;
+    private final long monthlyBytes;
+
+    private MappingCost(String key, int series, long points, long bytes, long totalPoints, long totalBytes,
+                        long monthlyPoints, long monthlyBytes) {
+      this.key = key;
+      this.series = series;
+      this.points = points;
+      this.bytes = bytes;
+      this.totalPoints = totalPoints;
+      this.totalBytes = totalBytes;
+      this.monthlyPoints = monthlyPoints;
+      this.monthlyBytes = monthlyBytes;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public int getSeries() {
+      return series;
+    }
+
+    public long getPoints() {
+      return points;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    public long getTotalPoints() {
+      return totalPoints;
+    }
+
+    public long getTotalBytes() {
+      return totalBytes;
+    }
+
+    public long getMonthlyPoints() {
+      return monthlyPoints;
+    }
+
+    public long getMonthlyBytes() {
+      return monthlyBytes;
+    }
+  }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.monitoring.v3.Point;
+import com.google.monitoring.v3.TimeInterval;
+import com.google.monitoring.v3.TimeSeries;
+import com.google.monitoring.v3.TypedValue;
+import com.google.protobuf.util.Timestamps;
+import io.cdap.cdap.api.metrics.MetricType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schedules outbound time series across tenants with deficit round-robin, so that the requests sent to Cloud
+ * Monitoring contain series of every tenant in proportion to the tenant weights, whatever the number of series of
+ * each tenant. A tenant with many series can then not starve the others when requests are throttled.
+ * <p>
+ * Each tenant has a queue of pending series. A newer point of a series that is still queued is merged with the
+ * queued point, see {@link #merge}. Every round, each tenant with pending series gets a credit equal to its weight
+ * and can add that many series to the request being built. The shares only matter when a write cannot send all the
+ * queued series, because the {@link RequestBudget} of the destination is spent or a request failed. Without a
+ * request budget, each write sends all its series. Once a write has sent what it could, {@link #trim}
+ * drops the oldest series of the queues that hold more series than the maximum, so that only the series carried
+ * over to the next writes are bounded.
+ * This class is not thread safe.
+ */
+public class DeficitRoundRobinScheduler {
+
+  private final SchedulingConfig config;
+  private final Map<String, TenantQueue> queues = new HashMap<>();
+  // Tenants with pending series, in round-robin order
+  private final Deque<TenantQueue> active = new ArrayDeque<>();
+
+  public DeficitRoundRobinScheduler(SchedulingConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * Adds a series to the queue of the given tenant.
+   *
+   * @param tenant     the tenant of the series
+   * @param metadata   the metadata of the series
+   * @param timeSeries the series to send
+   * @param nowMillis  the current time
+   */
+  public void enqueue(String tenant, TimeSeriesMetadata metadata, TimeSeries timeSeries, long nowMillis) {
+    TenantQueue queue = queues.computeIfAbsent(tenant, key -> new TenantQueue(key, config.getWeight(key)));
+    PendingSeries pending = queue.pending.get(metadata);
+    if (pending != null) {
+      pending.timeSeries = merge(metadata, pending.timeSeries, timeSeries);
+      return;
+    }
+    queue.pending.put(metadata, new PendingSeries(queue, metadata, timeSeries, nowMillis));
+    if (queue.pending.size() == 1) {
+      active.addLast(queue);
+    }
+  }
+
+  /**
+   * Removes and returns up to maxSize pending series, picked from the tenants by deficit round-robin.
+   *
+   * @return the series for the next request, empty if there are no pending series
+   */
+  public List<PendingSeries> nextBatch(int maxSize, long nowMillis) {
+    if (active.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<PendingSeries> batch = new ArrayList<>(Math.min(maxSize, size()));
+    while (batch.size() < maxSize && !active.isEmpty()) {
+      TenantQueue queue = active.peekFirst();
+      if (queue.deficit == 0) {
+        queue.deficit = queue.weight;
+      }
+      Iterator<PendingSeries> iterator = queue.pending.values().iterator();
+      while (queue.deficit > 0 && batch.size() < maxSize && iterator.hasNext()) {
+        PendingSeries pending = iterator.next();
+        iterator.remove();
+        queue.deficit--;
+        queue.sendLagMillis = Math.max(queue.sendLagMillis, nowMillis - pending.enqueuedMillis);
+        batch.add(pending);
+      }
+      if (queue.pending.isEmpty()) {
+        // An empty queue does not keep its credit
+        queue.deficit = 0;
+        active.pollFirst();
+      } else if (queue.deficit == 0) {
+        active.addLast(active.pollFirst());
+      }
+    }
+    return batch;
+  }
+
+  /**
+   * Puts back series that could not be sent. A series that got a newer point in the meantime is merged with it.
+   */
+  public void requeue(List<PendingSeries> batch) {
+    for (PendingSeries pending : batch) {
+      TenantQueue queue = pending.queue;
+      PendingSeries newer = queue.pending.putIfAbsent(pending.metadata, pending);
+      if (newer == null) {
+        if (queue.pending.size() == 1) {
+          active.addLast(queue);
+        }
+        continue;
+      }
+      newer.timeSeries = merge(pending.metadata, pending.timeSeries, newer.timeSeries);
+      newer.enqueuedMillis = Math.min(newer.enqueuedMillis, pending.enqueuedMillis);
+    }
+  }
+
+  /**
+   * Drops the oldest series of the tenants that have more pending series than the maximum. Called once a write sent
+   * what it could, so that the series of a single write are never dropped because of their number.
+   */
+  public void trim() {
+    int maxQueuedSeries = config.getMaxQueuedSeries();
+    for (Iterator<TenantQueue> tenants = active.iterator(); tenants.hasNext(); ) {
+      TenantQueue queue = tenants.next();
+      Iterator<PendingSeries> iterator = queue.pending.values().iterator();
+      while (queue.pending.size() > maxQueuedSeries) {
+        iterator.next();
+        iterator.remove();
+        queue.dropped++;
+      }
+      if (queue.pending.isEmpty()) {
+        queue.deficit = 0;
+        tenants.remove();
+      }
+    }
+  }
+
+  /**
+   * Returns the point to send for a series that has an older point still queued and a newer one. The points of a
+   * COUNTER series summed by their mapping only count the values of their own window, so they are added up over
+   * both windows. Other series send the newer point, which supersedes the older one.
+   */
+  static TimeSeries merge(TimeSeriesMetadata metadata, TimeSeries older, TimeSeries newer) {
+    if (metadata.getMetricKind() != MetricType.COUNTER || metadata.getAggregation() != AggregationType.SUM
+      || RateTracker.isRate(metadata) || older.getPointsCount() == 0 || newer.getPointsCount() == 0) {
+      return newer;
+    }
+    TimeInterval olderInterval = older.getPoints(0).getInterval();
+    TimeInterval newerInterval = newer.getPoints(0).getInterval();
+    TimeInterval interval = TimeInterval.newBuilder()
+      .setStartTime(Timestamps.compare(olderInterval.getStartTime(), newerInterval.getStartTime()) < 0 ?
+                      olderInterval.getStartTime() : newerInterval.getStartTime())
+      .setEndTime(Timestamps.compare(olderInterval.getEndTime(), newerInterval.getEndTime()) > 0 ?
+                    olderInterval.getEndTime() : newerInterval.getEndTime())
+      .build();
+    long value = older.getPoints(0).getValue().getInt64Value() + newer.getPoints(0).getValue().getInt64Value();
+    Point point = newer.getPoints(0).toBuilder()
+      .setInterval(interval)
+      .setValue(TypedValue.newBuilder().setInt64Value(value))
+      .build();
+    return newer.toBuilder().setPoints(0, point).build();
+  }
+
+  /**
+   * Returns the total number of pending series.
+   */
+  public int size() {
+    int size = 0;
+    for (TenantQueue queue : active) {
+      size += queue.pending.size();
+    }
+    return size;
+  }
+
+  /**
+   * Returns the number of pending series of the given tenant.
+   */
+  public int getQueueDepth(String tenant) {
+    TenantQueue queue = queues.get(tenant);
+    return queue == null ? 0 : queue.pending.size();
+  }
+
+  /**
+   * Returns the statistics of every tenant and resets the send lags and drop counts.
+   */
+  public List<TenantStats> collectStats() {
+    List<TenantStats> stats = new ArrayList<>(queues.size());
+    for (Iterator<TenantQueue> iterator = queues.values().iterator(); iterator.hasNext(); ) {
+      TenantQueue queue = iterator.next();
+      stats.add(new TenantStats(queue.tenant, queue.pending.size(), queue.sendLagMillis, queue.dropped));
+      queue.sendLagMillis = 0;
+      queue.dropped = 0;
+      if (queue.pending.isEmpty()) {
+        // Forget idle tenants, they are recreated with their next series
+        iterator.remove();
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Pending series queue of a tenant.
+   */
+  private static final class TenantQueue {
+    private final String tenant;
+    private final int weight;
+    private final LinkedHashMap<TimeSeriesMetadata, PendingSeries> pending = new LinkedHashMap<>();
+    private int deficit;
+    private long sendLagMillis;
+    private long dropped;
+
+    private TenantQueue(String tenant, int weight) {
+      this.tenant = tenant;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * A series waiting to be sent.
+   */
+  public static final class PendingSeries {
+    private final TenantQueue queue;
+    private final TimeSeriesMetadata metadata;
+    private long enqueuedMillis;
+    private TimeSeries timeSeries;
+
+    private PendingSeries(TenantQueue queue, TimeSeriesMetadata metadata, TimeSeries timeSeries,
+                          long enqueuedMillis) {
+      this.queue = queue;
+      this.metadata = metadata;
+      this.timeSeries = timeSeries;
+      this.enqueuedMillis = enqueuedMillis;
+    }
+
+    public String getTenant() {
+      return queue.tenant;
+    }
+
+    public TimeSeriesMetadata getMetadata() {
+      return metadata;
+    }
+
+    public TimeSeries getTimeSeries() {
+      return timeSeries;
+    }
+  }
+
+  /**
+   * Queue statistics of a tenant.
+   */
+  public static final class TenantStats {
+    private final String tenant;
+    private final int queueDepth;
+    private final long sendLagMillis;
+    private final long dropped;
+
+    private TenantStats(String tenant, int queueDepth, long sendLagMillis, long dropped) {
+      this.tenant = tenant;
+      this.queueDepth = queueDepth;
+      this.sendLagMillis = sendLagMillis;
+      this.dropped = dropped;
+    }
+
+    public String getTenant() {
+      return tenant;
+    }
+
+    public int getQueueDepth() {
+      return queueDepth;
+    }
+
+    /**
+     * Returns the maximum time a series sent since the last collection waited in the queue.
+     */
+    public long getSendLagMillis() {
+      return sendLagMillis;
+    }
+
+    public long getDropped() {
+      return dropped;
+    }
+  }
+}
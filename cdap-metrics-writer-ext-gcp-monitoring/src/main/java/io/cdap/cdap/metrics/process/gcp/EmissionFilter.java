@@ -0,0 +1,153 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import io.cdap.cdap.api.metrics.MetricType;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Drops GAUGE points that do not need to be sent, based on the emission settings of their {@link MetricsMapping}.
+ * <ul>
+ *   <li>emitOnChangeOnly: a point is skipped if its value equals the last emitted value, unless the series
+ *   has been silent for maxSilenceSeconds, in which case the value is sent again as a heartbeat.</li>
+ *   <li>minEmitIntervalSeconds: a point is skipped if the series emitted a point less than this many seconds ago.</li>
+ * </ul>
+ * Series sent as rates are not filtered, see {@link RateTracker}.
+ * Only the last emitted value and time are kept per series, and entries are dropped as soon as they can no longer
+ * suppress a point.
+ */
+public class EmissionFilter {
+
+  static final long DEFAULT_MAX_SILENCE_SECONDS = 600;
+
+  private final Map<TimeSeriesMetadata, EmittedPoint> lastEmitted = new HashMap<>();
+
+  /**
+   * Returns the series from the given map that should be emitted at the given time.
+   *
+   * @param timeSeries  Map of {@link TimeSeriesMetadata} and their long values
+   * @param nowSeconds  the end time of the points to emit
+   * @return the series to emit
+   */
+  public Map<TimeSeriesMetadata, List<Long>> filter(Map<TimeSeriesMetadata, List<Long>> timeSeries,
+                                                    long nowSeconds) {
+    Map<TimeSeriesMetadata, List<Long>> result = new LinkedHashMap<>();
+    for (Map.Entry<TimeSeriesMetadata, List<Long>> entry : timeSeries.entrySet()) {
+      if (shouldEmit(entry.getKey(), entry.getValue(), nowSeconds)) {
+        result.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Records the value of a series as emitted at the given time. Should be called once the series was sent
+   * successfully.
+   */
+  public void markEmitted(TimeSeriesMetadata metadata, long value, long nowSeconds) {
+    MetricsMapping mapping = getControllingMapping(metadata);
+    if (mapping == null) {
+      return;
+    }
+    long retention = Math.max(mapping.isEmitOnChangeOnly() ? mapping.getMaxSilenceSeconds() : 0L,
+                              mapping.getMinEmitIntervalSeconds());
+    EmittedPoint point = lastEmitted.computeIfAbsent(metadata, key -> new EmittedPoint());
+    point.value = value;
+    point.timeSeconds = nowSeconds;
+    point.expirySeconds = nowSeconds + retention;
+  }
+
+  /**
+   * Drops the state of the series that can no longer suppress a point.
+   */
+  public void expire(long nowSeconds) {
+    lastEmitted.values().removeIf(point -> point.expirySeconds <= nowSeconds);
+  }
+
+  /**
+   * Adds the last emitted points to the given list, to be saved in a {@link WriterCheckpoint}.
+   */
+  public void getState(List<WriterCheckpoint.SeriesState> states) {
+    lastEmitted.forEach((metadata, point) -> states.add(new WriterCheckpoint.SeriesState(
+      WriterCheckpoint.SeriesState.Kind.EMITTED, metadata, point.value, point.timeSeconds, point.expirySeconds)));
+  }
+
+  /**
+   * Restores a point saved in a {@link WriterCheckpoint}, unless the series emitted a point since it was restarted.
+   */
+  public void restore(WriterCheckpoint.SeriesState state) {
+    lastEmitted.computeIfAbsent(state.getMetadata(), key -> {
+      EmittedPoint point = new EmittedPoint();
+      point.value = state.getValue();
+      point.timeSeconds = state.getTimeSeconds();
+      point.expirySeconds = state.getExpirySeconds();
+      return point;
+    });
+  }
+
+  int size() {
+    return lastEmitted.size();
+  }
+
+  private boolean shouldEmit(TimeSeriesMetadata metadata, List<Long> values, long nowSeconds) {
+    MetricsMapping mapping = getControllingMapping(metadata);
+    if (mapping == null) {
+      return true;
+    }
+    EmittedPoint last = lastEmitted.get(metadata);
+    if (last == null || last.expirySeconds <= nowSeconds) {
+      return true;
+    }
+    long elapsed = nowSeconds - last.timeSeconds;
+    if (elapsed < mapping.getMinEmitIntervalSeconds()) {
+      return false;
+    }
+    if (!mapping.isEmitOnChangeOnly()) {
+      return true;
+    }
+    return elapsed >= mapping.getMaxSilenceSeconds()
+      || last.value != CloudMonitoringUtil.getAggregateValue(values, metadata.getAggregation());
+  }
+
+  /**
+   * Returns the mapping of the given series if emission of its points is controlled, or {@code null} otherwise.
+   */
+  @Nullable
+  private static MetricsMapping getControllingMapping(TimeSeriesMetadata metadata) {
+    MetricsMapping mapping = metadata.getMapping();
+    if (mapping == null || metadata.getMetricKind() != MetricType.GAUGE || !mapping.hasEmissionControl()
+      || mapping.isRate()) {
+      return null;
+    }
+    return mapping;
+  }
+
+  /**
+   * Last emitted point of a series.
+   */
+  private static final class EmittedPoint {
+    private long value;
+    private long timeSeconds;
+    // Time after which this entry can no longer suppress a point.
+    private long expirySeconds;
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hashed timing wheel of items due at a given tick. The wheel is an array of buckets, an item goes to the bucket of
+ * its due tick modulo the wheel size, and advancing the wheel by a tick only visits the bucket of that tick.
+ * <p>
+ * When the wheel is longer than the delays items are scheduled with, every item in the visited bucket is due, so a
+ * tick costs a constant plus the due items, whatever the number of items scheduled. If the wheel is advanced by more
+ * than its size at once, or for the first time, every bucket is visited once.
+ * This class is not thread safe.
+ *
+ * @param <T> type of the scheduled items
+ */
+public class HashedTimingWheel<T> {
+
+  private final List<Entry<T>>[] buckets;
+  private final int mask;
+  // Last tick processed, or -1 before the first advance
+  private long currentTick = -1;
+  private int size;
+
+  /**
+   * @param minTicks minimum number of buckets, rounded up to a power of two
+   */
+  @SuppressWarnings("unchecked")
+  public HashedTimingWheel(int minTicks) {
+    int ticks = Integer.highestOneBit(Math.max(1, minTicks - 1)) << 1;
+    this.buckets = new List[ticks];
+    this.mask = ticks - 1;
+  }
+
+  /**
+   * Schedules an item. An item due at or before the last processed tick is returned by the next advance.
+   */
+  public void schedule(T item, long dueTick) {
+    long tick = currentTick >= 0 && dueTick <= currentTick ? currentTick + 1 : dueTick;
+    int index = (int) (tick & mask);
+    List<Entry<T>> bucket = buckets[index];
+    if (bucket == null) {
+      bucket = new ArrayList<>();
+      buckets[index] = bucket;
+    }
+    bucket.add(new Entry<>(item, tick));
+    size++;
+  }
+
+  /**
+   * Advances the wheel to the given tick and returns the items due until then, removing them from the wheel.
+   */
+  public List<T> advance(long nowTick) {
+    List<T> due = new ArrayList<>();
+    if (currentTick < 0 || nowTick - currentTick > buckets.length) {
+      for (List<Entry<T>> bucket : buckets) {
+        expire(bucket, nowTick, due);
+      }
+    } else {
+      for (long tick = currentTick + 1; tick <= nowTick; tick++) {
+        expire(buckets[(int) (tick & mask)], tick, due);
+      }
+    }
+    currentTick = Math.max(currentTick, nowTick);
+    size -= due.size();
+    return due;
+  }
+
+  /**
+   * Returns the number of scheduled items.
+   */
+  public int size() {
+    return size;
+  }
+
+  private static <T> void expire(List<Entry<T>> bucket, long tick, List<T> due) {
+    if (bucket == null || bucket.isEmpty()) {
+      return;
+    }
+    int kept = 0;
+    for (int i = 0; i < bucket.size(); i++) {
+      Entry<T> entry = bucket.get(i);
+      if (entry.dueTick <= tick) {
+        due.add(entry.item);
+      } else {
+        // Due in a later turn of the wheel
+        bucket.set(kept++, entry);
+      }
+    }
+    bucket.subList(kept, bucket.size()).clear();
+  }
+
+  /**
+   * An item with its due tick.
+   */
+  private static final class Entry<T> {
+    private final T item;
+    private final long dueTick;
+
+    private Entry(T item, long dueTick) {
+      this.item = item;
+      this.dueTick = dueTick;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the number of distinct items added to it in a fixed amount of memory, with the HyperLogLog algorithm.
+ * Each item is hashed to one of 2^precision registers, which keeps the longest run of leading zeros seen in the
+ * rest of the hash. The standard error is about 1.04 / sqrt(2^precision), and small counts are estimated by
+ * linear counting, which is exact in practice while few registers are set.
+ * <p>
+ * Items are added by their hash code, which is spread over 64 bits, so two items with the same hash code count once.
+ * This class is not thread safe.
+ */
+public class HyperLogLog {
+
+  private final int precision;
+  private final byte[] registers;
+
+  /**
+   * @param precision number of bits of the register index, from 4 to 16
+   */
+  public HyperLogLog(int precision) {
+    if (precision < 4 || precision > 16) {
+      throw new IllegalArgumentException("The precision must be between 4 and 16, got " + precision);
+    }
+    this.precision = precision;
+    this.registers = new byte[1 << precision];
+  }
+
+  /**
+   * Adds an item given by its hash code.
+   */
+  public void add(int hashCode) {
+    long hash = mix(hashCode);
+    int index = (int) (hash >>> (64 - precision));
+    // The bit below the remaining bits bounds the rank when they are all zeros
+    long rest = (hash << precision) | (1L << (precision - 1));
+    byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+    if (rank > registers[index]) {
+      registers[index] = rank;
+    }
+  }
+
+  /**
+   * Returns the estimated number of distinct items added since the last clear.
+   */
+  public long estimate() {
+    int count = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte register : registers) {
+      sum += 1.0 / (1L << register);
+      if (register == 0) {
+        zeros++;
+      }
+    }
+    double estimate = getAlpha(count) * count * count / sum;
+    if (estimate <= 2.5 * count && zeros > 0) {
+      estimate = count * Math.log((double) count / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  public void clear() {
+    Arrays.fill(registers, (byte) 0);
+  }
+
+  private static double getAlpha(int count) {
+    switch (count) {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / (1 + 1.079 / count);
+    }
+  }
+
+  /**
+   * Spreads a hash code over 64 bits, with the finalizer of MurmurHash3.
+   */
+  private static long mix(int hashCode) {
+    long hash = hashCode;
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash;
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.annotation.Nullable;
+
+/**
+ * Computes the value of a label from the CDAP tags of a metric, as described by a {@link LabelMapping}.
+ * The template and the transforms are parsed once, and the transformed values are cached by input value, up to
+ * the most recently used values. A label copied from a single tag is evaluated without allocation. A template
+ * with several tags builds its input value on every call, the transforms are only run for values not cached.
+ */
+public final class LabelEvaluator {
+
+  // Maximum length of a label value in UTF-8 bytes, see https://cloud.google.com/monitoring/quotas
+  static final int MAX_LABEL_VALUE_LENGTH = 1024;
+  private static final int MAX_CACHE_SIZE = 10000;
+  // Max length of a label without maxLength, whose values are not truncated
+  private static final int NO_MAX_LENGTH = 0;
+  // Cached for the values the extract expression does not match
+  private static final String NO_VALUE = "\u0000";
+
+  // Constant value, if the label does not depend on tags
+  @Nullable
+  private final String constant;
+  // Literal parts of the template, one more than the tags
+  private final List<String> literals;
+  private final List<String> tags;
+  @Nullable
+  private final Pattern extract;
+  private final Map<String, String> valueMap;
+  private final boolean lowerCase;
+  private final int maxLength;
+  private final boolean hasTransforms;
+  private final Cache<String, String> cache = CacheBuilder.newBuilder().maximumSize(MAX_CACHE_SIZE).build();
+
+  private LabelEvaluator(String label, @Nullable String constant, List<String> literals, List<String> tags,
+                         @Nullable Pattern extract, Map<String, String> valueMap, boolean lowerCase,
+                         @Nullable Integer maxLength) {
+    if (maxLength != null && maxLength < 1) {
+      throw new IllegalArgumentException(String.format("Invalid maxLength %d for label '%s', it must be at least 1.",
+                                                       maxLength, label));
+    }
+    this.literals = literals;
+    this.tags = tags;
+    this.extract = extract;
+    this.valueMap = valueMap;
+    this.lowerCase = lowerCase;
+    this.maxLength = maxLength == null ? NO_MAX_LENGTH : Math.min(maxLength, MAX_LABEL_VALUE_LENGTH);
+    this.hasTransforms = extract != null || !valueMap.isEmpty() || lowerCase;
+    this.constant = constant == null ? null : transform(constant);
+  }
+
+  /**
+   * Compiles the given label mapping.
+   *
+   * @throws IllegalArgumentException if the template, the regular expression or the maximum length is not valid
+   */
+  public static LabelEvaluator compile(LabelMapping labelMapping) {
+    List<String> literals = new ArrayList<>();
+    List<String> tags = new ArrayList<>();
+    String constant = null;
+    if (labelMapping.getTemplate() != null) {
+      parseTemplate(labelMapping.getTemplate(), literals, tags);
+    } else if (labelMapping.getValueIsTag()) {
+      literals.add("");
+      literals.add("");
+      tags.add(labelMapping.getValue());
+    } else {
+      constant = labelMapping.getValue();
+    }
+
+    Pattern extract = null;
+    if (labelMapping.getExtract() != null) {
+      try {
+        extract = Pattern.compile(labelMapping.getExtract());
+      } catch (PatternSyntaxException e) {
+        throw new IllegalArgumentException(String.format("Invalid regular expression for label '%s': %s",
+                                                         labelMapping.getLabel(), e.getMessage()), e);
+      }
+    }
+    return new LabelEvaluator(labelMapping.getLabel(), constant, literals, tags, extract, labelMapping.getValueMap(),
+                              labelMapping.isLowerCase(), labelMapping.getMaxLength());
+  }
+
+  private static void parseTemplate(String template, List<String> literals, List<String> tags) {
+    int start = 0;
+    int open;
+    while ((open = template.indexOf('{', start)) >= 0) {
+      int close = template.indexOf('}', open);
+      if (close < 0 || close == open + 1) {
+        throw new IllegalArgumentException(String.format("Invalid label template '%s'.", template));
+      }
+      literals.add(template.substring(start, open));
+      tags.add(template.substring(open + 1, close));
+      start = close + 1;
+    }
+    literals.add(template.substring(start));
+  }
+
+  /**
+   * Returns the label value for the given tags, or {@code null} if a tag used by the label is missing or
+   * the extract expression does not match.
+   */
+  @Nullable
+  public String evaluate(Map<String, String> tagValues) {
+    if (tags.isEmpty()) {
+      return constant;
+    }
+    String raw;
+    if (tags.size() == 1 && literals.get(0).isEmpty() && literals.get(1).isEmpty()) {
+      raw = tagValues.get(tags.get(0));
+      if (raw == null) {
+        return null;
+      }
+    } else {
+      StringBuilder builder = new StringBuilder(literals.get(0));
+      for (int i = 0; i < tags.size(); i++) {
+        String value = tagValues.get(tags.get(i));
+        if (value == null) {
+          return null;
+        }
+        builder.append(value).append(literals.get(i + 1));
+      }
+      raw = builder.toString();
+    }
+    if (!hasTransforms) {
+      return truncate(raw);
+    }
+    String cached = cache.getIfPresent(raw);
+    if (cached != null) {
+      return NO_VALUE.equals(cached) ? null : cached;
+    }
+    String value = transform(raw);
+    cache.put(raw, value == null ? NO_VALUE : value);
+    return value;
+  }
+
+  @Nullable
+  private String transform(String raw) {
+    String value = raw;
+    if (extract != null) {
+      Matcher matcher = extract.matcher(value);
+      if (!matcher.find()) {
+        return null;
+      }
+      value = matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+      if (value == null) {
+        return null;
+      }
+    }
+    value = valueMap.getOrDefault(value, value);
+    if (lowerCase) {
+      value = value.toLowerCase(Locale.ROOT);
+    }
+    return truncate(value);
+  }
+
+  /**
+   * Returns the longest prefix of the given value that is at most maxLength bytes long in UTF-8, without splitting
+   * a character, or the value itself if the label has no maxLength.
+   */
+  private String truncate(String value) {
+    // A char takes at most 3 bytes, a surrogate pair 4 bytes for its 2 chars
+    if (maxLength == NO_MAX_LENGTH || value.length() * 3 <= maxLength) {
+      return value;
+    }
+    int bytes = 0;
+    int index = 0;
+    while (index < value.length()) {
+      int codePoint = value.codePointAt(index);
+      bytes += codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+      if (bytes > maxLength) {
+        return value.substring(0, index);
+      }
+      index += Character.charCount(codePoint);
+    }
+    return value;
+  }
+
+  /**
+   * Returns the names of the tags the label value is computed from.
+   */
+  public List<String> getTags() {
+    return Collections.unmodifiableList(tags);
+  }
+}
@@ -16,12 +16,25 @@
 
 package io.cdap.cdap.metrics.process.gcp;
 
+import java.util.Collections;
+import java.util.Map;
+import javax.annotation.Nullable;
+
 /**
  * Has the name/value mapping for Cloud monitoring label for a metric/resource and
  * details of value collection from a CDAP metric tag.
  * Some examples below.
  * {"label": "complete_state", "value": "completed", "valueIsTag": false}
  * {"label": "pipeline_id", "value": "app", "valueIsTag": true}
+ * <p>
+ * The value can also be built from several tags with a template, and transformed. The transforms are applied in
+ * order: regular expression extraction (first group, or whole match), value map, lower-casing, then truncation
+ * to maxLength bytes if set, capped at the Cloud Monitoring label value limit of 1024 bytes. Values are truncated
+ * in UTF-8 bytes, without splitting a character. Values of labels without maxLength are sent as they are.
+ * {"label": "pipeline", "template": "{ns}/{app}", "lowerCase": true, "maxLength": 100}
+ * {"label": "version", "value": "app", "valueIsTag": true, "extract": "-v(\\d+)$"}
+ * {"label": "mode", "value": "prg", "valueIsTag": true,
+ *  "valueMap": {"DataPipelineWorkflow": "batch", "DataStreamsSparkStreaming": "realtime"}}
  */
 public class LabelMapping {
 
@@ -29,11 +42,29 @@ public class LabelMapping {
   private final String value;
   // If true, value is the name of a CDAP tag.
   private final boolean valueIsTag;
+  // Template with CDAP tag names in braces, takes precedence over value if set.
+  private final String template;
+  private final String extract;
+  private final Map<String, String> valueMap;
+  private final Boolean lowerCase;
+  private final Integer maxLength;
+  private transient volatile LabelEvaluator evaluator;
 
   public LabelMapping(String label, String value, boolean valueIsTag) {
+    this(label, value, valueIsTag, null, null, null, null, null);
+  }
+
+  public LabelMapping(String label, @Nullable String value, boolean valueIsTag, @Nullable String template,
+                      @Nullable String extract, @Nullable Map<String, String> valueMap, @Nullable Boolean lowerCase,
+                      @Nullable Integer maxLength) {
     this.label = label;
     this.value = value;
     this.valueIsTag = valueIsTag;
+    this.template = template;
+    this.extract = extract;
+    this.valueMap = valueMap;
+    this.lowerCase = lowerCase;
+    this.maxLength = maxLength;
   }
 
   public String getLabel() {
@@ -48,12 +79,55 @@ public class LabelMapping {
     return valueIsTag;
   }
 
+  @Nullable
+  public String getTemplate() {
+    return template;
+  }
+
+  @Nullable
+  public String getExtract() {
+    return extract;
+  }
+
+  public Map<String, String> getValueMap() {
+    return valueMap == null ? Collections.emptyMap() : Collections.unmodifiableMap(valueMap);
+  }
+
+  public boolean isLowerCase() {
+    return lowerCase != null && lowerCase;
+  }
+
+  @Nullable
+  public Integer getMaxLength() {
+    return maxLength;
+  }
+
+  /**
+   * Returns the compiled evaluator of this label, compiling it on first use.
+   *
+   * @throws IllegalArgumentException if the template or the regular expression is not valid
+   */
+  public LabelEvaluator getEvaluator() {
+    // Not set by the constructor when deserialized through gson
+    LabelEvaluator result = evaluator;
+    if (result == null) {
+      result = LabelEvaluator.compile(this);
+      evaluator = result;
+    }
+    return result;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder();
     sb.append("LabelMapping{label=").append(label);
     sb.append(", value=").append(value);
     sb.append(", valueIsTag=").append(valueIsTag);
+    sb.append(", template=").append(template);
+    sb.append(", extract=").append(extract);
+    sb.append(", valueMap=").append(valueMap);
+    sb.append(", lowerCase=").append(lowerCase);
+    sb.append(", maxLength=").append(maxLength);
     sb.append('}');
     return sb.toString();
   }
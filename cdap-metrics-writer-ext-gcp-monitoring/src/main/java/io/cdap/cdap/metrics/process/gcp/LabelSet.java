@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The metric and resource labels of a series. Label sets are interned, so that all the series with the same labels
+ * share a single instance: its hash is computed once, and two label sets are equal only if they are the same
+ * instance. Label sets that are no longer referenced by any series are garbage collected.
+ */
+public final class LabelSet {
+
+  private static final Interner<LabelSet> INTERNER = Interners.newWeakInterner();
+
+  private final Map<String, String> metricLabels;
+  private final Map<String, String> resourceLabels;
+  private final int hash;
+
+  private LabelSet(Map<String, String> metricLabels, Map<String, String> resourceLabels) {
+    this.metricLabels = Collections.unmodifiableMap(metricLabels);
+    this.resourceLabels = Collections.unmodifiableMap(resourceLabels);
+    this.hash = metricLabels.hashCode() * 31 + resourceLabels.hashCode();
+  }
+
+  /**
+   * Returns the interned label set of the given labels. The maps must not be modified afterwards.
+   */
+  public static LabelSet of(Map<String, String> metricLabels, Map<String, String> resourceLabels) {
+    return INTERNER.intern(new LabelSet(metricLabels, resourceLabels));
+  }
+
+  public Map<String, String> getMetricLabels() {
+    return metricLabels;
+  }
+
+  public Map<String, String> getResourceLabels() {
+    return resourceLabels;
+  }
+
+  /**
+   * Compares the labels, only used by the interner. Interned label sets are equal if they are the same instance.
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    }
+    if (!(obj instanceof LabelSet)) {
+      return false;
+    }
+    LabelSet other = (LabelSet) obj;
+    return hash == other.hash && metricLabels.equals(other.metricLabels)
+      && resourceLabels.equals(other.resourceLabels);
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return "LabelSet{metricLabels=" + metricLabels + ", resourceLabels=" + resourceLabels + '}';
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import io.cdap.cdap.api.metrics.MetricType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Detects mappings whose series can be merged although their points are computed or sent differently.
+ * <p>
+ * The values of two mappings that produce the same metric type, resource type and labels are added to the same
+ * series, which only keeps the settings of the mapping that created it. This is fine when the mappings agree on the
+ * settings that shape the points of the series: aggregation, rate, emit interval, emission control and priority.
+ * Otherwise the points would depend on which mapping saw a value first, so such mappings are rejected, unless their
+ * series can never have the same labels: one of them has a constant label that the other one does not have, or has
+ * with a different value. Roll-ups are checked like the series of their mapping.
+ * <p>
+ * The series of a mapping all have the same metric kind, but two mappings that do not declare it can get values of
+ * different kinds, and Cloud Monitoring rejects a request with the same series of two kinds. Two mappings that can
+ * produce the same series are then rejected unless they declare the same metric kind.
+ */
+public final class MappingConflictDetector {
+
+  private MappingConflictDetector() {
+  }
+
+  /**
+   * Checks the given mappings.
+   *
+   * @param metricsMapping mappings by CDAP metric name
+   * @throws IllegalArgumentException if two mappings conflict
+   */
+  public static void check(Map<String, MetricsMapping> metricsMapping) {
+    Map<List<String>, List<SeriesSource>> sourcesByType = new HashMap<>();
+    for (Map.Entry<String, MetricsMapping> entry : metricsMapping.entrySet()) {
+      MetricsMapping mapping = entry.getValue();
+      String settings = getSettings(mapping);
+      Labels metricLabels = Labels.of(mapping.getMetricLabels(), Collections.emptyList());
+      Labels resourceLabels = Labels.of(mapping.getResourceLabels(), mapping.getAutoFillLabels());
+      add(sourcesByType, new SeriesSource(entry.getKey(), "'" + entry.getKey() + "'", mapping.getMetricType(),
+                                          mapping.getResourceType(), metricLabels, resourceLabels, settings,
+                                          mapping.getMetricKind()));
+      for (RollupMapping rollup : mapping.getRollups()) {
+        add(sourcesByType, new SeriesSource(entry.getKey(), "roll-up of '" + entry.getKey() + "'",
+                                            rollup.getMetricType(mapping), rollup.getResourceType(mapping),
+                                            metricLabels.keep(rollup.getMetricLabels()),
+                                            resourceLabels.keep(rollup.getResourceLabels()), settings,
+                                            mapping.getMetricKind()));
+      }
+    }
+  }
+
+  private static void add(Map<List<String>, List<SeriesSource>> sourcesByType, SeriesSource source) {
+    List<SeriesSource> sources = sourcesByType.computeIfAbsent(
+      Arrays.asList(source.metricType, source.resourceType), key -> new ArrayList<>());
+    for (SeriesSource other : sources) {
+      if (source.isSeparated(other)) {
+        continue;
+      }
+      if (!source.settings.equals(other.settings)) {
+        throw new IllegalArgumentException(String.format(
+          "The %s and the %s can produce the same series of '%s' with different settings: %s and %s.",
+          other.description, source.description, source.metricType, other.settings, source.settings));
+      }
+      // The series of a mapping and of its roll-ups have the kind of the mapping
+      if (!source.mappingKey.equals(other.mappingKey)
+        && (source.metricKind == null || source.metricKind != other.metricKind)) {
+        throw new IllegalArgumentException(String.format(
+          "The %s and the %s can produce the same series of '%s' with different metric kinds, "
+            + "they must declare the same \"metricKind\": %s and %s.",
+          other.description, source.description, source.metricType, other.metricKind, source.metricKind));
+      }
+    }
+    sources.add(source);
+  }
+
+  private static String getSettings(MetricsMapping mapping) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{aggregation=").append(mapping.getAggregation());
+    sb.append(", rate=").append(mapping.isRate());
+    if (mapping.isRate()) {
+      sb.append(", rateMaxGapSeconds=").append(mapping.getRateMaxGapSeconds());
+    }
+    sb.append(", emitIntervalSeconds=").append(mapping.getEmitIntervalSeconds());
+    sb.append(", emitOnChangeOnly=").append(mapping.isEmitOnChangeOnly());
+    if (mapping.isEmitOnChangeOnly()) {
+      sb.append(", maxSilenceSeconds=").append(mapping.getMaxSilenceSeconds());
+    }
+    sb.append(", minEmitIntervalSeconds=").append(mapping.getMinEmitIntervalSeconds());
+    sb.append(", priority=").append(mapping.getPriority());
+    sb.append('}');
+    return sb.toString();
+  }
+
+  /**
+   * The series of a mapping or of one of its roll-ups.
+   */
+  private static final class SeriesSource {
+    private final String mappingKey;
+    private final String description;
+    private final String metricType;
+    private final String resourceType;
+    private final Labels metricLabels;
+    private final Labels resourceLabels;
+    private final String settings;
+    @Nullable
+    private final MetricType metricKind;
+
+    private SeriesSource(String mappingKey, String description, String metricType, String resourceType,
+                         Labels metricLabels, Labels resourceLabels, String settings,
+                         @Nullable MetricType metricKind) {
+      this.mappingKey = mappingKey;
+      this.description = description;
+      this.metricType = metricType;
+      this.resourceType = resourceType;
+      this.metricLabels = metricLabels;
+      this.resourceLabels = resourceLabels;
+      this.settings = settings;
+      this.metricKind = metricKind;
+    }
+
+    /**
+     * Returns true if a series of this source can never have the same labels as a series of the other source.
+     */
+    private boolean isSeparated(SeriesSource other) {
+      return metricLabels.separates(other.metricLabels) || other.metricLabels.separates(metricLabels)
+        || resourceLabels.separates(other.resourceLabels) || other.resourceLabels.separates(resourceLabels);
+    }
+  }
+
+  /**
+   * The labels the series of a source can have.
+   */
+  private static final class Labels {
+    // Every label the series can have
+    private final Set<String> names;
+    // Labels every series has, with their value if it is a constant, or null if it is not known upfront
+    private final Map<String, String> present;
+
+    private Labels(Set<String> names, Map<String, String> present) {
+      this.names = names;
+      this.present = present;
+    }
+
+    private static Labels of(List<LabelMapping> labelMappings, List<String> autoFillLabels) {
+      Set<String> names = new HashSet<>();
+      Map<String, String> present = new HashMap<>();
+      for (LabelMapping labelMapping : labelMappings) {
+        LabelEvaluator evaluator = labelMapping.getEvaluator();
+        if (evaluator.getTags().isEmpty()) {
+          String value = evaluator.evaluate(Collections.emptyMap());
+          if (value != null) {
+            names.add(labelMapping.getLabel());
+            present.put(labelMapping.getLabel(), value);
+          }
+        } else {
+          names.add(labelMapping.getLabel());
+        }
+      }
+      for (String label : autoFillLabels) {
+        names.add(label);
+        present.put(label, null);
+      }
+      return new Labels(names, present);
+    }
+
+    /**
+     * Returns the labels kept by a roll-up.
+     *
+     * @param kept names of the labels to keep, or {@code null} to keep them all
+     */
+    private Labels keep(@Nullable List<String> kept) {
+      if (kept == null) {
+        return this;
+      }
+      Set<String> keptNames = new HashSet<>(names);
+      keptNames.retainAll(kept);
+      Map<String, String> keptPresent = new HashMap<>(present);
+      keptPresent.keySet().retainAll(kept);
+      return new Labels(keptNames, keptPresent);
+    }
+
+    /**
+     * Returns true if the series with these labels have a label that the other series never have, or always have
+     * with a different value.
+     */
+    private boolean separates(Labels other) {
+      for (Map.Entry<String, String> label : present.entrySet()) {
+        if (!other.names.contains(label.getKey())) {
+          return true;
+        }
+        String otherValue = other.present.get(label.getKey());
+        if (label.getValue() != null && otherValue != null && !label.getValue().equals(otherValue)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+/**
+ * Finds the {@link MetricsMapping} of a CDAP metric name. The keys of the mapping config are either exact metric
+ * names or patterns made of dot separated segments, where
+ * <ul>
+ *   <li>"*" matches exactly one segment, for example "system.*.records.out"</li>
+ *   <li>"**" as the last segment matches one or more segments, for example "user.**"</li>
+ * </ul>
+ * The segments matched by wildcards are captured and can be used as label values through the tags "$1", "$2", ...
+ * in their order in the pattern.
+ * <p>
+ * The patterns are compiled into a trie of segments, so the cost of a lookup depends on the number of segments of
+ * the name and not on the number of patterns. When several patterns match a name, the most specific one wins:
+ * segment by segment from the left, an exact segment is preferred over "*", which is preferred over "**".
+ * A pattern whose tag filters do not match is skipped and the next most specific pattern is tried.
+ * <p>
+ * The patterns matching a name are looked up once, walking the trie on index ranges of the name. Every pattern
+ * consumes one segment per level, so each node of the trie is visited at most once per name. The matches are then
+ * cached by metric name, unmapped names included, so that the lookup of a name seen before is a single map lookup
+ * that does not allocate. The set of metric names is mostly stable, so once the cache is full, the names not seen
+ * before are matched without being cached rather than evicting the names in use.
+ */
+public final class MetricNameMatcher {
+
+  static final String CAPTURE_PREFIX = "$";
+  private static final String ONE_SEGMENT = "*";
+  private static final String MANY_SEGMENTS = "**";
+  private static final int MAX_CACHED_NAMES = 10000;
+
+  private final Node root = new Node();
+  private final ConcurrentMap<String, List<Match>> matches = new ConcurrentHashMap<>();
+  private final int maxCachedNames;
+
+  private MetricNameMatcher(int maxCachedNames) {
+    this.maxCachedNames = maxCachedNames;
+  }
+
+  /**
+   * Compiles the keys of the given mapping into a matcher.
+   *
+   * @throws IllegalArgumentException if a key is not a valid pattern
+   */
+  public static MetricNameMatcher compile(Map<String, MetricsMapping> metricsMapping) {
+    return compile(metricsMapping, MAX_CACHED_NAMES);
+  }
+
+  @VisibleForTesting
+  static MetricNameMatcher compile(Map<String, MetricsMapping> metricsMapping, int maxCachedNames) {
+    MetricNameMatcher matcher = new MetricNameMatcher(maxCachedNames);
+    for (Map.Entry<String, MetricsMapping> entry : metricsMapping.entrySet()) {
+      matcher.add(entry.getKey(), entry.getValue());
+    }
+    return matcher;
+  }
+
+  private void add(String pattern, MetricsMapping mapping) {
+    String[] segments = pattern.split("\\.", -1);
+    Node node = root;
+    for (int i = 0; i < segments.length; i++) {
+      String segment = segments[i];
+      if (segment.isEmpty()) {
+        throw new IllegalArgumentException(String.format("Invalid metric name pattern '%s', empty segment.",
+                                                         pattern));
+      }
+      if (MANY_SEGMENTS.equals(segment)) {
+        if (i != segments.length - 1) {
+          throw new IllegalArgumentException(String.format(
+            "Invalid metric name pattern '%s', '%s' is only allowed as last segment.", pattern, MANY_SEGMENTS));
+        }
+        node.suffixMatch = new Match(pattern, mapping, Collections.emptyList());
+        return;
+      }
+      if (ONE_SEGMENT.equals(segment)) {
+        if (node.wildcard == null) {
+          node.wildcard = new Node();
+        }
+        node = node.wildcard;
+      } else {
+        node = node.children.computeIfAbsent(segment);
+      }
+    }
+    node.match = new Match(pattern, mapping, Collections.emptyList());
+  }
+
+  /**
+   * Returns the most specific match for the given metric name whose mapping is accepted, or {@code null}.
+   *
+   * @param metricName the CDAP metric name
+   * @param accept     returns true if a mapping can be used, for example when its tag filters match
+   */
+  @Nullable
+  public Match find(String metricName, Predicate<MetricsMapping> accept) {
+    for (Match match : getMatches(metricName)) {
+      if (accept.test(match.mapping)) {
+        return match;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns all the matches for the given metric name, the most specific first.
+   */
+  public List<Match> getMatches(String metricName) {
+    List<Match> result = matches.get(metricName);
+    if (result == null) {
+      result = match(metricName);
+      if (matches.size() < maxCachedNames) {
+        matches.putIfAbsent(metricName, result);
+      }
+    }
+    return result;
+  }
+
+  private List<Match> match(String name) {
+    List<Match> result = new ArrayList<>(1);
+    match(root, name, 0, new int[2 * countSegments(name)], 0, result);
+    return result.isEmpty() ? Collections.emptyList() : result;
+  }
+
+  /**
+   * Adds the matches of the name from the given node to the result, the most specific first.
+   *
+   * @param start    start of the next segment of the name
+   * @param captures start and end of the segments captured so far
+   * @param captured number of segments captured so far
+   */
+  private void match(Node node, String name, int start, int[] captures, int captured, List<Match> result) {
+    if (start > name.length()) {
+      // All the segments are consumed
+      if (node.match != null) {
+        result.add(node.match.withCaptures(name, captures, captured));
+      }
+      return;
+    }
+    int end = name.indexOf('.', start);
+    if (end < 0) {
+      end = name.length();
+    }
+    Node child = node.children.get(name, start, end);
+    if (child != null) {
+      match(child, name, end + 1, captures, captured, result);
+    }
+    if (node.wildcard != null) {
+      captures[2 * captured] = start;
+      captures[2 * captured + 1] = end;
+      match(node.wildcard, name, end + 1, captures, captured + 1, result);
+    }
+    if (node.suffixMatch != null) {
+      captures[2 * captured] = start;
+      captures[2 * captured + 1] = name.length();
+      result.add(node.suffixMatch.withCaptures(name, captures, captured + 1));
+    }
+  }
+
+  private static int countSegments(String name) {
+    int count = 1;
+    for (int i = 0; i < name.length(); i++) {
+      if (name.charAt(i) == '.') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * A node of the trie, for one segment of the patterns.
+   */
+  private static final class Node {
+    private final SegmentMap children = new SegmentMap();
+    // Child for a "*" segment
+    private Node wildcard;
+    // Pattern ending at this node
+    private Match match;
+    // Pattern with a "**" segment after this node
+    private Match suffixMatch;
+  }
+
+  /**
+   * Children of a node by segment, looked up by a range of the metric name rather than by a substring. Open
+   * addressing with linear probing, with the hash of {@link String#hashCode}.
+   */
+  private static final class SegmentMap {
+    private String[] keys = new String[4];
+    private Node[] nodes = new Node[4];
+    private int size;
+
+    Node computeIfAbsent(String segment) {
+      Node node = get(segment, 0, segment.length());
+      if (node != null) {
+        return node;
+      }
+      if (2 * (size + 1) > keys.length) {
+        resize();
+      }
+      node = new Node();
+      put(segment, node);
+      return node;
+    }
+
+    @Nullable
+    Node get(String name, int start, int end) {
+      int mask = keys.length - 1;
+      for (int i = hash(name, start, end) & mask; keys[i] != null; i = (i + 1) & mask) {
+        String key = keys[i];
+        if (key.length() == end - start && key.regionMatches(0, name, start, end - start)) {
+          return nodes[i];
+        }
+      }
+      return null;
+    }
+
+    private void put(String segment, Node node) {
+      int mask = keys.length - 1;
+      int i = segment.hashCode() & mask;
+      while (keys[i] != null) {
+        i = (i + 1) & mask;
+      }
+      keys[i] = segment;
+      nodes[i] = node;
+      size++;
+    }
+
+    private void resize() {
+      String[] oldKeys = keys;
+      Node[] oldNodes = nodes;
+      keys = new String[oldKeys.length * 2];
+      nodes = new Node[oldKeys.length * 2];
+      size = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != null) {
+          put(oldKeys[i], oldNodes[i]);
+        }
+      }
+    }
+
+    private static int hash(String name, int start, int end) {
+      int hash = 0;
+      for (int i = start; i < end; i++) {
+        hash = 31 * hash + name.charAt(i);
+      }
+      return hash;
+    }
+  }
+
+  /**
+   * A matched mapping, with the segments captured by the wildcards of its pattern.
+   */
+  public static final class Match {
+    private final String key;
+    private final MetricsMapping mapping;
+    private final List<String> captures;
+
+    private Match(String key, MetricsMapping mapping, List<String> captures) {
+      this.key = key;
+      this.mapping = mapping;
+      this.captures = captures;
+    }
+
+    private Match withCaptures(String name, int[] ranges, int count) {
+      if (count == 0) {
+        return this;
+      }
+      String[] captured = new String[count];
+      for (int i = 0; i < count; i++) {
+        captured[i] = name.substring(ranges[2 * i], ranges[2 * i + 1]);
+      }
+      return new Match(key, mapping, Arrays.asList(captured));
+    }
+
+    /**
+     * Returns the key of the mapping in the config.
+     */
+    public String getKey() {
+      return key;
+    }
+
+    public MetricsMapping getMapping() {
+      return mapping;
+    }
+
+    public List<String> getCaptures() {
+      return Collections.unmodifiableList(captures);
+    }
+
+    /**
+     * Returns the given tags with the captured segments added as the tags "$1", "$2", ...
+     */
+    public Map<String, String> addCaptures(Map<String, String> tags) {
+      if (captures.isEmpty()) {
+        return tags;
+      }
+      Map<String, String> result = new HashMap<>(tags);
+      for (int i = 0; i < captures.size(); i++) {
+        result.put(CAPTURE_PREFIX + (i + 1), captures.get(i));
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import io.cdap.cdap.api.metrics.MetricType;
+import io.cdap.cdap.api.metrics.MetricValue;
+import io.cdap.cdap.api.metrics.MetricValues;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the batches of a capture file written by {@link MetricsCaptureWriter}. A corrupt file is reported with an
+ * {@link IOException} that gives the byte offset of the corrupt data.
+ */
+public class MetricsCaptureReader implements Closeable {
+
+  private static final MetricType[] METRIC_TYPES = MetricType.values();
+
+  private final Path path;
+  private final long fileSize;
+  private final DataInputStream input;
+  private final List<String> dictionary = new ArrayList<>();
+  // Byte offset of the next record in the file
+  private long offset;
+
+  public MetricsCaptureReader(Path path) throws IOException {
+    this.path = path;
+    this.fileSize = Files.size(path);
+    this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+    if (input.readInt() != MetricsCaptureWriter.MAGIC) {
+      input.close();
+      throw new IOException("File " + path + " is not a metrics capture file.");
+    }
+    int version = input.readInt();
+    if (version != MetricsCaptureWriter.VERSION) {
+      input.close();
+      throw new IOException("Unsupported capture file version " + version + " in " + path);
+    }
+    offset = 8;
+  }
+
+  /**
+   * Returns the next batch, or {@code null} at the end of the file. A record truncated by a writer that did not
+   * close the file is treated as the end of the file.
+   *
+   * @throws IOException if the file cannot be read or the record is corrupt
+   */
+  @Nullable
+  public CapturedBatch next() throws IOException {
+    long recordOffset = offset;
+    byte[] payload;
+    try {
+      int length = input.readInt();
+      if (length < 0) {
+        throw corrupt("Invalid record length " + length, recordOffset);
+      }
+      if (length > fileSize - recordOffset - 4) {
+        return null;
+      }
+      payload = new byte[length];
+      input.readFully(payload);
+    } catch (EOFException e) {
+      return null;
+    }
+    int recordLength = payload.length;
+    offset += 4 + recordLength;
+
+    ByteArrayInputStream recordBytes = new ByteArrayInputStream(payload);
+    DataInputStream record = new DataInputStream(recordBytes);
+    // Offset in the file of the byte read last from the record
+    LongSupplier position = () -> recordOffset + 4 + recordLength - recordBytes.available() - 1;
+    try {
+      long captureTimeMillis = VarInts.readVarLong(record);
+      int newStrings = readCount(record, position);
+      for (int i = 0; i < newStrings; i++) {
+        dictionary.add(record.readUTF());
+      }
+      int valuesCount = readCount(record, position);
+      List<MetricValues> batch = new ArrayList<>(valuesCount);
+      for (int i = 0; i < valuesCount; i++) {
+        long timestamp = VarInts.readVarLong(record);
+        int tagCount = readCount(record, position);
+        Map<String, String> tags = new HashMap<>();
+        for (int j = 0; j < tagCount; j++) {
+          tags.put(readString(record, position), readString(record, position));
+        }
+        int metricCount = readCount(record, position);
+        List<MetricValue> metrics = new ArrayList<>(metricCount);
+        for (int j = 0; j < metricCount; j++) {
+          String name = readString(record, position);
+          int type = record.readUnsignedByte();
+          if (type >= METRIC_TYPES.length) {
+            throw corrupt("Unknown metric type " + type, position.getAsLong());
+          }
+          metrics.add(new MetricValue(name, METRIC_TYPES[type],
+                                      VarInts.unZigZag(VarInts.readVarLong(record))));
+        }
+        batch.add(new MetricValues(tags, timestamp, metrics));
+      }
+      return new CapturedBatch(captureTimeMillis, batch);
+    } catch (EOFException e) {
+      throw corrupt("Record ends before its data", recordOffset, e);
+    } catch (CorruptRecordException e) {
+      throw e;
+    } catch (IOException e) {
+      throw corrupt("Malformed data", position.getAsLong(), e);
+    }
+  }
+
+  /**
+   * Reads the number of elements that follow. Every element takes at least one byte, so a larger count than the
+   * number of bytes left in the record is corrupt.
+   */
+  private int readCount(DataInputStream record, LongSupplier position) throws IOException {
+    long count = VarInts.readVarLong(record);
+    if (count > record.available()) {
+      throw corrupt("Invalid count " + count, position.getAsLong());
+    }
+    return (int) count;
+  }
+
+  private String readString(DataInputStream record, LongSupplier position) throws IOException {
+    long id = VarInts.readVarLong(record);
+    if (id == 0) {
+      return record.readUTF();
+    }
+    if (id > dictionary.size()) {
+      throw corrupt("Unknown string id " + (id - 1), position.getAsLong());
+    }
+    return dictionary.get((int) id - 1);
+  }
+
+  private IOException corrupt(String message, long byteOffset) {
+    return corrupt(message, byteOffset, null);
+  }
+
+  private IOException corrupt(String message, long byteOffset, @Nullable Throwable cause) {
+    return new CorruptRecordException(String.format("%s at byte offset %d of capture file %s.",
+                                                    message, byteOffset, path), cause);
+  }
+
+  @Override
+  public void close() throws IOException {
+    input.close();
+  }
+
+  /**
+   * Thrown for corrupt data, already carries the byte offset.
+   */
+  private static final class CorruptRecordException extends IOException {
+    private CorruptRecordException(String message, @Nullable Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  /**
+   * A batch of {@link MetricValues} with the time it was given to the writer.
+   */
+  public static final class CapturedBatch {
+    private final long captureTimeMillis;
+    private final List<MetricValues> metricValues;
+
+    private CapturedBatch(long captureTimeMillis, List<MetricValues> metricValues) {
+      this.captureTimeMillis = captureTimeMillis;
+      this.metricValues = metricValues;
+    }
+
+    public long getCaptureTimeMillis() {
+      return captureTimeMillis;
+    }
+
+    public List<MetricValues> getMetricValues() {
+      return metricValues;
+    }
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.cdap.cdap.api.metrics.MetricValue;
+import io.cdap.cdap.api.metrics.MetricValues;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.Nullable;
+
+/**
+ * Appends the {@link MetricValues} batches given to the writer to a capture file, so that production traffic can be
+ * replayed offline with {@link MetricsReplayRunner}.
+ * <p>
+ * The file starts with a magic number and a format version, followed by one record per batch. A record is the
+ * length of its payload as an int followed by the payload:
+ * <pre>
+ *   payload      := captureTimeMillis newStringCount newString* valuesCount metricValues*
+ *   metricValues := timestamp tagCount (tagName tagValue)* metricCount metric*
+ *   metric       := name type value
+ *   string       := id + 1 | 0 utf
+ * </pre>
+ * Tag names, tag values and metric names are dictionary encoded: a string is written once, in the record where it
+ * first appears, and is referred to by its id after that. Once the dictionary is full, new strings are written in
+ * place each time they appear. Counts, ids and timestamps are variable length integers, the type is a byte and the
+ * value a zig-zag encoded variable length integer.
+ * <p>
+ * Appending a batch does not block: the batch is queued for a thread of the writer, which encodes it and writes it
+ * to the file. When more than {@link #MAX_PENDING_BATCHES} batches wait for that thread, further batches are not
+ * captured until it catches up. Records are buffered and written to the file at most every second and when the
+ * writer is closed, so a process that stops without closing the writer loses the last records. The reader ignores
+ * a truncated last record.
+ * This class is thread safe.
+ */
+public class MetricsCaptureWriter implements Closeable {
+
+  static final int MAGIC = 0x434D5743;
+  static final int VERSION = 2;
+  static final int DEFAULT_MAX_DICTIONARY_SIZE = 100000;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long FLUSH_INTERVAL_MILLIS = 1000L;
+  static final int MAX_PENDING_BATCHES = 1000;
+
+  private final Queue<PendingBatch> pending = new ConcurrentLinkedQueue<>();
+  // Number of batches queued or being written
+  private final AtomicInteger pendingCount = new AtomicInteger();
+  private final AtomicLong droppedBatches = new AtomicLong();
+  private final Thread writerThread;
+  // Set by the writer thread once the file reached its maximum size
+  private volatile boolean full;
+  private volatile boolean closed;
+  @Nullable
+  private volatile IOException failure;
+  // The fields below are only accessed by the writer thread, once it is started
+  private final DataOutputStream output;
+  private final long maxBytes;
+  private final int maxDictionarySize;
+  private final Map<String, Integer> dictionary = new HashMap<>();
+  private final List<String> newStrings = new ArrayList<>();
+  private final ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+  private final DataOutputStream body = new DataOutputStream(bodyBytes);
+  private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+  private final DataOutputStream record = new DataOutputStream(recordBytes);
+  private long size;
+  private long lastFlushMillis;
+
+  /**
+   * Creates a capture file, replacing any existing file.
+   *
+   * @param path     the path of the capture file
+   * @param maxBytes size after which batches are no longer captured
+   */
+  public MetricsCaptureWriter(Path path, long maxBytes) throws IOException {
+    this(path, maxBytes, DEFAULT_MAX_DICTIONARY_SIZE);
+  }
+
+  @VisibleForTesting
+  MetricsCaptureWriter(Path path, long maxBytes, int maxDictionarySize) throws IOException {
+    this.output = new DataOutputStream(new BufferedOutputStream(
+      Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                            StandardOpenOption.WRITE), BUFFER_SIZE));
+    this.maxBytes = maxBytes;
+    this.maxDictionarySize = maxDictionarySize;
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    size = 8;
+    this.writerThread = new ThreadFactoryBuilder().setNameFormat("metrics-capture-writer").setDaemon(true).build()
+      .newThread(this::run);
+    writerThread.start();
+  }
+
+  /**
+   * Queues a batch to be appended to the capture file. The batch must not be changed after that.
+   *
+   * @return false if the batch was not captured because the file reached its maximum size
+   * @throws IOException if the writer is closed, or failed to write a previous batch
+   */
+  public boolean append(Collection<MetricValues> metricValues, long captureTimeMillis) throws IOException {
+    IOException error = failure;
+    if (error != null) {
+      throw error;
+    }
+    if (closed) {
+      throw new IOException("The capture file is closed.");
+    }
+    if (full) {
+      return false;
+    }
+    if (pendingCount.incrementAndGet() > MAX_PENDING_BATCHES) {
+      pendingCount.decrementAndGet();
+      droppedBatches.incrementAndGet();
+      return true;
+    }
+    pending.add(new PendingBatch(new ArrayList<>(metricValues), captureTimeMillis));
+    LockSupport.unpark(writerThread);
+    return true;
+  }
+
+  /**
+   * Returns the number of batches that were not captured because too many batches were waiting to be written.
+   */
+  public long getDroppedBatches() {
+    return droppedBatches.get();
+  }
+
+  /**
+   * Waits until the batches appended so far are written, or the writer thread stopped.
+   */
+  @VisibleForTesting
+  void awaitWritten() throws InterruptedException {
+    while (pendingCount.get() > 0 && writerThread.isAlive()) {
+      TimeUnit.MILLISECONDS.sleep(1);
+    }
+  }
+
+  private void run() {
+    try {
+      while (true) {
+        PendingBatch batch = pending.poll();
+        if (batch == null) {
+          // Batches queued before the writer was closed are still written
+          if (closed && pending.isEmpty()) {
+            return;
+          }
+          LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS));
+          continue;
+        }
+        try {
+          if (!full) {
+            write(batch.metricValues, batch.captureTimeMillis);
+          }
+        } finally {
+          pendingCount.decrementAndGet();
+        }
+      }
+    } catch (IOException e) {
+      failure = e;
+    }
+  }
+
+  private void write(Collection<MetricValues> metricValues, long captureTimeMillis) throws IOException {
+    if (size >= maxBytes) {
+      full = true;
+      return;
+    }
+    bodyBytes.reset();
+    newStrings.clear();
+    VarInts.writeVarLong(body, metricValues.size());
+    for (MetricValues values : metricValues) {
+      VarInts.writeVarLong(body, values.getTimestamp());
+      VarInts.writeVarLong(body, values.getTags().size());
+      for (Map.Entry<String, String> tag : values.getTags().entrySet()) {
+        writeString(tag.getKey());
+        writeString(tag.getValue());
+      }
+      VarInts.writeVarLong(body, values.getMetrics().size());
+      for (MetricValue metricValue : values.getMetrics()) {
+        writeString(metricValue.getName());
+        body.writeByte(metricValue.getType().ordinal());
+        VarInts.writeVarLong(body, VarInts.zigZag(metricValue.getValue()));
+      }
+    }
+
+    recordBytes.reset();
+    VarInts.writeVarLong(record, captureTimeMillis);
+    VarInts.writeVarLong(record, newStrings.size());
+    for (String string : newStrings) {
+      record.writeUTF(string);
+    }
+    bodyBytes.writeTo(record);
+
+    output.writeInt(recordBytes.size());
+    recordBytes.writeTo(output);
+    size += 4 + recordBytes.size();
+    if (captureTimeMillis - lastFlushMillis >= FLUSH_INTERVAL_MILLIS) {
+      output.flush();
+      lastFlushMillis = captureTimeMillis;
+    }
+    if (size >= maxBytes) {
+      full = true;
+    }
+  }
+
+  private void writeString(String string) throws IOException {
+    Integer id = dictionary.get(string);
+    if (id == null) {
+      if (dictionary.size() >= maxDictionarySize) {
+        VarInts.writeVarLong(body, 0);
+        body.writeUTF(string);
+        return;
+      }
+      id = dictionary.size();
+      dictionary.put(string, id);
+      newStrings.add(string);
+    }
+    VarInts.writeVarLong(body, id + 1L);
+  }
+
+  /**
+   * Writes the batches queued so far and closes the file.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    LockSupport.unpark(writerThread);
+    try {
+      writerThread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while writing the last batches of the capture file.");
+    } finally {
+      output.close();
+    }
+    IOException error = failure;
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /**
+   * A batch waiting to be written.
+   */
+  private static final class PendingBatch {
+    private final Collection<MetricValues> metricValues;
+    private final long captureTimeMillis;
+
+    private PendingBatch(Collection<MetricValues> metricValues, long captureTimeMillis) {
+      this.metricValues = metricValues;
+      this.captureTimeMillis = captureTimeMillis;
+    }
+  }
+}
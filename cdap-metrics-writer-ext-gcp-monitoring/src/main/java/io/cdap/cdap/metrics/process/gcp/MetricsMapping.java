@@ -16,6 +16,8 @@
 
 package io.cdap.cdap.metrics.process.gcp;
 
+import io.cdap.cdap.api.metrics.MetricType;
+
 import java.util.Collections;
 import java.util.List;
 import javax.annotation.Nullable;
@@ -44,6 +46,28 @@ import javax.annotation.Nullable;
  * {"tag": "prg", "values": "DataPipelineWorkflow,DataStreamsSparkStreaming"}
  * ]
  * }
+ * <p>
+ * Series of mappings with "priority": "HIGH", such as failure counts, are sent ahead of the bulk series, see
+ * {@link MonitoringDestination}.
+ * <p>
+ * GAUGE values can optionally be thinned out with "emitOnChangeOnly", "maxSilenceSeconds" and
+ * "minEmitIntervalSeconds", see {@link EmissionFilter}.
+ * <p>
+ * "rollups" declares aggregate series computed locally from the series of the mapping by dropping labels, see
+ * {@link RollupMapping}.
+ * <p>
+ * With "rate": true, the series are sent as DOUBLE GAUGE per second rates instead of their values, see
+ * {@link RateTracker}. "rateMaxGapSeconds" bounds the time across which a rate is derived from cumulative readings.
+ * <p>
+ * "emitIntervalSeconds" sends the series of the mapping once per interval, such as 10 for failure counts or 300 for
+ * capacity gauges, instead of on every write. Their points then end on the multiples of the interval and start after
+ * the previous point. Intervals shorter than the time between two writes are rounded up to it, the points then cover
+ * the time since the previous write. See {@link SeriesTable}.
+ * <p>
+ * "metricKind", COUNTER or GAUGE, fixes the kind of the series of the mapping. Without it, the series take the kind
+ * of the first value the mapping gets. Values of the other kind are added to the series like values of its kind, so
+ * a mapping never produces the same series with two kinds, which Cloud Monitoring would reject. Mappings that can
+ * produce the same series must declare the same kind, see {@link MappingConflictDetector}.
  */
 public class MetricsMapping {
 
@@ -54,17 +78,52 @@ public class MetricsMapping {
   private final List<LabelMapping> metricLabels;
   private final List<TagFilter> tagFilters;
   private final AggregationType aggregation;
+  // If true, a GAUGE point is only emitted when its value differs from the last emitted one.
+  private final Boolean emitOnChangeOnly;
+  // Maximum time an unchanged GAUGE series stays silent before its value is emitted again.
+  private final Long maxSilenceSeconds;
+  // Minimum time between two emitted points of the same GAUGE series.
+  private final Long minEmitIntervalSeconds;
+  private final Priority priority;
+  private final List<RollupMapping> rollups;
+  private final Boolean rate;
+  // Maximum time between two readings of a cumulative GAUGE series to derive a rate from them.
+  private final Long rateMaxGapSeconds;
+  private final Long emitIntervalSeconds;
+  private final MetricType metricKind;
 
   public MetricsMapping(String metricType, String resourceType, List<LabelMapping> resourceLabels,
                         List<String> autoFillLabels, List<LabelMapping> metricLabels, List<TagFilter> tagFilters,
                         @Nullable AggregationType aggregation) {
-    this.metricType = metricType;
-    this.resourceType = resourceType;
-    this.resourceLabels = resourceLabels;
-    this.autoFillLabels = autoFillLabels;
-    this.metricLabels = metricLabels;
-    this.tagFilters = tagFilters;
-    this.aggregation = aggregation;
+    this(builder(metricType, resourceType).setResourceLabels(resourceLabels).setAutoFillLabels(autoFillLabels)
+           .setMetricLabels(metricLabels).setTagFilters(tagFilters).setAggregation(aggregation));
+  }
+
+  private MetricsMapping(Builder builder) {
+    this.metricType = builder.metricType;
+    this.resourceType = builder.resourceType;
+    this.resourceLabels = builder.resourceLabels;
+    this.autoFillLabels = builder.autoFillLabels;
+    this.metricLabels = builder.metricLabels;
+    this.tagFilters = builder.tagFilters;
+    this.aggregation = builder.aggregation;
+    this.emitOnChangeOnly = builder.emitOnChangeOnly;
+    this.maxSilenceSeconds = builder.maxSilenceSeconds;
+    this.minEmitIntervalSeconds = builder.minEmitIntervalSeconds;
+    this.priority = builder.priority;
+    this.rollups = builder.rollups;
+    this.rate = builder.rate;
+    this.rateMaxGapSeconds = builder.rateMaxGapSeconds;
+    this.emitIntervalSeconds = builder.emitIntervalSeconds;
+    this.metricKind = builder.metricKind;
+  }
+
+  /**
+   * Returns a builder of a mapping to the given metric and resource types. Settings that are not set take their
+   * default values, as when they are missing from the config file.
+   */
+  public static Builder builder(String metricType, String resourceType) {
+    return new Builder(metricType, resourceType);
   }
 
   public String getMetricType() {
@@ -95,6 +154,57 @@ public class MetricsMapping {
     return aggregation == null ? AggregationType.SUM : aggregation;
   }
 
+  public boolean isEmitOnChangeOnly() {
+    return emitOnChangeOnly != null && emitOnChangeOnly;
+  }
+
+  public long getMaxSilenceSeconds() {
+    return maxSilenceSeconds == null ? EmissionFilter.DEFAULT_MAX_SILENCE_SECONDS : maxSilenceSeconds;
+  }
+
+  public long getMinEmitIntervalSeconds() {
+    return minEmitIntervalSeconds == null ? 0L : minEmitIntervalSeconds;
+  }
+
+  public Priority getPriority() {
+    return priority == null ? Priority.NORMAL : priority;
+  }
+
+  public List<RollupMapping> getRollups() {
+    return rollups == null ? Collections.emptyList() : Collections.unmodifiableList(rollups);
+  }
+
+  public boolean isRate() {
+    return rate != null && rate;
+  }
+
+  public long getRateMaxGapSeconds() {
+    return rateMaxGapSeconds == null ? RateTracker.DEFAULT_MAX_GAP_SECONDS : rateMaxGapSeconds;
+  }
+
+  /**
+   * Returns the interval the series of this mapping are sent at, or 0 to send them on every write.
+   */
+  public long getEmitIntervalSeconds() {
+    return emitIntervalSeconds == null ? 0L : Math.max(0L, emitIntervalSeconds);
+  }
+
+  /**
+   * Returns the declared kind of the series of this mapping, or {@code null} if they take the kind of the first value
+   * of the mapping.
+   */
+  @Nullable
+  public MetricType getMetricKind() {
+    return metricKind;
+  }
+
+  /**
+   * Returns true if GAUGE points of this mapping are subject to change-only or minimum interval emission.
+   */
+  public boolean hasEmissionControl() {
+    return isEmitOnChangeOnly() || getMinEmitIntervalSeconds() > 0;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder();
@@ -103,7 +213,118 @@ public class MetricsMapping {
     sb.append(", resourceLabels=").append(resourceLabels);
     sb.append(", metricLabels=").append(metricLabels);
     sb.append(", tagFilters=").append(tagFilters);
+    sb.append(", aggregation=").append(aggregation);
+    sb.append(", emitOnChangeOnly=").append(emitOnChangeOnly);
+    sb.append(", maxSilenceSeconds=").append(maxSilenceSeconds);
+    sb.append(", minEmitIntervalSeconds=").append(minEmitIntervalSeconds);
+    sb.append(", priority=").append(priority);
+    sb.append(", rollups=").append(rollups);
+    sb.append(", rate=").append(rate);
+    sb.append(", rateMaxGapSeconds=").append(rateMaxGapSeconds);
+    sb.append(", emitIntervalSeconds=").append(emitIntervalSeconds);
+    sb.append(", metricKind=").append(metricKind);
     sb.append('}');
     return sb.toString();
   }
+
+  /**
+   * Builder of {@link MetricsMapping}.
+   */
+  public static final class Builder {
+    private final String metricType;
+    private final String resourceType;
+    private List<LabelMapping> resourceLabels;
+    private List<String> autoFillLabels = Collections.emptyList();
+    private List<LabelMapping> metricLabels;
+    private List<TagFilter> tagFilters;
+    private AggregationType aggregation;
+    private Boolean emitOnChangeOnly;
+    private Long maxSilenceSeconds;
+    private Long minEmitIntervalSeconds;
+    private Priority priority;
+    private List<RollupMapping> rollups;
+    private Boolean rate;
+    private Long rateMaxGapSeconds;
+    private Long emitIntervalSeconds;
+    private MetricType metricKind;
+
+    private Builder(String metricType, String resourceType) {
+      this.metricType = metricType;
+      this.resourceType = resourceType;
+    }
+
+    public Builder setResourceLabels(@Nullable List<LabelMapping> resourceLabels) {
+      this.resourceLabels = resourceLabels;
+      return this;
+    }
+
+    public Builder setAutoFillLabels(List<String> autoFillLabels) {
+      this.autoFillLabels = autoFillLabels;
+      return this;
+    }
+
+    public Builder setMetricLabels(@Nullable List<LabelMapping> metricLabels) {
+      this.metricLabels = metricLabels;
+      return this;
+    }
+
+    public Builder setTagFilters(@Nullable List<TagFilter> tagFilters) {
+      this.tagFilters = tagFilters;
+      return this;
+    }
+
+    public Builder setAggregation(@Nullable AggregationType aggregation) {
+      this.aggregation = aggregation;
+      return this;
+    }
+
+    public Builder setEmitOnChangeOnly(boolean emitOnChangeOnly) {
+      this.emitOnChangeOnly = emitOnChangeOnly;
+      return this;
+    }
+
+    public Builder setMaxSilenceSeconds(@Nullable Long maxSilenceSeconds) {
+      this.maxSilenceSeconds = maxSilenceSeconds;
+      return this;
+    }
+
+    public Builder setMinEmitIntervalSeconds(@Nullable Long minEmitIntervalSeconds) {
+      this.minEmitIntervalSeconds = minEmitIntervalSeconds;
+      return this;
+    }
+
+    public Builder setPriority(@Nullable Priority priority) {
+      this.priority = priority;
+      return this;
+    }
+
+    public Builder setRollups(@Nullable List<RollupMapping> rollups) {
+      this.rollups = rollups;
+      return this;
+    }
+
+    public Builder setRate(boolean rate) {
+      this.rate = rate;
+      return this;
+    }
+
+    public Builder setRateMaxGapSeconds(@Nullable Long rateMaxGapSeconds) {
+      this.rateMaxGapSeconds = rateMaxGapSeconds;
+      return this;
+    }
+
+    public Builder setEmitIntervalSeconds(@Nullable Long emitIntervalSeconds) {
+      this.emitIntervalSeconds = emitIntervalSeconds;
+      return this;
+    }
+
+    public Builder setMetricKind(@Nullable MetricType metricKind) {
+      this.metricKind = metricKind;
+      return this;
+    }
+
+    public MetricsMapping build() {
+      return new MetricsMapping(this);
+    }
+  }
 }
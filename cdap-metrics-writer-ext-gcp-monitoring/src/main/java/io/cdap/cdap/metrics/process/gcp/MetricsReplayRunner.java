@@ -0,0 +1,271 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import com.google.common.annotations.VisibleForTesting;
+import io.cdap.cdap.api.metrics.MetricValues;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.api.metrics.MetricsWriterContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Replays a capture file written with the "capture.file.path" writer property through a
+ * {@link CloudMonitoringWriter} that sends to the given Cloud Monitoring endpoint, and reports the write throughput,
+ * the write latency percentiles and the allocation of the writing threads.
+ * <p>
+ * Usage: {@code MetricsReplayRunner <capture-file> <config-file> <endpoint> [speed] [threads]}, where endpoint is the
+ * host:port of the monitoring API or of a test server, and speed is "max" to replay the batches back to back, or a
+ * factor applied to the capture time between batches, 1 replaying at the captured rate. With more than one thread,
+ * the batches are written concurrently by that many threads. The series are sent to the project of the
+ * "replay.project" system property, "replay-project" by default.
+ */
+public class MetricsReplayRunner {
+
+  private final Path captureFile;
+  private final String configFile;
+  // 0 to replay at maximum speed
+  private final double speed;
+  private final int threads;
+  private final String endpoint;
+  // Creates the client of the writer, null to create it from the endpoint
+  @Nullable
+  private final Supplier<MetricServiceClient> clientFactory;
+
+  public MetricsReplayRunner(Path captureFile, String configFile, double speed, int threads, String endpoint) {
+    this(captureFile, configFile, speed, threads, endpoint, null);
+  }
+
+  @VisibleForTesting
+  MetricsReplayRunner(Path captureFile, String configFile, double speed, int threads, String endpoint,
+                      @Nullable Supplier<MetricServiceClient> clientFactory) {
+    this.captureFile = captureFile;
+    this.configFile = configFile;
+    this.speed = speed;
+    this.threads = Math.max(1, threads);
+    this.endpoint = endpoint;
+    this.clientFactory = clientFactory;
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 3) {
+      System.err.println("Usage: MetricsReplayRunner <capture-file> <config-file> <endpoint> [max|speed] [threads]");
+      System.exit(1);
+    }
+    double speed = args.length < 4 || "max".equalsIgnoreCase(args[3]) ? 0 : Double.parseDouble(args[3]);
+    int threads = args.length < 5 ? 1 : Integer.parseInt(args[4]);
+    System.out.println(new MetricsReplayRunner(Paths.get(args[0]), args[1], speed, threads, args[2]).run());
+  }
+
+  /**
+   * Replays the capture file and returns the report.
+   */
+  public Report run() throws Exception {
+    CloudMonitoringWriter writer = clientFactory == null ? new CloudMonitoringWriter() : new CloudMonitoringWriter() {
+      @Override
+      MetricServiceClient createMetricServiceClient(@Nullable String endPoint) {
+        return clientFactory.get();
+      }
+    };
+    writer.initialize(new ReplayContext(configFile, endpoint));
+
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    com.sun.management.ThreadMXBean allocationBean = threadBean instanceof com.sun.management.ThreadMXBean ?
+      (com.sun.management.ThreadMXBean) threadBean : null;
+
+    // Batches are read and paced by this thread, and written by the workers
+    BlockingQueue<Optional<MetricsCaptureReader.CapturedBatch>> queue = new ArrayBlockingQueue<>(threads * 4);
+    Queue<Long> latencies = new ConcurrentLinkedQueue<>();
+    AtomicLong failures = new AtomicLong();
+    AtomicLong allocatedBytes = new AtomicLong();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<?>> workers = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      workers.add(executor.submit(() -> {
+        long threadId = Thread.currentThread().getId();
+        Optional<MetricsCaptureReader.CapturedBatch> batch;
+        while ((batch = queue.take()).isPresent()) {
+          long allocatedBefore = allocationBean == null ? 0 : allocationBean.getThreadAllocatedBytes(threadId);
+          long writeStartNanos = System.nanoTime();
+          try {
+            writer.write(batch.get().getMetricValues());
+          } catch (RuntimeException e) {
+            failures.incrementAndGet();
+          }
+          latencies.add(System.nanoTime() - writeStartNanos);
+          if (allocationBean != null) {
+            allocatedBytes.addAndGet(allocationBean.getThreadAllocatedBytes(threadId) - allocatedBefore);
+          }
+        }
+        return null;
+      }));
+    }
+
+    long metricValues = 0;
+    long startNanos = System.nanoTime();
+    try (MetricsCaptureReader reader = new MetricsCaptureReader(captureFile)) {
+      long firstCaptureMillis = -1;
+      MetricsCaptureReader.CapturedBatch batch;
+      while ((batch = reader.next()) != null) {
+        if (firstCaptureMillis < 0) {
+          firstCaptureMillis = batch.getCaptureTimeMillis();
+        }
+        if (speed > 0) {
+          long dueNanos = startNanos +
+            (long) (TimeUnit.MILLISECONDS.toNanos(batch.getCaptureTimeMillis() - firstCaptureMillis) / speed);
+          long waitNanos = dueNanos - System.nanoTime();
+          if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+          }
+        }
+        for (MetricValues values : batch.getMetricValues()) {
+          metricValues += values.getMetrics().size();
+        }
+        queue.put(Optional.of(batch));
+      }
+    } finally {
+      for (int i = 0; i < threads; i++) {
+        queue.put(Optional.empty());
+      }
+      for (Future<?> worker : workers) {
+        worker.get();
+      }
+      executor.shutdown();
+      // Sends the values left by writes that found a flush or a send in progress
+      writer.awaitSends();
+      writer.write(Collections.emptyList());
+      writer.close();
+    }
+    long elapsedNanos = System.nanoTime() - startNanos;
+    return new Report(new ArrayList<>(latencies), metricValues, failures.get(), elapsedNanos,
+                      allocationBean == null ? -1 : allocatedBytes.get());
+  }
+
+  /**
+   * Result of a replay.
+   */
+  public static final class Report {
+    private final long[] latencies;
+    private final long metricValues;
+    private final long failures;
+    private final long elapsedNanos;
+    private final long allocatedBytes;
+
+    private Report(List<Long> latencies, long metricValues, long failures, long elapsedNanos, long allocatedBytes) {
+      this.latencies = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+      this.metricValues = metricValues;
+      this.failures = failures;
+      this.elapsedNanos = elapsedNanos;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    public int getBatches() {
+      return latencies.length;
+    }
+
+    public long getMetricValues() {
+      return metricValues;
+    }
+
+    /**
+     * Returns the write latency in milliseconds at the given percentile.
+     */
+    public double getLatencyMillis(double percentile) {
+      if (latencies.length == 0) {
+        return 0;
+      }
+      int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+      return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1e6;
+    }
+
+    public long getFailures() {
+      return failures;
+    }
+
+    @Override
+    public String toString() {
+      double seconds = elapsedNanos / 1e9;
+      StringBuilder builder = new StringBuilder();
+      builder.append(String.format("batches: %d, metric values: %d, failed writes: %d%n",
+                                   latencies.length, metricValues, failures));
+      builder.append(String.format("elapsed: %.3f s, throughput: %.0f values/s%n",
+                                   seconds, seconds == 0 ? 0 : metricValues / seconds));
+      builder.append(String.format("write latency ms: p50 %.3f, p90 %.3f, p99 %.3f, max %.3f%n",
+                                   getLatencyMillis(50), getLatencyMillis(90), getLatencyMillis(99),
+                                   getLatencyMillis(100)));
+      if (allocatedBytes >= 0) {
+        builder.append(String.format("allocated on the writing threads: %d bytes, %.1f bytes/value",
+                                     allocatedBytes, metricValues == 0 ? 0 : (double) allocatedBytes / metricValues));
+      }
+      return builder.toString();
+    }
+  }
+
+  /**
+   * Writer context of a replay, with placeholder values for the required properties.
+   */
+  private static final class ReplayContext implements MetricsWriterContext {
+    private final Map<String, String> properties = new HashMap<>();
+
+    private ReplayContext(String configFile, String endpoint) {
+      for (String property : Arrays.asList("project", "org_id", "location", "cluster_id", "instance_id")) {
+        properties.put(property, System.getProperty("replay." + property, "replay-" + property.replace('_', '-')));
+      }
+      properties.put("write.frequency.seconds", System.getProperty("replay.write.frequency.seconds", "60"));
+      properties.put("config.file.path", configFile);
+      properties.put("monitoring.endpoint", endpoint);
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+      return properties;
+    }
+
+    @Nullable
+    @Override
+    public MetricsContext getMetricsContext() {
+      return null;
+    }
+
+    @Override
+    public String getPlatformVersion() {
+      return System.getProperty("replay.version", "replay");
+    }
+  }
+}
@@ -17,7 +17,9 @@
 package io.cdap.cdap.metrics.process.gcp;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 /**
  * Metrics writer configuration that holds the mapping between CDAP metrics and Cloud monitoring metrics
@@ -40,21 +42,51 @@ import java.util.Map;
  *         {"tag": "prg", "values": "DataPipelineWorkflow,DataStreamsSparkStreaming"}
  *       ]
  *       }
- *     }
+ *     },
+ *   "routing": [
+ *     {"tag": "namespace", "values": "tenant1,tenant2", "project": "tenant-project"}
+ *   ],
+ *   "scheduling": {"tag": "ns", "weights": {"system": 1, "tenant1": 4}},
+ *   "circuitBreaker": {"failureRateThreshold": 0.5, "openSeconds": 60, "openPolicy": "buffer"}
  * }
+ * Mapping keys are CDAP metric names or metric name patterns such as "user.*.records.out", see
+ * {@link MetricNameMatcher}.
+ * The optional routing rules send the metrics of matching CDAP tags to other projects, see {@link RoutingRule}.
+ * The optional scheduling settings control how requests are shared between tenants, see {@link SchedulingConfig}.
+ * The optional circuit breaker settings control when sending is suspended, see {@link CircuitBreakerConfig}.
  */
 public class MonitoringConfig {
 
-  public static final MonitoringConfig EMPTY = new MonitoringConfig(Collections.emptyMap());
+  public static final MonitoringConfig EMPTY = new MonitoringConfig(Collections.emptyMap(), Collections.emptyList(),
+                                                                    null, null);
 
   private final Map<String, MetricsMapping> mapping;
+  private final List<RoutingRule> routing;
+  private final SchedulingConfig scheduling;
+  private final CircuitBreakerConfig circuitBreaker;
 
-  public MonitoringConfig(Map<String, MetricsMapping> mapping) {
+  public MonitoringConfig(Map<String, MetricsMapping> mapping, List<RoutingRule> routing,
+                          @Nullable SchedulingConfig scheduling, @Nullable CircuitBreakerConfig circuitBreaker) {
     this.mapping = mapping;
+    this.routing = routing;
+    this.scheduling = scheduling;
+    this.circuitBreaker = circuitBreaker;
   }
 
   public Map<String, MetricsMapping> getMetricsMapping() {
     // can be null when deserialized through gson
     return mapping == null ? Collections.emptyMap() : Collections.unmodifiableMap(mapping);
   }
+
+  public List<RoutingRule> getRoutingRules() {
+    return routing == null ? Collections.emptyList() : Collections.unmodifiableList(routing);
+  }
+
+  public SchedulingConfig getSchedulingConfig() {
+    return scheduling == null ? SchedulingConfig.DEFAULT : scheduling;
+  }
+
+  public CircuitBreakerConfig getCircuitBreakerConfig() {
+    return circuitBreaker == null ? CircuitBreakerConfig.DEFAULT : circuitBreaker;
+  }
 }
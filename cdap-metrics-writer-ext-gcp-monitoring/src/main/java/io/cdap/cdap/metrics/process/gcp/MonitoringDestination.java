@@ -0,0 +1,230 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import javax.annotation.Nullable;
+
+/**
+ * A Cloud Monitoring project that time series are sent to, with the {@link MetricServiceClient} of its endpoint.
+ * Clients are shared between destinations on the same endpoint. Each destination packs its own requests and keeps
+ * its own emission state, so destinations can be written in parallel.
+ * <p>
+ * Series of {@link Priority#HIGH} mappings are sent on their own {@link SendLane}. If a priority executor is given,
+ * that lane runs on it, concurrently with the bulk lane, so that its requests never wait for bulk requests.
+ * Both lanes share the {@link CircuitBreaker} and the {@link RequestBudget} of the destination, and record what
+ * they send to the {@link CostEstimator} of the writer, if any.
+ * <p>
+ * Values are accumulated in a {@link SeriesTable} by {@link #add}, which can be called by any number of threads,
+ * and are sent by {@link #write}, which must not be called concurrently with itself.
+ */
+public class MonitoringDestination {
+
+  private static final Logger LOG = LoggerFactory.getLogger(MonitoringDestination.class);
+  private static final String SHED_METRIC = "gcp.monitoring.shed.series";
+
+  private final String projectName;
+  @Nullable
+  private final MetricsContext projectContext;
+  private final SendLane highLane;
+  private final SendLane normalLane;
+  private final CircuitBreaker circuitBreaker;
+  private final SeriesTable seriesTable = new SeriesTable();
+  @Nullable
+  private final ExecutorService priorityExecutor;
+
+  public MonitoringDestination(String projectName, MetricServiceClient metricServiceClient,
+                               SchedulingConfig schedulingConfig, CircuitBreakerConfig circuitBreakerConfig,
+                               @Nullable MetricsContext metricsContext,
+                               @Nullable ExecutorService priorityExecutor,
+                               @Nullable CostEstimator costEstimator) {
+    this.projectName = projectName;
+    this.projectContext = metricsContext == null ? null : metricsContext.childContext("project", projectName);
+    this.circuitBreaker = new CircuitBreaker(projectName, circuitBreakerConfig, projectContext);
+    Integer maxRequestsPerMinute = schedulingConfig.getMaxRequestsPerMinute();
+    RequestBudget requestBudget = maxRequestsPerMinute == null ? null :
+      new RequestBudget(maxRequestsPerMinute, System.currentTimeMillis());
+    this.highLane = new SendLane(Priority.HIGH, projectName, metricServiceClient, schedulingConfig, circuitBreaker,
+                                 requestBudget, projectContext, costEstimator);
+    this.normalLane = new SendLane(Priority.NORMAL, projectName, metricServiceClient, schedulingConfig,
+                                   circuitBreaker, requestBudget, projectContext, costEstimator);
+    this.priorityExecutor = priorityExecutor;
+  }
+
+  public String getProjectName() {
+    return projectName;
+  }
+
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  /**
+   * Adds a value to a series, to be sent by the next {@link #flush}.
+   */
+  public void add(TimeSeriesMetadata metadata, long value) {
+    seriesTable.add(metadata, value);
+  }
+
+  /**
+   * Returns the series that got values since the last flush, or that are due for the series with an emit interval,
+   * with their aggregated value, and resets them.
+   *
+   * @param nowSeconds current time
+   */
+  public Map<TimeSeriesMetadata, List<Long>> flush(long nowSeconds) {
+    return seriesTable.flush(nowSeconds);
+  }
+
+  /**
+   * Returns true if the circuit breaker of this destination is open, in which case the destination must not be
+   * flushed nor written, so that an open breaker costs no more than accumulating values. Under the
+   * {@link CircuitBreakerConfig.OpenPolicy#SHED} policy, the values accumulated since the last flush are dropped.
+   * Under {@link CircuitBreakerConfig.OpenPolicy#BUFFER}, they are left in the series table and sent by the first
+   * flush after the breaker lets requests through again.
+   *
+   * @param nowSeconds current time, the scheduled series due until then are dropped under the SHED policy
+   */
+  public boolean holdIfOpen(long nowSeconds) {
+    if (circuitBreaker.getState(System.currentTimeMillis()) != CircuitBreaker.State.OPEN) {
+      return false;
+    }
+    if (circuitBreaker.getConfig().getOpenPolicy() == CircuitBreakerConfig.OpenPolicy.SHED) {
+      int shed = seriesTable.discard(nowSeconds);
+      LOG.trace("Dropped {} series of {} while the circuit breaker is open", shed, this);
+      if (projectContext != null && shed > 0) {
+        projectContext.increment(SHED_METRIC, shed);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the lane of the given priority.
+   */
+  public SendLane getLane(Priority priority) {
+    return priority == Priority.HIGH ? highLane : normalLane;
+  }
+
+  /**
+   * Converts the given time series and sends them to this destination, together with the series left over from
+   * previous writes.
+   *
+   * @param timeSeries       Map of {@link TimeSeriesMetadata} and their long values
+   * @param startTimeSeconds start timestamp
+   * @param endTimeSeconds   end timestamp
+   * @throws com.google.api.gax.rpc.ApiException if remote call fails.
+   */
+  public void write(Map<TimeSeriesMetadata, List<Long>> timeSeries, long startTimeSeconds, long endTimeSeconds) {
+    long writeStartMillis = System.currentTimeMillis();
+    Map<TimeSeriesMetadata, List<Long>> highSeries = new HashMap<>();
+    Map<TimeSeriesMetadata, List<Long>> normalSeries = new HashMap<>(timeSeries.size());
+    for (Map.Entry<TimeSeriesMetadata, List<Long>> entry : timeSeries.entrySet()) {
+      MetricsMapping mapping = entry.getKey().getMapping();
+      boolean high = mapping != null && mapping.getPriority() == Priority.HIGH;
+      (high ? highSeries : normalSeries).put(entry.getKey(), entry.getValue());
+    }
+
+    RuntimeException failure = null;
+    Future<?> highFuture = null;
+    if (!highSeries.isEmpty() || highLane.getQueuedSeries() > 0) {
+      if (priorityExecutor == null) {
+        try {
+          highLane.write(highSeries, startTimeSeconds, endTimeSeconds, writeStartMillis);
+        } catch (RuntimeException e) {
+          failure = e;
+        }
+      } else {
+        highFuture = priorityExecutor.submit(() -> highLane.write(highSeries, startTimeSeconds, endTimeSeconds,
+                                                                  writeStartMillis));
+      }
+    }
+
+    try {
+      normalLane.write(normalSeries, startTimeSeconds, endTimeSeconds, writeStartMillis);
+    } catch (RuntimeException e) {
+      if (failure != null) {
+        e.addSuppressed(failure);
+      }
+      failure = e;
+    }
+    if (highFuture != null) {
+      try {
+        highFuture.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while sending high priority metrics to " + projectName, e);
+      } catch (ExecutionException e) {
+        RuntimeException cause = e.getCause() instanceof RuntimeException ?
+          (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+        if (failure != null) {
+          cause.addSuppressed(failure);
+        }
+        failure = cause;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Returns the number of series waiting to be sent.
+   */
+  public int getQueuedSeries() {
+    return highLane.getQueuedSeries() + normalLane.getQueuedSeries();
+  }
+
+  /**
+   * Returns the per series state of the lanes, to be saved in a {@link WriterCheckpoint}.
+   * Must not be called while the destination is writing.
+   */
+  public List<WriterCheckpoint.SeriesState> getState() {
+    List<WriterCheckpoint.SeriesState> states = new ArrayList<>();
+    highLane.getState(states);
+    normalLane.getState(states);
+    return states;
+  }
+
+  /**
+   * Restores the state saved in a {@link WriterCheckpoint} to the lanes of the series.
+   * Must not be called while the destination is writing.
+   */
+  public void restore(Collection<WriterCheckpoint.SeriesState> states) {
+    for (WriterCheckpoint.SeriesState state : states) {
+      MetricsMapping mapping = state.getMetadata().getMapping();
+      getLane(mapping == null ? Priority.NORMAL : mapping.getPriority()).restore(state);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MonitoringDestination{projectName=" + projectName + '}';
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import io.cdap.cdap.api.metrics.MetricType;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Derives the per second rate of the series of the {@link MetricsMapping} with "rate" set.
+ * <ul>
+ *   <li>COUNTER values are the increments since the previous write, so their rate is the aggregated value divided
+ *   by the length of the write interval. No state is needed.</li>
+ *   <li>GAUGE values are taken as readings of a cumulative total. The rate is the difference with the previous reading
+ *   of the series divided by the time between them. A reading lower than the previous one means the total was reset,
+ *   in which case the rate is computed from zero. No rate is derived from the first reading of a series, nor across
+ *   a gap longer than rateMaxGapSeconds.</li>
+ * </ul>
+ * Only the last reading and its time are kept per series, and they are dropped once the series has been idle for
+ * rateMaxGapSeconds. This class is not thread safe.
+ */
+public class RateTracker {
+
+  static final long DEFAULT_MAX_GAP_SECONDS = 600;
+
+  private final Map<TimeSeriesMetadata, Reading> lastReadings = new HashMap<>();
+
+  /**
+   * Returns true if the given series should be sent as a rate.
+   */
+  public static boolean isRate(TimeSeriesMetadata metadata) {
+    return metadata.getMapping() != null && metadata.getMapping().isRate();
+  }
+
+  /**
+   * Returns the rate of a series over the given write interval, or {@code null} if no rate can be derived yet.
+   *
+   * @param metadata         {@link TimeSeriesMetadata} of a rate series
+   * @param values           values of the series in the interval
+   * @param startTimeSeconds start timestamp of the interval
+   * @param endTimeSeconds   end timestamp of the interval
+   */
+  @Nullable
+  public Double getRate(TimeSeriesMetadata metadata, List<Long> values, long startTimeSeconds,
+                        long endTimeSeconds) {
+    long value = CloudMonitoringUtil.getAggregateValue(values, metadata.getAggregation());
+    if (metadata.getMetricKind() != MetricType.GAUGE) {
+      return (double) value / Math.max(1L, endTimeSeconds - startTimeSeconds + 1);
+    }
+    long maxGap = metadata.getMapping().getRateMaxGapSeconds();
+    Reading last = lastReadings.get(metadata);
+    Double rate = null;
+    if (last == null) {
+      last = new Reading();
+      lastReadings.put(metadata, last);
+    } else if (endTimeSeconds <= last.timeSeconds) {
+      // Same or older reading time, there is no interval to derive a rate from
+      return null;
+    } else if (endTimeSeconds - last.timeSeconds <= maxGap) {
+      // A lower reading means the total restarted from zero since the last reading
+      long increase = value >= last.value ? value - last.value : value;
+      rate = (double) increase / (endTimeSeconds - last.timeSeconds);
+    }
+    last.value = value;
+    last.timeSeconds = endTimeSeconds;
+    last.expirySeconds = endTimeSeconds + maxGap;
+    return rate;
+  }
+
+  /**
+   * Drops the readings of the series idle for longer than their maximum gap.
+   */
+  public void expire(long nowSeconds) {
+    lastReadings.values().removeIf(reading -> reading.expirySeconds < nowSeconds);
+  }
+
+  /**
+   * Adds the last readings to the given list, to be saved in a {@link WriterCheckpoint}.
+   */
+  public void getState(List<WriterCheckpoint.SeriesState> states) {
+    lastReadings.forEach((metadata, reading) -> states.add(new WriterCheckpoint.SeriesState(
+      WriterCheckpoint.SeriesState.Kind.RATE, metadata, reading.value, reading.timeSeconds, reading.expirySeconds)));
+  }
+
+  /**
+   * Restores a reading saved in a {@link WriterCheckpoint}, unless the series was read since it was restarted.
+   */
+  public void restore(WriterCheckpoint.SeriesState state) {
+    lastReadings.computeIfAbsent(state.getMetadata(), key -> {
+      Reading reading = new Reading();
+      reading.value = state.getValue();
+      reading.timeSeconds = state.getTimeSeconds();
+      reading.expirySeconds = state.getExpirySeconds();
+      return reading;
+    });
+  }
+
+  int size() {
+    return lastReadings.size();
+  }
+
+  /**
+   * Last reading of a cumulative series.
+   */
+  private static final class Reading {
+    private long value;
+    private long timeSeconds;
+    // Time after which the reading is too old to derive a rate from.
+    private long expirySeconds;
+  }
+}
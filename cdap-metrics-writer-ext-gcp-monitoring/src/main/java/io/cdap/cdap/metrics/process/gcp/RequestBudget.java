@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Number of createTimeSeries requests a destination can still send, refilled at a fixed rate per minute like the
+ * Cloud Monitoring request quota. Up to a minute worth of requests can be sent at once.
+ * This class is thread safe.
+ */
+public class RequestBudget {
+
+  private static final long MINUTE_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private final int requestsPerMinute;
+  private double available;
+  private long lastRefillMillis;
+
+  public RequestBudget(int requestsPerMinute, long nowMillis) {
+    if (requestsPerMinute < 1) {
+      throw new IllegalArgumentException("The number of requests per minute must be at least 1, got "
+                                           + requestsPerMinute);
+    }
+    this.requestsPerMinute = requestsPerMinute;
+    this.available = requestsPerMinute;
+    this.lastRefillMillis = nowMillis;
+  }
+
+  /**
+   * Takes one request from the budget.
+   *
+   * @return false if the budget is spent, in which case the request must not be sent
+   */
+  public synchronized boolean tryAcquire(long nowMillis) {
+    if (nowMillis > lastRefillMillis) {
+      available = Math.min(requestsPerMinute,
+                           available + (double) (nowMillis - lastRefillMillis) * requestsPerMinute / MINUTE_MILLIS);
+      lastRefillMillis = nowMillis;
+    }
+    if (available < 1) {
+      return false;
+    }
+    available--;
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "RequestBudget{requestsPerMinute=" + requestsPerMinute + '}';
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * An aggregate series derived from the series of a {@link MetricsMapping} by keeping only some of their labels.
+ * The values of all the series that have the same kept labels are aggregated into one roll-up series, locally,
+ * before being sent. An example below, that sums the records of all the pipelines of an instance by stage name.
+ * {"metricTypeSuffix": "_by_instance", "resourceType": "datafusion.googleapis.com/Instance",
+ *  "metricLabels": ["stage"], "resourceLabels": ["resource_container", "location", "instance_id"]}
+ * <p>
+ * The metric type of the roll-up is either given by "metricType", or is the metric type of the mapping followed by
+ * "metricTypeSuffix". The resource type defaults to the one of the mapping. The label lists name the metric labels
+ * and the resource labels, including the auto-filled ones, that are kept. A missing list keeps all the labels.
+ */
+public class RollupMapping {
+
+  private final String metricType;
+  private final String metricTypeSuffix;
+  private final String resourceType;
+  private final List<String> metricLabels;
+  private final List<String> resourceLabels;
+
+  public RollupMapping(@Nullable String metricType, @Nullable String metricTypeSuffix,
+                       @Nullable String resourceType, @Nullable List<String> metricLabels,
+                       @Nullable List<String> resourceLabels) {
+    this.metricType = metricType;
+    this.metricTypeSuffix = metricTypeSuffix;
+    this.resourceType = resourceType;
+    this.metricLabels = metricLabels;
+    this.resourceLabels = resourceLabels;
+  }
+
+  /**
+   * Returns the metric type of the roll-up of the given mapping.
+   *
+   * @throws IllegalArgumentException if neither the metric type nor the suffix is set
+   */
+  public String getMetricType(MetricsMapping mapping) {
+    if (metricType != null) {
+      return metricType;
+    }
+    if (metricTypeSuffix == null || metricTypeSuffix.isEmpty()) {
+      throw new IllegalArgumentException(String.format(
+        "Roll-up of '%s' needs a metricType or a metricTypeSuffix.", mapping.getMetricType()));
+    }
+    return mapping.getMetricType() + metricTypeSuffix;
+  }
+
+  public String getResourceType(MetricsMapping mapping) {
+    return resourceType == null ? mapping.getResourceType() : resourceType;
+  }
+
+  /**
+   * Returns the metric labels to keep, or {@code null} to keep them all.
+   */
+  @Nullable
+  public List<String> getMetricLabels() {
+    return metricLabels == null ? null : Collections.unmodifiableList(metricLabels);
+  }
+
+  /**
+   * Returns the resource labels to keep, or {@code null} to keep them all.
+   */
+  @Nullable
+  public List<String> getResourceLabels() {
+    return resourceLabels == null ? null : Collections.unmodifiableList(resourceLabels);
+  }
+
+  /**
+   * Returns the roll-up series of the given series of the mapping.
+   */
+  public TimeSeriesMetadata createMetadata(TimeSeriesMetadata metadata, MetricsMapping mapping) {
+    return new TimeSeriesMetadata(getMetricType(mapping), getResourceType(mapping),
+                                  keep(metadata.getMetricLabels(), metricLabels),
+                                  keep(metadata.getResourceLabels(), resourceLabels),
+                                  metadata.getMetricKind(), metadata.getAggregation(), mapping, metadata.getTenant());
+  }
+
+  private static Map<String, String> keep(Map<String, String> labels, @Nullable List<String> kept) {
+    if (kept == null) {
+      return labels;
+    }
+    Map<String, String> result = new HashMap<>();
+    for (String label : kept) {
+      String value = labels.get(label);
+      if (value != null) {
+        result.put(label, value);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("RollupMapping{metricType=").append(metricType);
+    sb.append(", metricTypeSuffix=").append(metricTypeSuffix);
+    sb.append(", resourceType=").append(resourceType);
+    sb.append(", metricLabels=").append(metricLabels);
+    sb.append(", resourceLabels=").append(resourceLabels);
+    sb.append('}');
+    return sb.toString();
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Routes the metrics with a matching CDAP tag to a different Cloud Monitoring project, and optionally endpoint.
+ * Rules are evaluated in order and the first matching rule wins. Metrics that match no rule are sent to the
+ * project and endpoint of the writer properties.
+ * Example below.
+ * {"tag": "namespace", "values": "tenant1,tenant2", "project": "tenant-project",
+ * "endpoint": "monitoring.googleapis.com:443"}
+ */
+public class RoutingRule {
+
+  private final String tag;
+  private final String values;
+  private final String project;
+  // Endpoint of the monitoring API, uses the writer endpoint if not set.
+  @Nullable
+  private final String endpoint;
+  private transient Set<String> valueSet;
+
+  public RoutingRule(String tag, String values, String project, @Nullable String endpoint) {
+    this.tag = tag;
+    this.values = values;
+    this.project = project;
+    this.endpoint = endpoint;
+  }
+
+  public String getTag() {
+    return tag;
+  }
+
+  public String getProject() {
+    return project;
+  }
+
+  @Nullable
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  /**
+   * Returns true if the given CDAP tags have one of the values of this rule for its tag.
+   */
+  public boolean matches(Map<String, String> tags) {
+    String tagValue = tags.get(tag);
+    return tagValue != null && getValueSet().contains(tagValue);
+  }
+
+  private Set<String> getValueSet() {
+    // Not set by the constructor when deserialized through gson
+    if (valueSet == null) {
+      valueSet = new HashSet<>(Arrays.asList(values.split(",")));
+    }
+    return valueSet;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("RoutingRule{tag=").append(tag);
+    sb.append(", values=").append(values);
+    sb.append(", project=").append(project);
+    sb.append(", endpoint=").append(endpoint);
+    sb.append('}');
+    return sb.toString();
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import java.util.Collections;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Settings for the fair scheduling of outbound time series across tenants, see {@link DeficitRoundRobinScheduler}.
+ * Tenants are identified by the value of a CDAP tag, the namespace tag by default.
+ * Example below.
+ * {"tag": "ns", "weights": {"system": 1, "tenant1": 4}, "defaultWeight": 2, "maxQueuedSeries": 5000,
+ *  "maxRequestsPerMinute": 3000}
+ * <p>
+ * "maxRequestsPerMinute" is the request budget of each destination, set below the Cloud Monitoring quota of the
+ * project. Without it, every write sends all its series, and the weights only matter for the series left over
+ * after a request failed.
+ */
+public class SchedulingConfig {
+
+  public static final SchedulingConfig DEFAULT = new SchedulingConfig(null, null, null, null);
+
+  private static final String DEFAULT_TAG = "ns";
+  private static final int DEFAULT_MAX_QUEUED_SERIES = 5000;
+
+  private final String tag;
+  private final Map<String, Integer> weights;
+  private final Integer defaultWeight;
+  // Maximum number of series left waiting to be sent per tenant after a write, older series are dropped first.
+  private final Integer maxQueuedSeries;
+  private final Integer maxRequestsPerMinute;
+
+  public SchedulingConfig(@Nullable String tag, @Nullable Map<String, Integer> weights,
+                          @Nullable Integer defaultWeight, @Nullable Integer maxQueuedSeries) {
+    this(tag, weights, defaultWeight, maxQueuedSeries, null);
+  }
+
+  public SchedulingConfig(@Nullable String tag, @Nullable Map<String, Integer> weights,
+                          @Nullable Integer defaultWeight, @Nullable Integer maxQueuedSeries,
+                          @Nullable Integer maxRequestsPerMinute) {
+    this.tag = tag;
+    this.weights = weights;
+    this.defaultWeight = defaultWeight;
+    this.maxQueuedSeries = maxQueuedSeries;
+    this.maxRequestsPerMinute = maxRequestsPerMinute;
+  }
+
+  public String getTag() {
+    return tag == null ? DEFAULT_TAG : tag;
+  }
+
+  public Map<String, Integer> getWeights() {
+    return weights == null ? Collections.emptyMap() : Collections.unmodifiableMap(weights);
+  }
+
+  /**
+   * Returns the weight of the given tenant, which is at least 1.
+   */
+  public int getWeight(String tenant) {
+    Integer weight = getWeights().get(tenant);
+    if (weight == null) {
+      weight = defaultWeight == null ? 1 : defaultWeight;
+    }
+    return Math.max(1, weight);
+  }
+
+  public int getMaxQueuedSeries() {
+    return maxQueuedSeries == null ? DEFAULT_MAX_QUEUED_SERIES : maxQueuedSeries;
+  }
+
+  /**
+   * Returns the maximum number of requests a destination sends per minute, or null if it is not limited.
+   */
+  @Nullable
+  public Integer getMaxRequestsPerMinute() {
+    return maxRequestsPerMinute;
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder sb = new StringBuilder();
+    sb.append("SchedulingConfig{tag=").append(tag);
+    sb.append(", weights=").append(weights);
+    sb.append(", defaultWeight=").append(defaultWeight);
+    sb.append(", maxQueuedSeries=").append(maxQueuedSeries);
+    sb.append(", maxRequestsPerMinute=").append(maxRequestsPerMinute);
+    sb.append('}');
+    return sb.toString();
+  }
+}
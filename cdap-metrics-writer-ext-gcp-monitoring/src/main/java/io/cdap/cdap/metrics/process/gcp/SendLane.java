@@ -0,0 +1,294 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import com.google.monitoring.v3.Point;
+import com.google.monitoring.v3.TimeSeries;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Sends the time series of one {@link Priority} to a {@link MonitoringDestination}. Each lane has its own queues
+ * and emission and rate state, so the lanes of a destination can send concurrently.
+ * <p>
+ * Requests are filled by a {@link DeficitRoundRobinScheduler} across tenants. A write sends requests until its
+ * queues are empty or the {@link RequestBudget} of the destination is spent, the series left are sent by the next
+ * writes. When a request fails with a transient error, its series and all the series not sent yet stay queued for
+ * the next write.
+ * Requests are only sent when the {@link CircuitBreaker} of the destination allows them. While it is open, the
+ * queued series stay queued, and the destination is not written at all, see {@link MonitoringDestination#holdIfOpen}.
+ * This class is not thread safe.
+ */
+public class SendLane {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SendLane.class);
+  private static final String QUEUE_DEPTH_METRIC = "gcp.monitoring.queue.series";
+  private static final String SEND_LAG_METRIC = "gcp.monitoring.send.lag.ms";
+  private static final String DROPPED_METRIC = "gcp.monitoring.dropped.series";
+  private static final String LATENCY_METRIC = "gcp.monitoring.lane.latency.ms";
+  private static final Set<StatusCode.Code> TRANSIENT_CODES = EnumSet.of(
+    StatusCode.Code.RESOURCE_EXHAUSTED, StatusCode.Code.UNAVAILABLE, StatusCode.Code.DEADLINE_EXCEEDED,
+    StatusCode.Code.ABORTED);
+
+  private final Priority priority;
+  private final String projectName;
+  private final MetricServiceClient metricServiceClient;
+  private final EmissionFilter emissionFilter;
+  private final RateTracker rateTracker;
+  private final SchedulingConfig schedulingConfig;
+  private final DeficitRoundRobinScheduler scheduler;
+  private final CircuitBreaker circuitBreaker;
+  @Nullable
+  private final RequestBudget requestBudget;
+  @Nullable
+  private final MetricsContext metricsContext;
+  @Nullable
+  private final CostEstimator costEstimator;
+  private final Map<String, MetricsContext> tenantMetricsContexts = new HashMap<>();
+  // Tenants of the last stats collection, to evict the metrics contexts of idle tenants
+  private final Set<String> reportedTenants = new HashSet<>();
+  // End time of the last point of each series with an emit interval
+  private final Map<TimeSeriesMetadata, Long> lastEndTimes = new HashMap<>();
+  // Time between the start of the last write that sent series and the end of its last successful request
+  private volatile long latencyMillis;
+
+  public SendLane(Priority priority, String projectName, MetricServiceClient metricServiceClient,
+                  SchedulingConfig schedulingConfig, CircuitBreaker circuitBreaker,
+                  @Nullable RequestBudget requestBudget, @Nullable MetricsContext metricsContext,
+                  @Nullable CostEstimator costEstimator) {
+    this.priority = priority;
+    this.projectName = projectName;
+    this.metricServiceClient = metricServiceClient;
+    this.emissionFilter = new EmissionFilter();
+    this.rateTracker = new RateTracker();
+    this.schedulingConfig = schedulingConfig;
+    this.scheduler = new DeficitRoundRobinScheduler(schedulingConfig);
+    this.circuitBreaker = circuitBreaker;
+    this.requestBudget = requestBudget;
+    this.metricsContext = metricsContext == null ? null :
+      metricsContext.childContext("lane", priority.name().toLowerCase(Locale.ROOT));
+    this.costEstimator = costEstimator;
+  }
+
+  public Priority getPriority() {
+    return priority;
+  }
+
+  /**
+   * Converts the given time series and sends them, together with the series left over from previous writes.
+   *
+   * @param timeSeries       Map of {@link TimeSeriesMetadata} and their long values
+   * @param startTimeSeconds start timestamp
+   * @param endTimeSeconds   end timestamp
+   * @param writeStartMillis time the write started, to measure the latency of the lane
+   * @throws com.google.api.gax.rpc.ApiException if remote call fails.
+   */
+  public void write(Map<TimeSeriesMetadata, List<Long>> timeSeries, long startTimeSeconds, long endTimeSeconds,
+                    long writeStartMillis) {
+    for (Map.Entry<TimeSeriesMetadata, List<Long>> entry : emissionFilter.filter(timeSeries, endTimeSeconds)
+      .entrySet()) {
+      TimeSeriesMetadata metadata = entry.getKey();
+      String tenant = metadata.getTenant() == null ? "" : metadata.getTenant();
+      // Series with an emit interval end on the last multiple of their interval and start after their previous point.
+      // The values of a first point were added since the previous write, or since the interval started if longer.
+      long interval = SeriesTable.getEmitIntervalSeconds(metadata);
+      long seriesEnd = endTimeSeconds;
+      long seriesStart = startTimeSeconds;
+      if (interval > 0) {
+        seriesEnd = endTimeSeconds / interval * interval;
+        Long lastEnd = lastEndTimes.put(metadata, seriesEnd);
+        seriesStart = lastEnd != null && lastEnd < seriesEnd ? lastEnd + 1
+          : Math.min(startTimeSeconds, seriesEnd - interval + 1);
+      }
+      TimeSeries series;
+      if (RateTracker.isRate(metadata)) {
+        Double rate = rateTracker.getRate(metadata, entry.getValue(), seriesStart, seriesEnd);
+        if (rate == null) {
+          continue;
+        }
+        series = CloudMonitoringUtil.convertRateToMonitoringTimeSeries(metadata, rate, seriesEnd);
+      } else {
+        series = CloudMonitoringUtil.convertToMonitoringTimeSeries(metadata, entry.getValue(), seriesStart,
+                                                                   seriesEnd);
+      }
+      scheduler.enqueue(tenant, metadata, series, writeStartMillis);
+    }
+    long lastSentMillis = -1L;
+    try {
+      lastSentMillis = drain(writeStartMillis);
+    } finally {
+      if (lastSentMillis >= 0) {
+        latencyMillis = lastSentMillis - writeStartMillis;
+        if (metricsContext != null) {
+          metricsContext.gauge(LATENCY_METRIC, latencyMillis);
+        }
+      }
+      scheduler.trim();
+      // A series that missed a due time starts its next point like a first one
+      lastEndTimes.entrySet().removeIf(
+        entry -> entry.getValue() + SeriesTable.getEmitIntervalSeconds(entry.getKey()) < startTimeSeconds);
+      emissionFilter.expire(endTimeSeconds);
+      rateTracker.expire(endTimeSeconds);
+      reportStats();
+    }
+  }
+
+  /**
+   * Returns the number of series waiting to be sent.
+   */
+  public int getQueuedSeries() {
+    return scheduler.size();
+  }
+
+  /**
+   * Adds the per series state of this lane to the given list, to be saved in a {@link WriterCheckpoint}.
+   * Must not be called while the lane is writing.
+   */
+  public void getState(List<WriterCheckpoint.SeriesState> states) {
+    emissionFilter.getState(states);
+    rateTracker.getState(states);
+  }
+
+  /**
+   * Restores state saved in a {@link WriterCheckpoint}. Must not be called while the lane is writing.
+   */
+  public void restore(WriterCheckpoint.SeriesState state) {
+    if (state.getKind() == WriterCheckpoint.SeriesState.Kind.EMITTED) {
+      emissionFilter.restore(state);
+    } else {
+      rateTracker.restore(state);
+    }
+  }
+
+  /**
+   * Returns the time between the start of the last write that sent series and the end of its last successful
+   * request.
+   */
+  public long getLatencyMillis() {
+    return latencyMillis;
+  }
+
+  /**
+   * Sends all the queued series.
+   *
+   * @return the time the last successful request completed, or -1 if no request succeeded
+   */
+  private long drain(long writeStartMillis) {
+    RuntimeException failure = null;
+    long lastSentMillis = -1L;
+    while (scheduler.size() > 0) {
+      if (requestBudget != null && !requestBudget.tryAcquire(System.currentTimeMillis())) {
+        LOG.trace("Request budget is spent, keeping {} series of {} queued", scheduler.size(), this);
+        break;
+      }
+      if (!circuitBreaker.allowRequest(System.currentTimeMillis())) {
+        LOG.trace("Circuit breaker is open, keeping {} series of {} queued", scheduler.size(), this);
+        break;
+      }
+      List<DeficitRoundRobinScheduler.PendingSeries> batch =
+        scheduler.nextBatch(CloudMonitoringUtil.MAX_TIMESERIES_PER_REQUEST, writeStartMillis);
+      List<TimeSeries> timeSeriesList = new ArrayList<>(batch.size());
+      for (DeficitRoundRobinScheduler.PendingSeries pending : batch) {
+        timeSeriesList.add(pending.getTimeSeries());
+      }
+      long requestStartMillis = System.currentTimeMillis();
+      try {
+        CloudMonitoringUtil.send(metricServiceClient, projectName, timeSeriesList);
+      } catch (ApiException e) {
+        boolean isTransient = TRANSIENT_CODES.contains(e.getStatusCode().getCode());
+        long nowMillis = System.currentTimeMillis();
+        circuitBreaker.onResult(isTransient, nowMillis - requestStartMillis, nowMillis);
+        if (isTransient) {
+          // Keep the series for the next write, the following requests would most likely fail the same way
+          scheduler.requeue(batch);
+          if (failure != null) {
+            e.addSuppressed(failure);
+          }
+          throw e;
+        }
+        // The series of this request are rejected, the other requests can still succeed
+        LOG.debug("Dropping {} series rejected by {}", batch.size(), projectName, e);
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+        continue;
+      } catch (RuntimeException e) {
+        scheduler.requeue(batch);
+        long nowMillis = System.currentTimeMillis();
+        circuitBreaker.onResult(true, nowMillis - requestStartMillis, nowMillis);
+        throw e;
+      }
+      lastSentMillis = System.currentTimeMillis();
+      circuitBreaker.onResult(false, lastSentMillis - requestStartMillis, lastSentMillis);
+      for (DeficitRoundRobinScheduler.PendingSeries pending : batch) {
+        Point point = pending.getTimeSeries().getPoints(0);
+        emissionFilter.markEmitted(pending.getMetadata(), point.getValue().getInt64Value(),
+                                   point.getInterval().getEndTime().getSeconds());
+        if (costEstimator != null) {
+          costEstimator.record(pending.getMetadata(), pending.getTimeSeries());
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return lastSentMillis;
+  }
+
+  private void reportStats() {
+    reportedTenants.clear();
+    for (DeficitRoundRobinScheduler.TenantStats stats : scheduler.collectStats()) {
+      LOG.trace("Tenant '{}' of {} has {} queued series, send lag {} ms, {} dropped series", stats.getTenant(),
+                this, stats.getQueueDepth(), stats.getSendLagMillis(), stats.getDropped());
+      if (metricsContext == null) {
+        continue;
+      }
+      reportedTenants.add(stats.getTenant());
+      MetricsContext context = stats.getTenant().isEmpty() ? metricsContext :
+        tenantMetricsContexts.computeIfAbsent(stats.getTenant(), tenant ->
+          metricsContext.childContext(schedulingConfig.getTag(), tenant));
+      context.gauge(QUEUE_DEPTH_METRIC, stats.getQueueDepth());
+      context.gauge(SEND_LAG_METRIC, stats.getSendLagMillis());
+      if (stats.getDropped() > 0) {
+        context.increment(DROPPED_METRIC, stats.getDropped());
+      }
+    }
+    // Tenants missing from the stats were forgotten by the scheduler at the previous collection and got no series since
+    tenantMetricsContexts.keySet().retainAll(reportedTenants);
+  }
+
+  @Override
+  public String toString() {
+    return "SendLane{priority=" + priority + ", projectName=" + projectName + '}';
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.cdap.cdap.api.metrics.MetricType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
+
+/**
+ * The series of the values of one mapping, by the tags of the values and the parts of the metric name captured by
+ * the pattern of the mapping. The labels of a series only depend on those, so a value whose tags were seen before is
+ * added to its series without evaluating the labels or building the metadata again. Up to {@link #MAX_CACHED_SERIES}
+ * series are kept, the least recently used ones are evicted.
+ * <p>
+ * It also holds the metric kind of all the series of the mapping, see {@link MetricsMapping#getMetricKind}.
+ * This class is thread safe.
+ */
+public class SeriesLookup {
+
+  static final int MAX_CACHED_SERIES = 10000;
+
+  @Nullable
+  private final MetricType declaredKind;
+  private final AtomicReference<MetricType> kind = new AtomicReference<>();
+  private final Cache<Object, TimeSeriesMetadata> series = CacheBuilder.newBuilder()
+    .maximumSize(MAX_CACHED_SERIES).build();
+
+  public SeriesLookup(MetricsMapping mapping) {
+    this.declaredKind = mapping.getMetricKind();
+  }
+
+  /**
+   * Returns the metric kind of the series of the mapping: the declared kind, or else the kind of the first value
+   * given to this method.
+   */
+  public MetricType resolveKind(MetricType valueKind) {
+    if (declaredKind != null) {
+      return declaredKind;
+    }
+    kind.compareAndSet(null, valueKind);
+    return kind.get();
+  }
+
+  /**
+   * Returns the series of the values with the given tags and captures, or null if it is not known.
+   */
+  @Nullable
+  public TimeSeriesMetadata get(Map<String, String> tags, List<String> captures) {
+    return series.getIfPresent(captures.isEmpty() ? tags : Arrays.asList(tags, captures));
+  }
+
+  /**
+   * Keeps the series of the values with the given tags and captures. They are copied, since the caller can reuse
+   * them.
+   */
+  public void put(Map<String, String> tags, List<String> captures, TimeSeriesMetadata metadata) {
+    Map<String, String> key = Collections.unmodifiableMap(new HashMap<>(tags));
+    series.put(captures.isEmpty() ? key : Arrays.asList(key, new ArrayList<>(captures)), metadata);
+  }
+}
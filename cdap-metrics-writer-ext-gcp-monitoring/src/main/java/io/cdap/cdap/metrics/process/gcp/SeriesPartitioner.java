@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keeps the writers of several metrics processor instances from writing the same series. Each instance is configured
+ * with its index and the instance count, and one of the modes below.
+ * <ul>
+ *   <li>{@link Mode#LABEL}, the default: every instance sends all its series, with a metric label holding the
+ *   instance index, so that the series of different instances are distinct. Their sum is the total over the
+ *   instances, whichever instance received each value. The label must be declared by the metric descriptors, so this
+ *   mode does not work with predefined descriptors.</li>
+ *   <li>{@link Mode#SLICE}: each series is owned by a single instance, chosen by a jump consistent hash of its
+ *   identity, and the other instances drop its values. Changing the instance count only moves the series of one
+ *   slice in count. The values an instance receives for a series it does not own are lost, so the writer only
+ *   accepts this mode when the configuration declares that every instance receives all the values.</li>
+ * </ul>
+ * Roll-ups aggregate several series, so in slice mode the series of mappings with roll-ups are all accumulated, and
+ * the ownership of the detailed and roll-up series is only applied when they are flushed. The instances do not
+ * exchange values, so a roll-up series counts the values received by the instance that owns it, which are all the
+ * values since every instance receives them.
+ */
+public class SeriesPartitioner {
+
+  /**
+   * How the series are split between the instances.
+   */
+  public enum Mode {
+    SLICE,
+    LABEL
+  }
+
+  static final String DEFAULT_LABEL = "writer_instance";
+
+  private final int index;
+  private final int count;
+  private final Mode mode;
+  private final String label;
+  private final String labelValue;
+
+  /**
+   * @throws IllegalArgumentException if the index is not in [0, count)
+   */
+  public SeriesPartitioner(int index, int count, Mode mode, String label) {
+    if (count < 1 || index < 0 || index >= count) {
+      throw new IllegalArgumentException(String.format(
+        "Instance index %d is not valid for an instance count of %d.", index, count));
+    }
+    this.index = index;
+    this.count = count;
+    this.mode = mode;
+    this.label = label;
+    this.labelValue = Integer.toString(index);
+  }
+
+  /**
+   * Parses a mode name, case insensitive.
+   *
+   * @throws IllegalArgumentException if the name is not a mode
+   */
+  public static Mode parseMode(String name) {
+    try {
+      return Mode.valueOf(name.toUpperCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(String.format("Invalid partition mode '%s', expected 'slice' or 'label'.",
+                                                       name), e);
+    }
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Returns false if the values of the given series can be dropped right away, since the series is sent by another
+   * instance and no roll-up is derived from it.
+   */
+  public boolean accepts(TimeSeriesMetadata metadata) {
+    if (mode != Mode.SLICE || owns(metadata)) {
+      return true;
+    }
+    MetricsMapping mapping = metadata.getMapping();
+    return mapping != null && !mapping.getRollups().isEmpty();
+  }
+
+  /**
+   * Returns true if this instance sends the given series.
+   */
+  public boolean owns(TimeSeriesMetadata metadata) {
+    return mode != Mode.SLICE || getOwner(getKey(metadata), count) == index;
+  }
+
+  /**
+   * Applies the partitioning to flushed series: drops the series owned by other instances in slice mode, or adds
+   * the instance label in label mode.
+   *
+   * @param timeSeries Map of {@link TimeSeriesMetadata} and their long values, updated in slice mode
+   * @return the series to send
+   */
+  public Map<TimeSeriesMetadata, List<Long>> apply(Map<TimeSeriesMetadata, List<Long>> timeSeries) {
+    if (mode == Mode.SLICE) {
+      timeSeries.keySet().removeIf(metadata -> !owns(metadata));
+      return timeSeries;
+    }
+    Map<TimeSeriesMetadata, List<Long>> result = new HashMap<>(timeSeries.size());
+    for (Map.Entry<TimeSeriesMetadata, List<Long>> entry : timeSeries.entrySet()) {
+      TimeSeriesMetadata metadata = entry.getKey();
+      Map<String, String> metricLabels = new HashMap<>(metadata.getMetricLabels());
+      metricLabels.put(label, labelValue);
+      result.put(new TimeSeriesMetadata(metadata.getMetricType(), metadata.getResourceType(), metricLabels,
+                                        metadata.getResourceLabels(), metadata.getMetricKind(),
+                                        metadata.getAggregation(), metadata.getMapping(), metadata.getTenant()),
+                 entry.getValue());
+    }
+    return result;
+  }
+
+  /**
+   * Returns a hash of the identity of a series that is the same on every instance, since it only depends on the
+   * hash codes of strings and maps of strings, which are specified.
+   */
+  static long getKey(TimeSeriesMetadata metadata) {
+    long key = metadata.getMetricType().hashCode();
+    key = key * 31 + metadata.getResourceType().hashCode();
+    key = key * 31 + metadata.getMetricLabels().hashCode();
+    key = key * 31 + metadata.getResourceLabels().hashCode();
+    // Finalizer of SplitMix64, so that close keys are spread over the whole range
+    key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+    key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+    return key ^ (key >>> 31);
+  }
+
+  /**
+   * Jump consistent hash of Lamping and Veach, returns the owner of a key among the given number of instances.
+   */
+  static int getOwner(long key, int count) {
+    long bucket = -1;
+    long next = 0;
+    while (next < count) {
+      bucket = next;
+      key = key * 2862933555777941757L + 1;
+      next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+    }
+    return (int) bucket;
+  }
+
+  @Override
+  public String toString() {
+    return "SeriesPartitioner{index=" + index + ", count=" + count + ", mode=" + mode + ", label=" + label + '}';
+  }
+}
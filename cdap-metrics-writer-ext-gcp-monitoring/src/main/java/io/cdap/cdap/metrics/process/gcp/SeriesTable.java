@@ -0,0 +1,288 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * Accumulates the values of the series of a destination between two flushes. Values can be added by any number of
+ * threads concurrently with each other and with a flush, each series has a {@link StripedAccumulator}.
+ * <p>
+ * A flush drains the accumulators while the writers keep adding to them, without ever making a writer wait. The
+ * accumulators of series that did not get any value for a few flushes are removed from the table. A writer that
+ * looked up such an accumulator just before its removal may still add to it, so removed accumulators are closed
+ * and drained once more by the next flush, and a writer that finds an accumulator closed after adding to it moves
+ * what is left in it to the accumulator now in the table.
+ * <p>
+ * The roll-up series of a series are resolved once, when its accumulator is created, and their accumulators are
+ * linked to it, so maintaining roll-ups does not cost any lookup per value. When a roll-up accumulator is removed,
+ * the accumulators linked to it are removed by the next flush, so that their next values resolve new roll-ups.
+ * <p>
+ * The series of mappings with an emit interval are kept apart and are only drained when their interval is due, on
+ * the multiples of the interval, by a {@link HashedTimingWheel} of one second ticks. A flush then only visits the
+ * series that are due, so series emitted every few minutes do not cost anything to the flushes in between.
+ */
+public class SeriesTable {
+
+  // Number of flushes without values after which a series is removed
+  private static final int MAX_IDLE_FLUSHES = 2;
+  // Longer than an hour, so that the wheel visits each scheduled series only when it is due
+  private static final int WHEEL_TICKS = 4096;
+
+  // Series drained by every flush
+  private final ConcurrentMap<TimeSeriesMetadata, StripedAccumulator> series = new ConcurrentHashMap<>();
+  // Series of mappings with an emit interval, drained when due
+  private final ConcurrentMap<TimeSeriesMetadata, StripedAccumulator> scheduledSeries = new ConcurrentHashMap<>();
+  // Scheduled series created by the writers since the last flush
+  private final Queue<ScheduledSeries> createdSeries = new ConcurrentLinkedQueue<>();
+  // The fields below are only accessed by the flushing thread
+  private final HashedTimingWheel<ScheduledSeries> wheel = new HashedTimingWheel<>(WHEEL_TICKS);
+  // Accumulators removed by the last flush
+  private Map<TimeSeriesMetadata, StripedAccumulator> removed = Collections.emptyMap();
+  private long lastFlushSeconds = -1;
+  // Sum and count of the last drained accumulator
+  private final long[] drained = new long[2];
+  // Number of series dropped by the current discard
+  private int discarded;
+
+  /**
+   * Adds a value to a series.
+   */
+  public void add(TimeSeriesMetadata metadata, long value) {
+    // Roll-ups have the mapping of their series, so they are in the same table
+    long interval = getEmitIntervalSeconds(metadata);
+    ConcurrentMap<TimeSeriesMetadata, StripedAccumulator> table = interval > 0 ? scheduledSeries : series;
+    StripedAccumulator accumulator = getAccumulator(metadata, table, interval);
+    accumulator.add(value);
+    if (accumulator.isClosed()) {
+      reclaim(metadata, accumulator, table, interval, false);
+    }
+    List<StripedAccumulator> rollups = accumulator.getRollups();
+    for (int i = 0; i < rollups.size(); i++) {
+      if (rollups.get(i).isClosed()) {
+        MetricsMapping mapping = metadata.getMapping();
+        reclaim(mapping.getRollups().get(i).createMetadata(metadata, mapping), rollups.get(i), table, interval, true);
+      }
+    }
+  }
+
+  private StripedAccumulator getAccumulator(TimeSeriesMetadata metadata,
+                                            ConcurrentMap<TimeSeriesMetadata, StripedAccumulator> table,
+                                            long interval) {
+    StripedAccumulator accumulator = table.get(metadata);
+    if (accumulator == null) {
+      // The roll-ups are resolved first, the map cannot be updated from a computeIfAbsent function
+      StripedAccumulator created = createAccumulator(metadata, table, interval);
+      accumulator = table.putIfAbsent(metadata, created);
+      if (accumulator == null) {
+        accumulator = onCreated(metadata, created, interval);
+      }
+    }
+    return accumulator;
+  }
+
+  /**
+   * Moves the values left in an accumulator closed by a flush to the accumulator of the series now in the table.
+   * The flush may have drained the closed accumulator before or after a value was added to it, so the writer takes
+   * whatever the last drain left. Only the accumulator itself is moved, its roll-ups already got the values.
+   */
+  private void reclaim(TimeSeriesMetadata metadata, StripedAccumulator closed,
+                       ConcurrentMap<TimeSeriesMetadata, StripedAccumulator> table, long interval,
+                       boolean rollup) {
+    StripedAccumulator source = closed;
+    long[] left = new long[2];
+    while (source.isClosed()) {
+      source.drain(left);
+      if (left[0] == 0 && left[1] == 0) {
+        return;
+      }
+      source = rollup ? table.computeIfAbsent(metadata, key -> onCreated(key, new StripedAccumulator(), interval))
+        : getAccumulator(metadata, table, interval);
+      source.addLocal(left[0], left[1]);
+    }
+  }
+
+  /**
+   * Returns the emit interval of the mapping of a series, or 0 if the series is sent by every flush.
+   */
+  static long getEmitIntervalSeconds(TimeSeriesMetadata metadata) {
+    return metadata.getMapping() == null ? 0L : metadata.getMapping().getEmitIntervalSeconds();
+  }
+
+  private StripedAccumulator createAccumulator(TimeSeriesMetadata metadata,
+                                               ConcurrentMap<TimeSeriesMetadata, StripedAccumulator> table,
+                                               long interval) {
+    MetricsMapping mapping = metadata.getMapping();
+    if (mapping == null || mapping.getRollups().isEmpty()) {
+      return new StripedAccumulator();
+    }
+    List<StripedAccumulator> rollups = new ArrayList<>(mapping.getRollups().size());
+    for (RollupMapping rollup : mapping.getRollups()) {
+      // Roll-up accumulators are not linked to further roll-ups
+      rollups.add(table.computeIfAbsent(rollup.createMetadata(metadata, mapping),
+                                        key -> onCreated(key, new StripedAccumulator(), interval)));
+    }
+    return new StripedAccumulator(rollups);
+  }
+
+  private StripedAccumulator onCreated(TimeSeriesMetadata metadata, StripedAccumulator accumulator, long interval) {
+    if (interval > 0) {
+      createdSeries.add(new ScheduledSeries(metadata, accumulator, interval));
+    }
+    return accumulator;
+  }
+
+  /**
+   * Returns the aggregated value of every series that got values since the last flush, or since their last due time
+   * for the series with an emit interval, and resets them. Must not be called concurrently with itself.
+   *
+   * @param nowSeconds current time, the scheduled series due until then are drained
+   * @return Map of {@link TimeSeriesMetadata} and their aggregated value, as a single element list
+   */
+  public Map<TimeSeriesMetadata, List<Long>> flush(long nowSeconds) {
+    Map<TimeSeriesMetadata, long[]> totals = new HashMap<>();
+    drainAll(nowSeconds, totals);
+
+    Map<TimeSeriesMetadata, List<Long>> result = new HashMap<>(totals.size());
+    for (Map.Entry<TimeSeriesMetadata, long[]> entry : totals.entrySet()) {
+      long sum = entry.getValue()[0];
+      long count = entry.getValue()[1];
+      long value = entry.getKey().getAggregation() == AggregationType.MEAN && count > 0 ?
+        (long) ((double) sum / count) : sum;
+      result.put(entry.getKey(), Collections.singletonList(value));
+    }
+    return result;
+  }
+
+  /**
+   * Drops the values a {@link #flush} would return, without aggregating them. Must not be called concurrently with
+   * itself or with a flush.
+   *
+   * @param nowSeconds current time, the scheduled series due until then are drained
+   * @return the number of series whose values were dropped
+   */
+  public int discard(long nowSeconds) {
+    discarded = 0;
+    drainAll(nowSeconds, null);
+    return discarded;
+  }
+
+  /**
+   * Drains the series that are due into the given totals, or counts them in discarded if there are no totals.
+   */
+  private void drainAll(long nowSeconds, @Nullable Map<TimeSeriesMetadata, long[]> totals) {
+    for (Map.Entry<TimeSeriesMetadata, StripedAccumulator> entry : removed.entrySet()) {
+      entry.getValue().close();
+      drain(entry.getKey(), entry.getValue(), totals);
+    }
+    Map<TimeSeriesMetadata, StripedAccumulator> newlyRemoved = new HashMap<>();
+    for (Map.Entry<TimeSeriesMetadata, StripedAccumulator> entry : series.entrySet()) {
+      StripedAccumulator accumulator = entry.getValue();
+      long count = drain(entry.getKey(), accumulator, totals);
+      boolean idle = accumulator.updateIdleDrains(count) >= MAX_IDLE_FLUSHES;
+      if ((idle || accumulator.hasRemovedRollup()) && series.remove(entry.getKey(), accumulator)) {
+        accumulator.markRemoved();
+        newlyRemoved.put(entry.getKey(), accumulator);
+      }
+    }
+    removed = newlyRemoved;
+    flushScheduled(nowSeconds, totals);
+  }
+
+  private void flushScheduled(long nowSeconds, @Nullable Map<TimeSeriesMetadata, long[]> totals) {
+    // New series are first due at the end of the interval they were created in
+    long createdSeconds = lastFlushSeconds < 0 ? nowSeconds : lastFlushSeconds;
+    ScheduledSeries created;
+    while ((created = createdSeries.poll()) != null) {
+      wheel.schedule(created, getNextDue(createdSeconds, created.intervalSeconds));
+    }
+    lastFlushSeconds = nowSeconds;
+
+    for (ScheduledSeries scheduled : wheel.advance(nowSeconds)) {
+      StripedAccumulator accumulator = scheduled.accumulator;
+      if (scheduled.removed) {
+        // Drained once more after its removal, it is done
+        accumulator.close();
+        drain(scheduled.metadata, accumulator, totals);
+        continue;
+      }
+      long count = drain(scheduled.metadata, accumulator, totals);
+      boolean idle = accumulator.updateIdleDrains(count) >= MAX_IDLE_FLUSHES;
+      if ((idle || accumulator.hasRemovedRollup()) && scheduledSeries.remove(scheduled.metadata, accumulator)) {
+        accumulator.markRemoved();
+        scheduled.removed = true;
+      }
+      wheel.schedule(scheduled, getNextDue(nowSeconds, scheduled.intervalSeconds));
+    }
+  }
+
+  /**
+   * Returns the first multiple of the interval after the given time.
+   */
+  private static long getNextDue(long timeSeconds, long intervalSeconds) {
+    return (timeSeconds / intervalSeconds + 1) * intervalSeconds;
+  }
+
+  /**
+   * Returns the number of series in the table.
+   */
+  public int size() {
+    return series.size() + scheduledSeries.size();
+  }
+
+  private long drain(TimeSeriesMetadata metadata, StripedAccumulator accumulator,
+                     @Nullable Map<TimeSeriesMetadata, long[]> totals) {
+    accumulator.drain(drained);
+    long count = drained[1];
+    if (totals == null) {
+      if (count != 0 || drained[0] != 0) {
+        discarded++;
+      }
+    } else if (count != 0 || drained[0] != 0) {
+      long[] total = totals.computeIfAbsent(metadata, key -> new long[2]);
+      total[0] += drained[0];
+      total[1] += count;
+    }
+    return count;
+  }
+
+  /**
+   * A series with an emit interval, in the timing wheel.
+   */
+  private static final class ScheduledSeries {
+    private final TimeSeriesMetadata metadata;
+    private final StripedAccumulator accumulator;
+    private final long intervalSeconds;
+    // Set once the series is removed from the table, only accessed by the flushing thread
+    private boolean removed;
+
+    private ScheduledSeries(TimeSeriesMetadata metadata, StripedAccumulator accumulator, long intervalSeconds) {
+      this.metadata = metadata;
+      this.accumulator = accumulator;
+      this.intervalSeconds = intervalSeconds;
+    }
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sum and count of the values of a series, updated concurrently by the writer threads and drained by the flush.
+ * <p>
+ * Like {@link java.util.concurrent.atomic.LongAdder}, values are added to a single base cell until two threads
+ * contend on it, after which each thread adds to its own stripe. Each cell holds a sum, a count and the number of
+ * writers adding to it. Writers never wait: a writer that finds the base cell taken moves to the stripes.
+ * <p>
+ * The accumulator has two sets of cells, and writers add to the active one. A drain makes the other set active, waits
+ * for the writers still adding to the previous set, which only takes as long as one addition, then reads and clears
+ * it. A writer checks that its set is still active once it is registered in its cell, and starts over on the active
+ * set otherwise. So a value added while the accumulator is drained is never lost or split: its sum and its count are
+ * either both part of the drained totals or both left for the next drain.
+ * <p>
+ * The accumulators of the roll-up series of a series are linked to its accumulator, and get every value added to it.
+ * <p>
+ * Once an accumulator is out of its table, the flush closes it before draining it for the last time. A writer that
+ * finds the accumulator closed after adding to it cannot tell whether its value was part of that drain, so it drains
+ * the accumulator itself and moves what is left to the new accumulator of the series, see {@link SeriesTable}.
+ */
+public final class StripedAccumulator {
+
+  private static final int STRIPES = Math.min(64, Integer.highestOneBit(
+    Math.max(1, Runtime.getRuntime().availableProcessors()) * 2));
+  // Longs per stripe, so that the stripes of different threads are on different cache lines
+  private static final int STRIPE_WIDTH = 8;
+  // Offsets of the number of writers, the sum and the count in a cell
+  private static final int WRITERS = 0;
+  private static final int SUM = 1;
+  private static final int COUNT = 2;
+
+  private final List<StripedAccumulator> rollups;
+  private final int stripeCount;
+  // Writers add to the active set of cells, the drain reads the other one
+  private final Cells[] cells;
+  private volatile int active;
+  // Set once the accumulator is no longer in its table
+  private volatile boolean removed;
+  // Set before the last drain of the flush, values added after that are moved by the writers
+  private volatile boolean closed;
+  // Number of consecutive drains that found no values, only used by the flushing thread
+  private int idleDrains;
+
+  public StripedAccumulator() {
+    this(Collections.emptyList());
+  }
+
+  /**
+   * @param rollups the accumulators of the roll-up series, which also get the values added to this accumulator
+   */
+  public StripedAccumulator(List<StripedAccumulator> rollups) {
+    this(rollups, STRIPES);
+  }
+
+  @VisibleForTesting
+  StripedAccumulator(List<StripedAccumulator> rollups, int stripeCount) {
+    this.rollups = rollups;
+    this.stripeCount = stripeCount;
+    this.cells = new Cells[] {new Cells(), new Cells()};
+  }
+
+  /**
+   * Adds a value to this accumulator and to the roll-up accumulators.
+   */
+  public void add(long value) {
+    addLocal(value, 1);
+    for (int i = 0; i < rollups.size(); i++) {
+      rollups.get(i).addLocal(value, 1);
+    }
+  }
+
+  /**
+   * Adds a sum of values and their number to this accumulator only.
+   */
+  void addLocal(long sum, long count) {
+    while (true) {
+      int generation = active;
+      Cells target = cells[generation];
+      AtomicLongArray stripes = target.stripes;
+      if (stripes == null) {
+        AtomicLongArray base = target.base;
+        if (base.compareAndSet(WRITERS, 0, 1)) {
+          if (active == generation) {
+            // Only writer of the base cell, which the drain does not read until this writer is done
+            base.lazySet(SUM, base.get(SUM) + sum);
+            base.lazySet(COUNT, base.get(COUNT) + count);
+            base.set(WRITERS, 0);
+            return;
+          }
+          base.set(WRITERS, 0);
+          continue;
+        }
+        stripes = target.createStripes(stripeCount);
+      }
+      int index = getStripe() * STRIPE_WIDTH;
+      stripes.incrementAndGet(index + WRITERS);
+      if (active == generation) {
+        stripes.addAndGet(index + SUM, sum);
+        stripes.addAndGet(index + COUNT, count);
+        stripes.decrementAndGet(index + WRITERS);
+        return;
+      }
+      stripes.decrementAndGet(index + WRITERS);
+    }
+  }
+
+  /**
+   * Drains the sum and the number of the values added since the last drain. Drains are serialized with each other,
+   * they never block the writers.
+   *
+   * @param drained set to the sum and to the number of values
+   */
+  public synchronized void drain(long[] drained) {
+    int generation = active;
+    active = generation ^ 1;
+    Cells target = cells[generation];
+    drained[0] = 0;
+    drained[1] = 0;
+    drainCell(target.base, 0, drained);
+    AtomicLongArray stripes = target.stripes;
+    if (stripes != null) {
+      for (int i = 0; i < stripes.length(); i += STRIPE_WIDTH) {
+        drainCell(stripes, i, drained);
+      }
+    }
+  }
+
+  /**
+   * Adds a cell of the inactive set to the drained totals once its last writer is done, and resets it. Writers that
+   * register in the cell after that find their set inactive and leave the cell unchanged.
+   */
+  private static void drainCell(AtomicLongArray cells, int index, long[] drained) {
+    while (cells.get(index + WRITERS) != 0) {
+      Thread.yield();
+    }
+    drained[0] += cells.get(index + SUM);
+    drained[1] += cells.get(index + COUNT);
+    // Published to the writers by the next change of the active set
+    cells.lazySet(index + SUM, 0);
+    cells.lazySet(index + COUNT, 0);
+  }
+
+  /**
+   * Records the count of the last drain and returns the number of consecutive drains without values.
+   * Must only be called by the thread that drains.
+   */
+  int updateIdleDrains(long count) {
+    idleDrains = count == 0 ? idleDrains + 1 : 0;
+    return idleDrains;
+  }
+
+  void markRemoved() {
+    removed = true;
+  }
+
+  /**
+   * Closes this accumulator, must be called by the flush before it drains the accumulator for the last time.
+   */
+  void close() {
+    closed = true;
+  }
+
+  boolean isClosed() {
+    return closed;
+  }
+
+  List<StripedAccumulator> getRollups() {
+    return rollups;
+  }
+
+  /**
+   * Returns true if one of the roll-up accumulators was removed from its table.
+   */
+  boolean hasRemovedRollup() {
+    for (StripedAccumulator rollup : rollups) {
+      if (rollup.removed) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int getStripe() {
+    // Fibonacci hashing of the thread id, so that consecutive ids use different stripes
+    long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    return (int) (id >>> 32) & (stripeCount - 1);
+  }
+
+  /**
+   * A set of cells: the base cell, and the stripes once writers contended on it.
+   */
+  private static final class Cells {
+    private final AtomicLongArray base = new AtomicLongArray(3);
+    private volatile AtomicLongArray stripes;
+
+    private synchronized AtomicLongArray createStripes(int stripeCount) {
+      if (stripes == null) {
+        stripes = new AtomicLongArray(stripeCount * STRIPE_WIDTH);
+      }
+      return stripes;
+    }
+  }
+}
@@ -16,8 +16,12 @@
 
 package io.cdap.cdap.metrics.process.gcp;
 
+import com.google.common.collect.ImmutableSet;
+
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
 
 /**
  * A tag filter with tag name and a comma separated list of permissible values for the cloud monitoring metric label.
@@ -28,6 +32,8 @@ public class TagFilter {
 
   private final String tag;
   private final String values;
+  // Permissible values, split once
+  private transient volatile Set<String> valueSet;
 
   public TagFilter(String tag, String values) {
     this.tag = tag;
@@ -42,6 +48,18 @@ public class TagFilter {
     return Arrays.asList(values.split(","));
   }
 
+  /**
+   * Returns true if the given tag value is one of the permissible values.
+   */
+  public boolean matches(@Nullable String value) {
+    Set<String> valueSet = this.valueSet;
+    if (valueSet == null) {
+      valueSet = ImmutableSet.copyOf(getValuesList());
+      this.valueSet = valueSet;
+    }
+    return value != null && valueSet.contains(value);
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder();
@@ -18,32 +18,54 @@ package io.cdap.cdap.metrics.process.gcp;
 
 import io.cdap.cdap.api.metrics.MetricType;
 
-import java.util.Collections;
 import java.util.Map;
-import java.util.Objects;
 import javax.annotation.Nullable;
 
 /**
  * Stores cloud monitoring metric details for a CDAP metric.
+ * <p>
+ * The identity of a series covers every field that changes the points sent for it: the metric and resource types,
+ * the labels, the metric kind and the aggregation. Its hash is computed once, and the labels are an interned
+ * {@link LabelSet}, so series are compared without comparing their labels.
  */
 public class TimeSeriesMetadata {
 
   private final String metricType;
   private final String resourceType;
-  private final Map<String, String> metricLabels;
-  private final Map<String, String> resourceLabels;
+  private final LabelSet labels;
   private final MetricType metricKind;
   private final AggregationType aggregation;
+  private final int hash;
+  // The mapping this series was created from, not part of the series identity.
+  @Nullable
+  private final MetricsMapping mapping;
+  // The tenant the series is scheduled for, not part of the series identity.
+  @Nullable
+  private final String tenant;
 
   public TimeSeriesMetadata(String metricType, String resourceType,
                             Map<String, String> metricLabels, Map<String, String> resourceLabels,
                             MetricType metricKind, @Nullable AggregationType aggregation) {
+    this(metricType, resourceType, metricLabels, resourceLabels, metricKind, aggregation, null, null);
+  }
+
+  public TimeSeriesMetadata(String metricType, String resourceType,
+                            Map<String, String> metricLabels, Map<String, String> resourceLabels,
+                            MetricType metricKind, @Nullable AggregationType aggregation,
+                            @Nullable MetricsMapping mapping, @Nullable String tenant) {
     this.metricType = metricType;
     this.resourceType = resourceType;
-    this.metricLabels = Collections.unmodifiableMap(metricLabels);
-    this.resourceLabels = Collections.unmodifiableMap(resourceLabels);
+    this.labels = LabelSet.of(metricLabels, resourceLabels);
     this.metricKind = metricKind;
-    this.aggregation = aggregation;
+    this.aggregation = aggregation == null ? AggregationType.SUM : aggregation;
+    this.mapping = mapping;
+    this.tenant = tenant;
+    // Ordinals rather than the hash codes of the enums, so that the hash is the same in every JVM
+    int result = metricType.hashCode();
+    result = result * 31 + resourceType.hashCode();
+    result = result * 31 + labels.hashCode();
+    result = result * 31 + metricKind.ordinal();
+    this.hash = result * 31 + this.aggregation.ordinal();
   }
 
   public String getMetricType() {
@@ -55,11 +77,15 @@ public class TimeSeriesMetadata {
   }
 
   public Map<String, String> getMetricLabels() {
-    return metricLabels;
+    return labels.getMetricLabels();
   }
 
   public Map<String, String> getResourceLabels() {
-    return resourceLabels;
+    return labels.getResourceLabels();
+  }
+
+  public LabelSet getLabels() {
+    return labels;
   }
 
   public MetricType getMetricKind() {
@@ -67,7 +93,17 @@ public class TimeSeriesMetadata {
   }
 
   public AggregationType getAggregation() {
-    return aggregation == null ? AggregationType.SUM : aggregation;
+    return aggregation;
+  }
+
+  @Nullable
+  public MetricsMapping getMapping() {
+    return mapping;
+  }
+
+  @Nullable
+  public String getTenant() {
+    return tenant;
   }
 
   @Override
@@ -79,10 +115,10 @@ public class TimeSeriesMetadata {
       return false;
     }
     TimeSeriesMetadata other = (TimeSeriesMetadata) obj;
-    return Objects.equals(metricType, other.metricType) &&
-      Objects.equals(resourceType, other.resourceType) &&
-      Objects.equals(metricLabels, other.metricLabels) &&
-      Objects.equals(resourceLabels, other.resourceLabels);
+    // Label sets are interned, so equal labels are the same instance
+    return hash == other.hash && labels == other.labels && metricKind == other.metricKind
+      && aggregation == other.aggregation && metricType.equals(other.metricType)
+      && resourceType.equals(other.resourceType);
   }
 
   @Override
@@ -91,14 +127,15 @@ public class TimeSeriesMetadata {
     sb.append("TimeSeriesMetadata{metricType=").append(metricType);
     sb.append(", metricKind=").append(metricKind);
     sb.append(", resourceType=").append(resourceType);
-    sb.append(", metricLabels=").append(metricLabels);
-    sb.append(", resourceLabels=").append(resourceLabels);
+    sb.append(", aggregation=").append(aggregation);
+    sb.append(", metricLabels=").append(labels.getMetricLabels());
+    sb.append(", resourceLabels=").append(labels.getResourceLabels());
     sb.append('}');
     return sb.toString();
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(metricType, resourceType, metricLabels, resourceLabels);
+    return hash;
   }
 }
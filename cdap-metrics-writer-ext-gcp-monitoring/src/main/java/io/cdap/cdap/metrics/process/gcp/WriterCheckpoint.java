@@ -0,0 +1,411 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import io.cdap.cdap.api.metrics.MetricType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * Saves the state of the writer to a local file, so that a restarted writer continues the time window of the previous
+ * one and keeps the per series state of its lanes: the last emitted points of the {@link EmissionFilter} and the
+ * last readings of the {@link RateTracker}.
+ * <p>
+ * The file is written to a temporary file next to it, synced and renamed over the previous checkpoint, and the
+ * directory is synced, so that a crash leaves either the old or the new checkpoint. It starts with a fixed size
+ * header, which is all that is needed to resume the time window, followed by the series state. The header can be
+ * updated in place with {@link #writeHeader}, which syncs the file, so it is meant to be called at most once per write
+ * interval. Its time fields take 16 bytes within the first disk sector, so an update is either written whole or not
+ * at all:
+ * <pre>
+ *   header  := magic version checkpointTimeMillis lastEndTime
+ *   body    := projectCount project*
+ *   project := projectRef stateCount state*
+ *   state   := kind mappingRef metricTypeRef resourceTypeRef metricKindRef aggregationRef tenant
+ *              labels labels value timeSeconds retentionSeconds
+ *   tenant  := 0 | 1 tenantRef
+ *   labels  := labelCount (nameRef valueRef)*
+ * </pre>
+ * Strings are dictionary encoded: a reference is the id of the string, and a new string is written right after its
+ * id, which is the size of the dictionary. The mapping is referred to by its CDAP metric name.
+ * Counts, ids and times are variable length integers, the kind is a byte and the value zig-zag encoded.
+ * Series whose mapping is no longer configured are dropped when the checkpoint is read.
+ */
+public class WriterCheckpoint {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WriterCheckpoint.class);
+
+  static final int MAGIC = 0x434D574B;
+  static final int VERSION = 1;
+  // Offset of the checkpoint time and last end time in the file
+  private static final int HEADER_TIMES_OFFSET = 8;
+
+  private final Path path;
+  private final Map<String, MetricsMapping> metricsMapping;
+  private final Map<MetricsMapping, String> mappingNames = new IdentityHashMap<>();
+
+  /**
+   * @param path           the path of the checkpoint file
+   * @param metricsMapping the configured mappings by CDAP metric name, used to refer to the mapping of a series
+   */
+  public WriterCheckpoint(Path path, Map<String, MetricsMapping> metricsMapping) {
+    this.path = path;
+    this.metricsMapping = metricsMapping;
+    metricsMapping.forEach((name, mapping) -> mappingNames.put(mapping, name));
+  }
+
+  public Path getPath() {
+    return path;
+  }
+
+  /**
+   * Reads the header of the checkpoint, without reading the series state.
+   *
+   * @return the header, or {@code null} if there is no checkpoint
+   * @throws IOException if the file cannot be read or is not a checkpoint
+   */
+  @Nullable
+  public Header readHeader() throws IOException {
+    try (DataInputStream input = new DataInputStream(Files.newInputStream(path))) {
+      return readHeader(input);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Reads the series state of the checkpoint.
+   *
+   * @return the state of the series by project, empty if there is no checkpoint
+   * @throws IOException if the file cannot be read or is malformed
+   */
+  public Map<String, List<SeriesState>> readSeries() throws IOException {
+    Map<String, List<SeriesState>> result = new HashMap<>();
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+      readHeader(input);
+      List<String> dictionary = new ArrayList<>();
+      long projects = VarInts.readVarLong(input);
+      for (long i = 0; i < projects; i++) {
+        String project = readString(input, dictionary);
+        long states = VarInts.readVarLong(input);
+        List<SeriesState> projectStates = new ArrayList<>();
+        for (long j = 0; j < states; j++) {
+          SeriesState state = readState(input, dictionary);
+          if (state != null) {
+            projectStates.add(state);
+          }
+        }
+        result.put(project, projectStates);
+      }
+    } catch (NoSuchFileException e) {
+      return result;
+    }
+    return result;
+  }
+
+  /**
+   * Replaces the checkpoint with the given state. Series without a configured mapping are not saved.
+   *
+   * @param lastEndTime         end time of the last write
+   * @param states              the state of the series by project
+   * @param checkpointTimeMillis time the state was taken
+   */
+  public void write(long lastEndTime, Map<String, List<SeriesState>> states, long checkpointTimeMillis)
+    throws IOException {
+    Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file));
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      output.writeLong(checkpointTimeMillis);
+      output.writeLong(lastEndTime);
+      Map<String, Integer> dictionary = new HashMap<>();
+      VarInts.writeVarLong(output, states.size());
+      for (Map.Entry<String, List<SeriesState>> entry : states.entrySet()) {
+        writeString(output, entry.getKey(), dictionary);
+        List<SeriesState> saved = new ArrayList<>(entry.getValue().size());
+        for (SeriesState state : entry.getValue()) {
+          if (mappingNames.containsKey(state.getMetadata().getMapping())) {
+            saved.add(state);
+          }
+        }
+        VarInts.writeVarLong(output, saved.size());
+        for (SeriesState state : saved) {
+          writeState(output, state, dictionary);
+        }
+      }
+      output.flush();
+      file.getFD().sync();
+    }
+    try {
+      Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+    // The rename is only durable once the directory is synced
+    try (FileChannel directory = FileChannel.open(path.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+      directory.force(true);
+    } catch (IOException e) {
+      // Directories cannot be opened or synced on some platforms, such as Windows
+      LOG.trace("Failed to sync the directory of {}", path, e);
+    }
+  }
+
+  /**
+   * Updates the header of the checkpoint in place, keeping its series state. If there is no valid checkpoint, one
+   * without series state is written.
+   *
+   * @param lastEndTime          end time of the last write
+   * @param checkpointTimeMillis time of the update
+   */
+  public void writeHeader(long lastEndTime, long checkpointTimeMillis) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate(HEADER_TIMES_OFFSET + 16);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, buffer.position()) < 0) {
+          break;
+        }
+      }
+      buffer.flip();
+      if (buffer.remaining() == buffer.capacity() && buffer.getInt() == MAGIC && buffer.getInt() == VERSION) {
+        buffer.clear();
+        buffer.position(HEADER_TIMES_OFFSET);
+        buffer.putLong(checkpointTimeMillis).putLong(lastEndTime);
+        buffer.position(HEADER_TIMES_OFFSET);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer, buffer.position());
+        }
+        channel.force(false);
+        return;
+      }
+    } catch (NoSuchFileException e) {
+      // Written below
+    }
+    write(lastEndTime, Collections.emptyMap(), checkpointTimeMillis);
+  }
+
+  private static Header readHeader(DataInput input) throws IOException {
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Not a writer checkpoint file.");
+    }
+    int version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported checkpoint version " + version);
+    }
+    return new Header(input.readLong(), input.readLong());
+  }
+
+  private void writeState(DataOutput output, SeriesState state, Map<String, Integer> dictionary)
+    throws IOException {
+    TimeSeriesMetadata metadata = state.getMetadata();
+    output.writeByte(state.getKind().ordinal());
+    writeString(output, mappingNames.get(metadata.getMapping()), dictionary);
+    writeString(output, metadata.getMetricType(), dictionary);
+    writeString(output, metadata.getResourceType(), dictionary);
+    writeString(output, metadata.getMetricKind().name(), dictionary);
+    writeString(output, metadata.getAggregation().name(), dictionary);
+    if (metadata.getTenant() == null) {
+      VarInts.writeVarLong(output, 0);
+    } else {
+      VarInts.writeVarLong(output, 1);
+      writeString(output, metadata.getTenant(), dictionary);
+    }
+    writeLabels(output, metadata.getMetricLabels(), dictionary);
+    writeLabels(output, metadata.getResourceLabels(), dictionary);
+    VarInts.writeVarLong(output, VarInts.zigZag(state.getValue()));
+    VarInts.writeVarLong(output, VarInts.zigZag(state.getTimeSeconds()));
+    VarInts.writeVarLong(output, VarInts.zigZag(state.getExpirySeconds() - state.getTimeSeconds()));
+  }
+
+  @Nullable
+  private SeriesState readState(DataInput input, List<String> dictionary) throws IOException {
+    int kind = input.readByte();
+    if (kind < 0 || kind >= SeriesState.Kind.values().length) {
+      throw new IOException("Malformed series state kind " + kind + " in checkpoint file.");
+    }
+    MetricsMapping mapping = metricsMapping.get(readString(input, dictionary));
+    String metricType = readString(input, dictionary);
+    String resourceType = readString(input, dictionary);
+    String metricKind = readString(input, dictionary);
+    String aggregation = readString(input, dictionary);
+    String tenant = VarInts.readVarLong(input) == 0 ? null : readString(input, dictionary);
+    Map<String, String> metricLabels = readLabels(input, dictionary);
+    Map<String, String> resourceLabels = readLabels(input, dictionary);
+    long value = VarInts.unZigZag(VarInts.readVarLong(input));
+    long timeSeconds = VarInts.unZigZag(VarInts.readVarLong(input));
+    long expirySeconds = timeSeconds + VarInts.unZigZag(VarInts.readVarLong(input));
+    if (mapping == null) {
+      return null;
+    }
+    TimeSeriesMetadata metadata;
+    try {
+      metadata = new TimeSeriesMetadata(metricType, resourceType, metricLabels, resourceLabels,
+                                        MetricType.valueOf(metricKind), AggregationType.valueOf(aggregation),
+                                        mapping, tenant);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Malformed series state in checkpoint file.", e);
+    }
+    return new SeriesState(SeriesState.Kind.values()[kind], metadata, value, timeSeconds, expirySeconds);
+  }
+
+  private static void writeLabels(DataOutput output, Map<String, String> labels,
+                                  Map<String, Integer> dictionary) throws IOException {
+    VarInts.writeVarLong(output, labels.size());
+    for (Map.Entry<String, String> label : labels.entrySet()) {
+      writeString(output, label.getKey(), dictionary);
+      writeString(output, label.getValue(), dictionary);
+    }
+  }
+
+  private static Map<String, String> readLabels(DataInput input, List<String> dictionary) throws IOException {
+    long count = VarInts.readVarLong(input);
+    Map<String, String> labels = new HashMap<>();
+    for (long i = 0; i < count; i++) {
+      labels.put(readString(input, dictionary), readString(input, dictionary));
+    }
+    return labels;
+  }
+
+  private static void writeString(DataOutput output, String string, Map<String, Integer> dictionary)
+    throws IOException {
+    Integer id = dictionary.get(string);
+    if (id != null) {
+      VarInts.writeVarLong(output, id);
+      return;
+    }
+    VarInts.writeVarLong(output, dictionary.size());
+    output.writeUTF(string);
+    dictionary.put(string, dictionary.size());
+  }
+
+  private static String readString(DataInput input, List<String> dictionary) throws IOException {
+    long id = VarInts.readVarLong(input);
+    if (id == dictionary.size()) {
+      dictionary.add(input.readUTF());
+    } else if (id > dictionary.size()) {
+      throw new IOException("Malformed string id " + id + " in checkpoint file.");
+    }
+    return dictionary.get((int) id);
+  }
+
+  /**
+   * Header of a checkpoint.
+   */
+  public static final class Header {
+    private final long checkpointTimeMillis;
+    private final long lastEndTime;
+
+    Header(long checkpointTimeMillis, long lastEndTime) {
+      this.checkpointTimeMillis = checkpointTimeMillis;
+      this.lastEndTime = lastEndTime;
+    }
+
+    public long getCheckpointTimeMillis() {
+      return checkpointTimeMillis;
+    }
+
+    public long getLastEndTime() {
+      return lastEndTime;
+    }
+  }
+
+  /**
+   * Saved state of a series in a lane: a value, the time it was taken and the time after which it is dropped.
+   */
+  public static final class SeriesState {
+
+    /**
+     * What the state is used for.
+     */
+    public enum Kind {
+      // Last point emitted, see EmissionFilter
+      EMITTED,
+      // Last reading of a cumulative total, see RateTracker
+      RATE
+    }
+
+    private final Kind kind;
+    private final TimeSeriesMetadata metadata;
+    private final long value;
+    private final long timeSeconds;
+    private final long expirySeconds;
+
+    public SeriesState(Kind kind, TimeSeriesMetadata metadata, long value, long timeSeconds, long expirySeconds) {
+      this.kind = kind;
+      this.metadata = metadata;
+      this.value = value;
+      this.timeSeconds = timeSeconds;
+      this.expirySeconds = expirySeconds;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    public TimeSeriesMetadata getMetadata() {
+      return metadata;
+    }
+
+    public long getValue() {
+      return value;
+    }
+
+    public long getTimeSeconds() {
+      return timeSeconds;
+    }
+
+    public long getExpirySeconds() {
+      return expirySeconds;
+    }
+
+    @Override
+    public String toString() {
+      final StringBuilder sb = new StringBuilder();
+      sb.append("SeriesState{kind=").append(kind);
+      sb.append(", metadata=").append(metadata);
+      sb.append(", value=").append(value);
+      sb.append(", timeSeconds=").append(timeSeconds);
+      sb.append(", expirySeconds=").append(expirySeconds);
+      sb.append('}');
+      return sb.toString();
+    }
+  }
+}
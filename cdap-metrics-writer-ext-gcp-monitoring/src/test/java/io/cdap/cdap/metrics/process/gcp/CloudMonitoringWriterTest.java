@@ -16,21 +16,44 @@
 
 package io.cdap.cdap.metrics.process.gcp;
 
+import com.google.api.core.ApiFuture;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.google.monitoring.v3.CreateTimeSeriesRequest;
+import com.google.monitoring.v3.ProjectName;
+import com.google.monitoring.v3.TimeSeries;
+import com.google.protobuf.Empty;
 import io.cdap.cdap.api.metrics.MetricType;
 import io.cdap.cdap.api.metrics.MetricValue;
+import io.cdap.cdap.api.metrics.MetricValues;
 import io.cdap.cdap.api.metrics.MetricsContext;
 import io.cdap.cdap.api.metrics.MetricsWriterContext;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Test for {@link CloudMonitoringWriter}
@@ -39,6 +62,9 @@ public class CloudMonitoringWriterTest {
 
   private static final String TEST_CONFIG_PATH = "src/test/resources/metrics_writer_config.json";
 
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
   @Test
   public void testConfig() {
     MonitoringConfig monitoringConfig = new CloudMonitoringWriter().getConfig(TEST_CONFIG_PATH);
@@ -64,15 +90,15 @@ public class CloudMonitoringWriterTest {
 
     // The tags do not have the specified prg type in config file, so should return empty
     // Config file has {"tag": "prg", "values": "DataPipelineWorkflow,DataStreamsSparkStreaming"}
-    Optional<Map.Entry<String, MetricsMapping>> mappingEntry = metricsWriter.getMappingEntry(
-      monitoringConfig.getMetricsMapping(), value, tags1);
+    MetricNameMatcher matcher = MetricNameMatcher.compile(monitoringConfig.getMetricsMapping());
+    Optional<MetricNameMatcher.Match> mappingEntry = metricsWriter.getMappingEntry(matcher, value, tags1);
     Assert.assertFalse(mappingEntry.isPresent());
 
     // Add a matching tag from config file and now the mapping entry should be present
     Map<String, String> tags2 = ImmutableMap.of("prg", "DataPipelineWorkflow", "namespace", "system");
-    Optional<Map.Entry<String, MetricsMapping>> prgMappingEntry = metricsWriter.getMappingEntry(
-      monitoringConfig.getMetricsMapping(), value, tags2);
+    Optional<MetricNameMatcher.Match> prgMappingEntry = metricsWriter.getMappingEntry(matcher, value, tags2);
     Assert.assertTrue(prgMappingEntry.isPresent());
+    Assert.assertEquals("program.completed.runs", prgMappingEntry.get().getKey());
   }
 
   @Test
@@ -100,6 +126,28 @@ public class CloudMonitoringWriterTest {
     Assert.assertFalse(metricsWriter.allTagsMatch(additionalFilters, cdapTags5));
   }
 
+  @Test
+  public void testRouting() {
+    CloudMonitoringWriter metricsWriter = new CloudMonitoringWriter();
+    MonitoringConfig monitoringConfig = metricsWriter.getConfig(TEST_CONFIG_PATH);
+    List<RoutingRule> routingRules = monitoringConfig.getRoutingRules();
+    Assert.assertEquals(2, routingRules.size());
+
+    Optional<RoutingRule> rule = metricsWriter.getRoutingRule(routingRules, ImmutableMap.of("namespace", "tenant2"));
+    Assert.assertTrue(rule.isPresent());
+    Assert.assertEquals("tenant-project", rule.get().getProject());
+    Assert.assertNull(rule.get().getEndpoint());
+
+    rule = metricsWriter.getRoutingRule(routingRules, ImmutableMap.of("namespace", "tenant3", "app", "test"));
+    Assert.assertTrue(rule.isPresent());
+    Assert.assertEquals("other-project", rule.get().getProject());
+    Assert.assertEquals("localhost:8080", rule.get().getEndpoint());
+
+    // Metrics of other namespaces or without namespace go to the default project
+    Assert.assertFalse(metricsWriter.getRoutingRule(routingRules, ImmutableMap.of("namespace", "system")).isPresent());
+    Assert.assertFalse(metricsWriter.getRoutingRule(routingRules, ImmutableMap.of("app", "test")).isPresent());
+  }
+
   @Test
   public void testLabels() {
     CloudMonitoringWriter metricsWriter = new CloudMonitoringWriter();
@@ -114,6 +162,58 @@ public class CloudMonitoringWriterTest {
     Assert.assertEquals(expected, actual);
   }
 
+  @Test
+  public void testLabelTemplatesAndTransforms() {
+    CloudMonitoringWriter metricsWriter = new CloudMonitoringWriter();
+    List<LabelMapping> labelMappings = ImmutableList.of(
+      new LabelMapping("pipeline", null, false, "{ns}/{app}", null, null, true, null),
+      new LabelMapping("version", "app", true, null, "-v(\\d+)$", null, null, null),
+      new LabelMapping("mode", "prg", true, null, null,
+                       ImmutableMap.of("DataPipelineWorkflow", "batch"), null, null),
+      new LabelMapping("short", "app", true, null, null, null, null, 5),
+      new LabelMapping("state", "Completed", false, null, null, null, true, null));
+
+    Map<String, String> tags = ImmutableMap.of("ns", "Default", "app", "Pipeline-v12", "prg", "DataPipelineWorkflow");
+    Map<String, String> expected = ImmutableMap.of("pipeline", "default/pipeline-v12", "version", "12",
+                                                   "mode", "batch", "short", "Pipel", "state", "completed");
+    Assert.assertEquals(expected, metricsWriter.getLabels(labelMappings, tags));
+    // Cached values give the same result
+    Assert.assertEquals(expected, metricsWriter.getLabels(labelMappings, tags));
+
+    // Labels with missing tags or non matching extraction are left out, unmapped values are kept
+    tags = ImmutableMap.of("app", "pipeline", "prg", "SparkProgram");
+    expected = ImmutableMap.of("mode", "SparkProgram", "short", "pipel", "state", "completed");
+    Assert.assertEquals(expected, metricsWriter.getLabels(labelMappings, tags));
+
+    // Values are only truncated for labels with a maxLength, which is capped at the Cloud Monitoring limit
+    String longValue = Strings.repeat("a", 2000);
+    Assert.assertSame(longValue, new LabelMapping("long", "app", true)
+      .getEvaluator().evaluate(ImmutableMap.of("app", longValue)));
+    LabelMapping longMapping = new LabelMapping("long", "app", true, null, null, null, null, 5000);
+    Assert.assertEquals(LabelEvaluator.MAX_LABEL_VALUE_LENGTH,
+                        longMapping.getEvaluator().evaluate(ImmutableMap.of("app", longValue)).length());
+
+    // The limit is in UTF-8 bytes, and characters are not split
+    String multiByteValue = Strings.repeat("\u00e9", 600);
+    String truncated = longMapping.getEvaluator().evaluate(ImmutableMap.of("app", multiByteValue));
+    Assert.assertEquals(512, truncated.length());
+    Assert.assertEquals(1024, truncated.getBytes(StandardCharsets.UTF_8).length);
+    LabelEvaluator evaluator = new LabelMapping("short", "app", true, null, null, null, null, 6).getEvaluator();
+    Assert.assertEquals("a\u20ac", evaluator.evaluate(ImmutableMap.of("app", "a\u20ac\u20ac")));
+    Assert.assertEquals("ab\ud83d\ude00", evaluator.evaluate(ImmutableMap.of("app", "ab\ud83d\ude00\ud83d\ude00")));
+    Assert.assertEquals("abc", evaluator.evaluate(ImmutableMap.of("app", "abc\ud83d\ude00")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidLabelTemplate() {
+    new LabelMapping("pipeline", null, false, "{ns}/{app", null, null, null, null).getEvaluator();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidLabelMaxLength() {
+    new LabelMapping("pipeline", "app", true, null, null, null, null, 0).getEvaluator();
+  }
+
   @Test
   public void testAutoFillingLabels() {
     CloudMonitoringWriter metricsWriter = new CloudMonitoringWriter();
@@ -124,6 +224,254 @@ public class CloudMonitoringWriterTest {
     Assert.assertEquals(expectedLabels, actualLabels);
   }
 
+  @Test
+  public void testConcurrentWrites() throws Exception {
+    RecordingMetricServiceStub stub = new RecordingMetricServiceStub(0, false);
+    CloudMonitoringWriter metricsWriter = createWriter(stub, Collections.emptyMap());
+
+    int threads = 8;
+    int writesPerThread = 2000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CyclicBarrier barrier = new CyclicBarrier(threads);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      futures.add(executor.submit(() -> {
+        barrier.await();
+        for (int j = 0; j < writesPerThread; j++) {
+          Map<String, String> tags = ImmutableMap.of("ns", "default", "app", "app" + (j % 2),
+                                                     "prg", "DataPipelineWorkflow");
+          metricsWriter.write(Collections.singletonList(new MetricValues(
+            tags, j, Collections.singletonList(new MetricValue("program.completed.runs", MetricType.COUNTER, 1)))));
+        }
+        return null;
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    // Values left by writers that found a flush in progress are sent by the next write
+    metricsWriter.awaitSends();
+    metricsWriter.write(Collections.emptyList());
+    metricsWriter.close();
+
+    // Every value is also added to the roll-up series of program.completed.runs
+    Assert.assertEquals(2 * threads * writesPerThread, stub.getValueSum());
+  }
+
+  @Test(timeout = 60000)
+  public void testRoutedWrites() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    // Requests to other-project block until released
+    RecordingMetricServiceStub stub = new RecordingMetricServiceStub(0, true) {
+      @Override
+      public UnaryCallable<CreateTimeSeriesRequest, Empty> createTimeSeriesCallable() {
+        UnaryCallable<CreateTimeSeriesRequest, Empty> callable = super.createTimeSeriesCallable();
+        return new UnaryCallable<CreateTimeSeriesRequest, Empty>() {
+          @Override
+          public ApiFuture<Empty> futureCall(CreateTimeSeriesRequest request, ApiCallContext context) {
+            if (request.getName().equals(ProjectName.of("other-project").toString())) {
+              Uninterruptibles.awaitUninterruptibly(release);
+            }
+            return callable.futureCall(request, context);
+          }
+        };
+      }
+    };
+    CloudMonitoringWriter metricsWriter = createWriter(stub, Collections.emptyMap());
+    List<MetricValues> metricValues = new ArrayList<>();
+    for (String namespace : new String[] {"default", "tenant1", "tenant3"}) {
+      metricValues.add(new MetricValues(
+        ImmutableMap.of("namespace", namespace, "app", "app1", "prg", "DataPipelineWorkflow"), 0,
+        Collections.singletonList(new MetricValue("program.completed.runs", MetricType.COUNTER, 1))));
+    }
+    metricsWriter.write(metricValues);
+    // The blocked project does not delay the others
+    while (stub.getSeries("test-p").isEmpty() || stub.getSeries("tenant-project").isEmpty()) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    Assert.assertTrue(stub.getSeries("other-project").isEmpty());
+    release.countDown();
+    metricsWriter.awaitSends();
+    metricsWriter.close();
+
+    for (String project : new String[] {"test-p", "tenant-project", "other-project"}) {
+      Set<TimeSeries> series = stub.getSeries(project);
+      // The series and its roll-up
+      Assert.assertEquals(project, 2, series.size());
+      for (TimeSeries timeSeries : series) {
+        Assert.assertEquals(project, timeSeries.getResource().getLabelsOrThrow("resource_container"));
+      }
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testPartitionedInstances() throws Exception {
+    Map<String, String> tags = ImmutableMap.of("ns", "default", "app", "app1", "prg", "DataPipelineWorkflow");
+    // Each of two instances receives half of the values of a series, in the default label mode
+    RecordingMetricServiceStub stub = new RecordingMetricServiceStub(0, true);
+    for (int index = 0; index < 2; index++) {
+      CloudMonitoringWriter metricsWriter = createWriter(stub, ImmutableMap.of("instance.count", "2",
+                                                                               "instance.index", "" + index));
+      metricsWriter.write(Collections.singletonList(new MetricValues(
+        tags, 0, ImmutableList.of(new MetricValue("program.completed.runs", MetricType.COUNTER, 1 + 2 * index),
+                                  new MetricValue("program.completed.runs", MetricType.COUNTER, 2 + 2 * index)))));
+      metricsWriter.awaitSends();
+      metricsWriter.close();
+    }
+    // The series and its roll-up of each instance, which add up to the total of 10
+    Assert.assertEquals(4, stub.getSeries("test-p").size());
+    Assert.assertEquals(20, stub.getValueSum());
+
+    // Slice mode would drop the half owned by the other instance
+    try {
+      createWriter(stub, ImmutableMap.of("instance.count", "2", "instance.index", "0", "partition.mode", "slice"));
+      Assert.fail("Expected slice mode to be rejected");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+
+    // It is accepted when every instance receives all the values, and each series is sent once with the total
+    stub = new RecordingMetricServiceStub(0, true);
+    for (int index = 0; index < 2; index++) {
+      CloudMonitoringWriter metricsWriter = createWriter(stub, ImmutableMap.of(
+        "instance.count", "2", "instance.index", "" + index, "partition.mode", "slice",
+        "partition.inputs.replicated", "true"));
+      metricsWriter.write(Collections.singletonList(new MetricValues(
+        tags, 0, ImmutableList.of(new MetricValue("program.completed.runs", MetricType.COUNTER, 1),
+                                  new MetricValue("program.completed.runs", MetricType.COUNTER, 2),
+                                  new MetricValue("program.completed.runs", MetricType.COUNTER, 3),
+                                  new MetricValue("program.completed.runs", MetricType.COUNTER, 4)))));
+      metricsWriter.awaitSends();
+      metricsWriter.close();
+    }
+    Assert.assertEquals(2, stub.getSeries("test-p").size());
+    Assert.assertEquals(20, stub.getValueSum());
+  }
+
+  @Test(timeout = 60000)
+  public void testMixedMetricKinds() throws Exception {
+    // Rejects requests with the same series twice
+    RecordingMetricServiceStub stub = new RecordingMetricServiceStub(0, true);
+    CloudMonitoringWriter metricsWriter = createWriter(stub, Collections.emptyMap());
+    Map<String, String> tags = ImmutableMap.of("ns", "default", "app", "app1", "prg", "DataPipelineWorkflow");
+    metricsWriter.write(Collections.singletonList(new MetricValues(
+      tags, 0, ImmutableList.of(new MetricValue("program.completed.runs", MetricType.GAUGE, 5),
+                                new MetricValue("program.completed.runs", MetricType.COUNTER, 3)))));
+    metricsWriter.awaitSends();
+    metricsWriter.close();
+
+    Assert.assertEquals(0, stub.getRejectedRequests());
+    // The series and its roll-up, of the kind of the first value, with both values
+    Assert.assertEquals(2, stub.getSeries("test-p").size());
+    Assert.assertEquals(16, stub.getValueSum());
+  }
+
+  @Test(timeout = 60000)
+  public void testCheckpointRestart() throws Exception {
+    String checkpointPath = tempFolder.getRoot().toPath().resolve("writer.checkpoint").toString();
+    Map<String, String> properties = ImmutableMap.of("checkpoint.file.path", checkpointPath);
+    RecordingMetricServiceStub stub = new RecordingMetricServiceStub(0, false);
+    CloudMonitoringWriter metricsWriter = createWriter(stub, properties);
+    Assert.assertEquals(-1L, metricsWriter.getLastEndTime());
+    metricsWriter.write(Collections.singletonList(new MetricValues(
+      ImmutableMap.of("ns", "default", "app", "app1", "prg", "DataPipelineWorkflow"), 0,
+      Collections.singletonList(new MetricValue("program.completed.runs", MetricType.COUNTER, 1)))));
+    long lastEndTime = metricsWriter.getLastEndTime();
+    Assert.assertTrue(lastEndTime > 0);
+    // The end time of the first write is saved right away, before the periodic checkpoint is due
+    WriterCheckpoint checkpoint = new WriterCheckpoint(Paths.get(checkpointPath), Collections.emptyMap());
+    WriterCheckpoint.Header header = checkpoint.readHeader();
+    while (header == null || header.getLastEndTime() != lastEndTime) {
+      TimeUnit.MILLISECONDS.sleep(10);
+      header = checkpoint.readHeader();
+    }
+    // The state is saved on close
+    metricsWriter.close();
+
+    CloudMonitoringWriter restarted = createWriter(stub, properties);
+    Assert.assertEquals(lastEndTime, restarted.getLastEndTime());
+    restarted.close();
+  }
+
+  private CloudMonitoringWriter createWriter(RecordingMetricServiceStub stub, Map<String, String> extraProperties) {
+    CloudMonitoringWriter metricsWriter = new CloudMonitoringWriter() {
+      @Override
+      MetricServiceClient createMetricServiceClient(String endPoint) {
+        return MetricServiceClient.create(stub);
+      }
+    };
+    Map<String, String> properties = new HashMap<>();
+    properties.put("config.file.path", TEST_CONFIG_PATH);
+    properties.put("project", "test-p");
+    properties.put("org_id", "1000");
+    properties.put("location", "us-east1");
+    properties.put("cluster_id", "cluster");
+    properties.put("instance_id", "instance");
+    properties.put("write.frequency.seconds", "100");
+    properties.putAll(extraProperties);
+    metricsWriter.initialize(new MetricsWriterContext() {
+      @Override
+      public Map<String, String> getProperties() {
+        return properties;
+      }
+
+      @Override
+      public MetricsContext getMetricsContext() {
+        return null;
+      }
+    });
+    return metricsWriter;
+  }
+
+  @Test
+  public void testMappingConflicts() {
+    String metricType = "datafusion.googleapis.com/test_pipeline/records_out";
+    String resourceType = "datafusion.googleapis.com/testPipeline";
+    List<LabelMapping> resourceLabels = Collections.singletonList(new LabelMapping("pipeline_id", "app", true));
+    MetricsMapping sum = MetricsMapping.builder(metricType, resourceType).setResourceLabels(resourceLabels)
+      .setMetricLabels(Collections.singletonList(new LabelMapping("kind", "sum", false))).build();
+    MetricsMapping mean = MetricsMapping.builder(metricType, resourceType).setResourceLabels(resourceLabels)
+      .setMetricLabels(Collections.singletonList(new LabelMapping("kind", "mean", false)))
+      .setAggregation(AggregationType.MEAN).build();
+    // Told apart by the constant label
+    MappingConflictDetector.check(ImmutableMap.of("records.sum", sum, "records.mean", mean));
+    // Same settings and metric kind, the values of both mappings are added to the same series
+    MetricsMapping counter = MetricsMapping.builder(metricType, resourceType).setResourceLabels(resourceLabels)
+      .setMetricKind(MetricType.COUNTER).build();
+    MappingConflictDetector.check(ImmutableMap.of("records.counter", counter, "records.other", counter));
+    try {
+      MappingConflictDetector.check(ImmutableMap.of("records.sum", sum, "records.other", sum));
+      Assert.fail("Mappings that do not declare their metric kind should conflict");
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("metricKind"));
+    }
+
+    MetricsMapping unlabelled = MetricsMapping.builder(metricType, resourceType).setResourceLabels(resourceLabels)
+      .build();
+    MetricsMapping unlabelledMean = MetricsMapping.builder(metricType, resourceType)
+      .setResourceLabels(resourceLabels).setAggregation(AggregationType.MEAN).build();
+    try {
+      MappingConflictDetector.check(ImmutableMap.of("records.unlabelled", unlabelled,
+                                                    "records.mean", unlabelledMean));
+      Assert.fail("Mappings with different aggregations should conflict");
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("records.mean"));
+    }
+
+    // The roll-up drops the label that tells the series apart
+    RollupMapping total = new RollupMapping(metricType, null, null, Collections.emptyList(), null);
+    MetricsMapping rolledUp = MetricsMapping.builder(metricType, resourceType).setResourceLabels(resourceLabels)
+      .setMetricLabels(Collections.singletonList(new LabelMapping("kind", "mean", false)))
+      .setAggregation(AggregationType.MEAN).setRollups(Collections.singletonList(total)).build();
+    try {
+      MappingConflictDetector.check(ImmutableMap.of("records.unlabelled", unlabelled, "records.mean", rolledUp));
+      Assert.fail("The roll-up should conflict with the unlabelled series");
+    } catch (IllegalArgumentException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().contains("roll-up"));
+    }
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testConfigValidation() {
     CloudMonitoringWriter metricsWriter = new CloudMonitoringWriter();
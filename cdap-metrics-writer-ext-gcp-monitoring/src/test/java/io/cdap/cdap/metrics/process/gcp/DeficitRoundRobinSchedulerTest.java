@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.monitoring.v3.Point;
+import io.cdap.cdap.api.metrics.MetricType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test for {@link DeficitRoundRobinScheduler}
+ */
+public class DeficitRoundRobinSchedulerTest {
+
+  private static final String METRIC_TYPE = "datafusion.googleapis.com/test_pipeline/runs_completed_count";
+  private static final String RESOURCE_TYPE = "datafusion.googleapis.com/testPipeline";
+
+  @Test
+  public void testWeightedShares() {
+    SchedulingConfig config = new SchedulingConfig(null, ImmutableMap.of("big", 1, "small", 2), null, null);
+    DeficitRoundRobinScheduler scheduler = new DeficitRoundRobinScheduler(config);
+    enqueue(scheduler, "big", 1000, 0);
+    enqueue(scheduler, "small", 200, 0);
+    enqueue(scheduler, "other", 20, 0);
+
+    // The first request has the weighted share of each tenant, even though "big" was queued first
+    Map<String, Integer> counts = countByTenant(scheduler.nextBatch(150, 10));
+    Assert.assertEquals(Integer.valueOf(44), counts.get("big"));
+    Assert.assertEquals(Integer.valueOf(86), counts.get("small"));
+    Assert.assertEquals(Integer.valueOf(20), counts.get("other"));
+    Assert.assertEquals(0, scheduler.getQueueDepth("other"));
+
+    // The remaining tenants share the next request by weight
+    counts = countByTenant(scheduler.nextBatch(150, 10));
+    Assert.assertEquals(Integer.valueOf(50), counts.get("big"));
+    Assert.assertEquals(Integer.valueOf(100), counts.get("small"));
+    Assert.assertEquals(1220 - 300, scheduler.size());
+    Assert.assertEquals(1000 - 94, scheduler.getQueueDepth("big"));
+  }
+
+  @Test
+  public void testMergeAndRequeue() {
+    DeficitRoundRobinScheduler scheduler = new DeficitRoundRobinScheduler(SchedulingConfig.DEFAULT);
+    enqueue(scheduler, "ns1", 10, 0, MetricType.COUNTER, 1000);
+    // A newer point of a queued counter is added to the queued one, over both windows
+    enqueue(scheduler, "ns1", 10, 5, MetricType.COUNTER, 1010);
+    Assert.assertEquals(10, scheduler.size());
+
+    List<DeficitRoundRobinScheduler.PendingSeries> batch = scheduler.nextBatch(4, 100);
+    Assert.assertEquals(4, batch.size());
+    Assert.assertEquals(6, scheduler.size());
+    assertPoint(batch.get(0), 2, 991, 1010);
+    // The series of the failed request get newer points before they are put back
+    enqueue(scheduler, "ns1", 10, 100, MetricType.COUNTER, 1020);
+    scheduler.requeue(batch);
+    Assert.assertEquals(10, scheduler.size());
+
+    List<DeficitRoundRobinScheduler.TenantStats> stats = scheduler.collectStats();
+    Assert.assertEquals(1, stats.size());
+    Assert.assertEquals(10, stats.get(0).getQueueDepth());
+    Assert.assertEquals(100, stats.get(0).getSendLagMillis());
+    List<DeficitRoundRobinScheduler.PendingSeries> all = scheduler.nextBatch(150, 200);
+    for (DeficitRoundRobinScheduler.PendingSeries pending : all) {
+      assertPoint(pending, 3, 991, 1020);
+    }
+    // The requeued series kept the time they were first queued
+    Assert.assertEquals(200, scheduler.collectStats().get(0).getSendLagMillis());
+  }
+
+  @Test
+  public void testGaugeReplaced() {
+    DeficitRoundRobinScheduler scheduler = new DeficitRoundRobinScheduler(SchedulingConfig.DEFAULT);
+    enqueue(scheduler, "ns1", 1, 0, MetricType.GAUGE, 1000);
+    List<DeficitRoundRobinScheduler.PendingSeries> batch = scheduler.nextBatch(150, 0);
+    enqueue(scheduler, "ns1", 1, 0, MetricType.GAUGE, 1010);
+    // The older point of a gauge does not replace the newer one
+    scheduler.requeue(batch);
+    assertPoint(scheduler.nextBatch(150, 0).get(0), 1, 1010, 1010);
+  }
+
+  @Test
+  public void testBoundedQueue() {
+    DeficitRoundRobinScheduler scheduler = new DeficitRoundRobinScheduler(
+      new SchedulingConfig(null, null, null, 5));
+    // The series of a write are all queued, whatever their number
+    enqueue(scheduler, "ns1", 8, 0);
+    Assert.assertEquals(8, scheduler.getQueueDepth("ns1"));
+    // What is left once the write sent what it could is bounded
+    scheduler.trim();
+    Assert.assertEquals(5, scheduler.getQueueDepth("ns1"));
+    List<DeficitRoundRobinScheduler.TenantStats> stats = scheduler.collectStats();
+    Assert.assertEquals(3, stats.get(0).getDropped());
+
+    // The oldest series were dropped
+    List<DeficitRoundRobinScheduler.PendingSeries> batch = scheduler.nextBatch(150, 0);
+    Assert.assertEquals("pipeline-3", batch.get(0).getMetadata().getResourceLabels().get("pipeline_id"));
+    Assert.assertTrue(scheduler.nextBatch(150, 0).isEmpty());
+    // Idle tenants are forgotten
+    Assert.assertEquals(1, scheduler.collectStats().size());
+    Assert.assertTrue(scheduler.collectStats().isEmpty());
+  }
+
+  private void enqueue(DeficitRoundRobinScheduler scheduler, String tenant, int count, long nowMillis) {
+    enqueue(scheduler, tenant, count, nowMillis, MetricType.COUNTER, 1000);
+  }
+
+  /**
+   * Enqueues count series with a point of value 1 for the 10 seconds up to the given end time.
+   */
+  private void enqueue(DeficitRoundRobinScheduler scheduler, String tenant, int count, long nowMillis,
+                       MetricType metricKind, long endTimeSeconds) {
+    for (int i = 0; i < count; i++) {
+      TimeSeriesMetadata metadata = new TimeSeriesMetadata(METRIC_TYPE, RESOURCE_TYPE, Collections.emptyMap(),
+                                                           ImmutableMap.of("pipeline_id", "pipeline-" + i,
+                                                                           "namespace", tenant),
+                                                           metricKind, null, null, tenant);
+      scheduler.enqueue(tenant, metadata, CloudMonitoringUtil.convertToMonitoringTimeSeries(
+        metadata, Collections.singletonList(1L), endTimeSeconds - 9, endTimeSeconds), nowMillis);
+    }
+  }
+
+  private void assertPoint(DeficitRoundRobinScheduler.PendingSeries pending, long value, long startTimeSeconds,
+                           long endTimeSeconds) {
+    Point point = pending.getTimeSeries().getPoints(0);
+    Assert.assertEquals(value, point.getValue().getInt64Value());
+    Assert.assertEquals(startTimeSeconds, point.getInterval().getStartTime().getSeconds());
+    Assert.assertEquals(endTimeSeconds, point.getInterval().getEndTime().getSeconds());
+  }
+
+  private Map<String, Integer> countByTenant(List<DeficitRoundRobinScheduler.PendingSeries> batch) {
+    Map<String, Integer> counts = new HashMap<>();
+    for (DeficitRoundRobinScheduler.PendingSeries pending : batch) {
+      counts.merge(pending.getTenant(), 1, Integer::sum);
+    }
+    return counts;
+  }
+}
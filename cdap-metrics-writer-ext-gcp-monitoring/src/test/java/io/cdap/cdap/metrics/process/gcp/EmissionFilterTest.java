@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.metrics.MetricType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test for {@link EmissionFilter}
+ */
+public class EmissionFilterTest {
+
+  private static final String METRIC_TYPE = "datafusion.googleapis.com/test_pipeline/plugin_count";
+  private static final String RESOURCE_TYPE = "datafusion.googleapis.com/testPipeline";
+
+  @Test
+  public void testChangeOnlyWithHeartbeat() {
+    EmissionFilter filter = new EmissionFilter();
+    MetricsMapping mapping = createMapping(true, 300L, null);
+    TimeSeriesMetadata metadata = createMetadata(mapping, MetricType.GAUGE);
+
+    Assert.assertEquals(1, emit(filter, metadata, 5L, 1000).size());
+    // Unchanged value is suppressed until the max silence elapsed
+    Assert.assertTrue(emit(filter, metadata, 5L, 1060).isEmpty());
+    Assert.assertTrue(emit(filter, metadata, 5L, 1299).isEmpty());
+    Assert.assertEquals(1, emit(filter, metadata, 5L, 1300).size());
+    // Changed value is emitted right away
+    Assert.assertEquals(1, emit(filter, metadata, 6L, 1310).size());
+    Assert.assertTrue(emit(filter, metadata, 6L, 1320).isEmpty());
+  }
+
+  @Test
+  public void testMinEmitInterval() {
+    EmissionFilter filter = new EmissionFilter();
+    MetricsMapping mapping = createMapping(false, null, 60L);
+    TimeSeriesMetadata metadata = createMetadata(mapping, MetricType.GAUGE);
+
+    Assert.assertEquals(1, emit(filter, metadata, 1L, 1000).size());
+    Assert.assertTrue(emit(filter, metadata, 2L, 1030).isEmpty());
+    Assert.assertEquals(1, emit(filter, metadata, 3L, 1060).size());
+  }
+
+  @Test
+  public void testUncontrolledSeries() {
+    EmissionFilter filter = new EmissionFilter();
+    // Counters are never suppressed, as dropping them would lose increments
+    TimeSeriesMetadata counter = createMetadata(createMapping(true, 300L, 60L), MetricType.COUNTER);
+    // Gauges without emission settings are always sent
+    TimeSeriesMetadata gauge = createMetadata(createMapping(false, null, null), MetricType.GAUGE);
+    for (long now = 1000; now < 1100; now += 10) {
+      Assert.assertEquals(1, emit(filter, counter, 5L, now).size());
+      Assert.assertEquals(1, emit(filter, gauge, 5L, now).size());
+    }
+    Assert.assertEquals(0, filter.size());
+  }
+
+  @Test
+  public void testStateExpiry() {
+    EmissionFilter filter = new EmissionFilter();
+    TimeSeriesMetadata first = createMetadata(createMapping(true, 100L, null), MetricType.GAUGE);
+    TimeSeriesMetadata second = createMetadata(createMapping(false, null, 10L), MetricType.GAUGE, "test-pipeline-2");
+    emit(filter, first, 1L, 1000);
+    emit(filter, second, 1L, 1000);
+    Assert.assertEquals(2, filter.size());
+    // State of the second series can no longer suppress anything and is dropped
+    emit(filter, first, 1L, 1050);
+    Assert.assertEquals(1, filter.size());
+  }
+
+  private Map<TimeSeriesMetadata, List<Long>> emit(EmissionFilter filter, TimeSeriesMetadata metadata,
+                                                   long value, long nowSeconds) {
+    Map<TimeSeriesMetadata, List<Long>> result = filter.filter(
+      Collections.singletonMap(metadata, Collections.singletonList(value)), nowSeconds);
+    for (Map.Entry<TimeSeriesMetadata, List<Long>> entry : result.entrySet()) {
+      filter.markEmitted(entry.getKey(), CloudMonitoringUtil.getAggregateValue(
+        entry.getValue(), entry.getKey().getAggregation()), nowSeconds);
+    }
+    filter.expire(nowSeconds);
+    return result;
+  }
+
+  private MetricsMapping createMapping(boolean emitOnChangeOnly, Long maxSilenceSeconds,
+                                       Long minEmitIntervalSeconds) {
+    return MetricsMapping.builder(METRIC_TYPE, RESOURCE_TYPE).setEmitOnChangeOnly(emitOnChangeOnly)
+      .setMaxSilenceSeconds(maxSilenceSeconds).setMinEmitIntervalSeconds(minEmitIntervalSeconds).build();
+  }
+
+  private TimeSeriesMetadata createMetadata(MetricsMapping mapping, MetricType metricKind) {
+    return createMetadata(mapping, metricKind, "test-pipeline-1");
+  }
+
+  private TimeSeriesMetadata createMetadata(MetricsMapping mapping, MetricType metricKind, String pipelineId) {
+    return new TimeSeriesMetadata(METRIC_TYPE, RESOURCE_TYPE, Collections.emptyMap(),
+                                  ImmutableMap.of("pipeline_id", pipelineId), metricKind,
+                                  AggregationType.SUM, mapping, null);
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test for {@link HashedTimingWheel}
+ */
+public class HashedTimingWheelTest {
+
+  @Test
+  public void testAdvance() {
+    HashedTimingWheel<String> wheel = new HashedTimingWheel<>(8);
+    wheel.schedule("a", 1003);
+    wheel.schedule("b", 1005);
+    // Same bucket as "b", one turn later
+    wheel.schedule("c", 1013);
+    Assert.assertEquals(3, wheel.size());
+
+    Assert.assertEquals(Collections.singletonList("a"), wheel.advance(1004));
+    Assert.assertEquals(Collections.singletonList("b"), wheel.advance(1006));
+    Assert.assertTrue(wheel.advance(1012).isEmpty());
+    // An item due in the past is returned by the next advance
+    wheel.schedule("d", 1000);
+    List<String> due = wheel.advance(1013);
+    Collections.sort(due);
+    Assert.assertEquals(Arrays.asList("c", "d"), due);
+    Assert.assertEquals(0, wheel.size());
+  }
+
+  @Test
+  public void testAdvanceMoreThanWheel() {
+    HashedTimingWheel<String> wheel = new HashedTimingWheel<>(8);
+    wheel.advance(1000);
+    wheel.schedule("a", 1002);
+    wheel.schedule("b", 1030);
+    wheel.schedule("c", 1100);
+    List<String> due = wheel.advance(1050);
+    Collections.sort(due);
+    Assert.assertEquals(Arrays.asList("a", "b"), due);
+    Assert.assertEquals(Collections.singletonList("c"), wheel.advance(1100));
+  }
+}
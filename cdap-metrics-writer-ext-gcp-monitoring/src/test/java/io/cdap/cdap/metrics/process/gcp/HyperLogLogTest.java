@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test for {@link HyperLogLog}
+ */
+public class HyperLogLogTest {
+
+  @Test
+  public void testEstimate() {
+    HyperLogLog counter = new HyperLogLog(12);
+    Assert.assertEquals(0, counter.estimate());
+    // Small counts are exact, items added again count once
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 10; j++) {
+        counter.add(("series-" + j).hashCode());
+      }
+    }
+    Assert.assertEquals(10, counter.estimate());
+
+    // Large counts are within a few standard errors
+    for (int i = 0; i < 1000000; i++) {
+      counter.add(("series-" + i).hashCode());
+    }
+    long estimate = counter.estimate();
+    Assert.assertTrue(String.valueOf(estimate), Math.abs(estimate - 1000000) < 50000);
+
+    counter.clear();
+    Assert.assertEquals(0, counter.estimate());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPrecision() {
+    new HyperLogLog(20);
+  }
+}
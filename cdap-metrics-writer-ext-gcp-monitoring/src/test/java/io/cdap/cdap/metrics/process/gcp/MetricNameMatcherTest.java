@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test for {@link MetricNameMatcher}
+ */
+public class MetricNameMatcherTest {
+
+  @Test
+  public void testPrecedence() {
+    Map<String, MetricsMapping> mappings = new HashMap<>();
+    for (String key : ImmutableList.of("user.**", "user.*.records.out", "user.stage1.records.out",
+                                       "user.*.*", "system.*.records.out")) {
+      mappings.put(key, createMapping(key));
+    }
+    MetricNameMatcher matcher = MetricNameMatcher.compile(mappings);
+
+    assertMatch(matcher, "user.stage1.records.out", "user.stage1.records.out");
+    assertMatch(matcher, "user.stage2.records.out", "user.*.records.out", "stage2");
+    assertMatch(matcher, "user.stage2.records", "user.*.*", "stage2", "records");
+    assertMatch(matcher, "user.stage2.records.in", "user.**", "stage2.records.in");
+    assertMatch(matcher, "user.custom", "user.**", "custom");
+    assertMatch(matcher, "system.stage2.records.out", "system.*.records.out", "stage2");
+    Assert.assertNull(matcher.find("system.stage2.records.in", mapping -> true));
+    Assert.assertNull(matcher.find("system.records.out", mapping -> true));
+    Assert.assertNull(matcher.find("user", mapping -> true));
+  }
+
+  @Test
+  public void testRejectedMappingFallsBack() {
+    Map<String, MetricsMapping> mappings = ImmutableMap.of("user.*.records.out", createMapping("specific"),
+                                                           "user.**", createMapping("generic"));
+    MetricNameMatcher matcher = MetricNameMatcher.compile(mappings);
+    MetricNameMatcher.Match match = matcher.find("user.stage1.records.out",
+                                                 mapping -> !mapping.getMetricType().equals("specific"));
+    Assert.assertNotNull(match);
+    Assert.assertEquals("user.**", match.getKey());
+    Assert.assertEquals(Collections.singletonList("stage1.records.out"), match.getCaptures());
+  }
+
+  @Test
+  public void testCapturesAsTags() {
+    MetricNameMatcher matcher = MetricNameMatcher.compile(
+      ImmutableMap.of("user.*.records.*", createMapping("records")));
+    MetricNameMatcher.Match match = matcher.find("user.stage1.records.out", mapping -> true);
+    Assert.assertNotNull(match);
+    Map<String, String> tags = match.addCaptures(ImmutableMap.of("app", "pipeline"));
+    Assert.assertEquals(ImmutableMap.of("app", "pipeline", "$1", "stage1", "$2", "out"), tags);
+
+    CloudMonitoringWriter metricsWriter = new CloudMonitoringWriter();
+    List<LabelMapping> labelMappings = ImmutableList.of(new LabelMapping("stage", "$1", true),
+                                                        new LabelMapping("pipeline_id", "app", true));
+    Assert.assertEquals(ImmutableMap.of("stage", "stage1", "pipeline_id", "pipeline"),
+                        metricsWriter.getLabels(labelMappings, tags));
+  }
+
+  @Test
+  public void testManyPatterns() {
+    Map<String, MetricsMapping> mappings = new HashMap<>();
+    for (int i = 0; i < 500; i++) {
+      mappings.put("user.*.metric" + i, createMapping("stage-" + i));
+      mappings.put("system.stage" + i + ".**", createMapping("system-" + i));
+    }
+    MetricNameMatcher matcher = MetricNameMatcher.compile(mappings);
+    for (int i = 0; i < 500; i++) {
+      assertMatch(matcher, "user.stage.metric" + i, "user.*.metric" + i, "stage");
+      assertMatch(matcher, "system.stage" + i + ".records.out", "system.stage" + i + ".**", "records.out");
+    }
+    Assert.assertNull(matcher.find("user.stage.metric500", mapping -> true));
+  }
+
+  @Test
+  public void testCachedMatches() {
+    Map<String, MetricsMapping> mappings = ImmutableMap.of("user.*.records.*", createMapping("records"),
+                                                           "user.**", createMapping("generic"));
+    MetricNameMatcher matcher = MetricNameMatcher.compile(mappings, 1);
+    List<MetricNameMatcher.Match> matches = matcher.getMatches("user.stage1.records.out");
+    Assert.assertEquals(2, matches.size());
+    Assert.assertEquals(ImmutableList.of("stage1", "out"), matches.get(0).getCaptures());
+    Assert.assertEquals(ImmutableList.of("stage1.records.out"), matches.get(1).getCaptures());
+    Assert.assertSame(matches, matcher.getMatches("user.stage1.records.out"));
+
+    // Names not seen before are still matched once the cache is full
+    assertMatch(matcher, "user.stage2.records.in", "user.*.records.*", "stage2", "in");
+    Assert.assertTrue(matcher.getMatches("system.stage1.records.out").isEmpty());
+    Assert.assertSame(matches, matcher.getMatches("user.stage1.records.out"));
+  }
+
+  @Test
+  public void testInvalidPatterns() {
+    for (String pattern : ImmutableList.of("user.**.out", "user..out", "user.")) {
+      try {
+        MetricNameMatcher.compile(ImmutableMap.of(pattern, createMapping(pattern)));
+        Assert.fail("Expected pattern to be rejected: " + pattern);
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+  }
+
+  private void assertMatch(MetricNameMatcher matcher, String metricName, String expectedKey,
+                           String... expectedCaptures) {
+    MetricNameMatcher.Match match = matcher.find(metricName, mapping -> true);
+    Assert.assertNotNull(match);
+    Assert.assertEquals(expectedKey, match.getKey());
+    Assert.assertEquals(ImmutableList.copyOf(expectedCaptures), match.getCaptures());
+  }
+
+  private MetricsMapping createMapping(String metricType) {
+    return MetricsMapping.builder(metricType, "datafusion.googleapis.com/testPipeline").build();
+  }
+}
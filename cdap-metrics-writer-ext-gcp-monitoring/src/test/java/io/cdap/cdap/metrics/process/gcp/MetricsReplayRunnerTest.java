@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.metrics.MetricType;
+import io.cdap.cdap.api.metrics.MetricValue;
+import io.cdap.cdap.api.metrics.MetricValues;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the capture file format and {@link MetricsReplayRunner}.
+ */
+public class MetricsReplayRunnerTest {
+
+  private static final String TEST_CONFIG_PATH = "src/test/resources/metrics_writer_config.json";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testCaptureRoundTrip() throws Exception {
+    Path file = tempFolder.newFile().toPath();
+    List<List<MetricValues>> batches = createBatches(3);
+    try (MetricsCaptureWriter writer = new MetricsCaptureWriter(file, Long.MAX_VALUE)) {
+      for (int i = 0; i < batches.size(); i++) {
+        Assert.assertTrue(writer.append(batches.get(i), 1000L * i));
+      }
+    }
+
+    try (MetricsCaptureReader reader = new MetricsCaptureReader(file)) {
+      for (int i = 0; i < batches.size(); i++) {
+        MetricsCaptureReader.CapturedBatch batch = reader.next();
+        Assert.assertNotNull(batch);
+        Assert.assertEquals(1000L * i, batch.getCaptureTimeMillis());
+        assertSameValues(batches.get(i), batch.getMetricValues());
+      }
+      Assert.assertNull(reader.next());
+    }
+  }
+
+  @Test
+  public void testCaptureMaxBytes() throws Exception {
+    Path file = tempFolder.newFile().toPath();
+    try (MetricsCaptureWriter writer = new MetricsCaptureWriter(file, 64)) {
+      // The batches queued before the first one is written are dropped once the file is full
+      Assert.assertTrue(writer.append(createBatches(1).get(0), 0));
+      writer.append(createBatches(1).get(0), 0);
+      writer.awaitWritten();
+      Assert.assertFalse(writer.append(createBatches(1).get(0), 0));
+    }
+    try (MetricsCaptureReader reader = new MetricsCaptureReader(file)) {
+      Assert.assertNotNull(reader.next());
+      Assert.assertNull(reader.next());
+    }
+  }
+
+  @Test
+  public void testCaptureBoundedDictionary() throws Exception {
+    Path file = tempFolder.newFile().toPath();
+    List<List<MetricValues>> batches = createBatches(4);
+    // Strings seen after the dictionary is full are written in place
+    try (MetricsCaptureWriter writer = new MetricsCaptureWriter(file, Long.MAX_VALUE, 3)) {
+      for (List<MetricValues> batch : batches) {
+        Assert.assertTrue(writer.append(batch, 0));
+      }
+    }
+
+    try (MetricsCaptureReader reader = new MetricsCaptureReader(file)) {
+      for (List<MetricValues> batch : batches) {
+        assertSameValues(batch, reader.next().getMetricValues());
+      }
+      Assert.assertNull(reader.next());
+    }
+  }
+
+  @Test
+  public void testCorruptCapture() throws Exception {
+    // A record with one metric, whose type byte is at offset 22 of the file
+    ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+    DataOutputStream payload = new DataOutputStream(payloadBytes);
+    VarInts.writeVarLong(payload, 0);
+    VarInts.writeVarLong(payload, 1);
+    payload.writeUTF("a");
+    for (long value : new long[] {1, 0, 0, 1, 1}) {
+      VarInts.writeVarLong(payload, value);
+    }
+    payload.writeByte(100);
+    VarInts.writeVarLong(payload, 0);
+
+    Path file = writeCapture(-1, new byte[0]);
+    assertCorrupt(file, "Invalid record length -1 at byte offset 8");
+    file = writeCapture(payloadBytes.size(), payloadBytes.toByteArray());
+    assertCorrupt(file, "Unknown metric type 100 at byte offset 22");
+    // A length larger than the rest of the file is a record truncated by a writer that stopped
+    file = writeCapture(payloadBytes.size() + 1, payloadBytes.toByteArray());
+    try (MetricsCaptureReader reader = new MetricsCaptureReader(file)) {
+      Assert.assertNull(reader.next());
+    }
+  }
+
+  @Test
+  public void testReplay() throws Exception {
+    Path file = tempFolder.newFile().toPath();
+    try (MetricsCaptureWriter writer = new MetricsCaptureWriter(file, Long.MAX_VALUE)) {
+      for (List<MetricValues> batch : createBatches(5)) {
+        writer.append(batch, 0);
+      }
+    }
+
+    RecordingMetricServiceStub stub = new RecordingMetricServiceStub(0, true);
+    MetricsReplayRunner.Report report = new MetricsReplayRunner(file, TEST_CONFIG_PATH, 0, 1, "localhost:8085",
+                                                                () -> MetricServiceClient.create(stub)).run();
+    Assert.assertEquals(5, report.getBatches());
+    Assert.assertEquals(15, report.getMetricValues());
+    Assert.assertEquals(0, report.getFailures());
+    // Only program.completed.runs is mapped, one series per app and one roll-up series. Each write sends a point of
+    // its app and of the roll-up, unless it finds the previous send in progress, which leaves its values to the next
+    Assert.assertTrue(String.valueOf(stub.getPoints()), stub.getPoints() >= 3 && stub.getPoints() <= 10);
+    Assert.assertEquals(3, stub.getDistinctSeries());
+  }
+
+  private static List<List<MetricValues>> createBatches(int count) {
+    List<List<MetricValues>> batches = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      Map<String, String> tags = ImmutableMap.of("ns", "default", "app", "app" + (i % 2),
+                                                 "prg", "DataPipelineWorkflow");
+      List<MetricValue> metrics = Arrays.asList(new MetricValue("program.completed.runs", MetricType.COUNTER, i),
+                                                new MetricValue("unmapped.gauge", MetricType.GAUGE, -i),
+                                                new MetricValue("unmapped.counter", MetricType.COUNTER,
+                                                                Long.MAX_VALUE - i));
+      batches.add(Collections.singletonList(new MetricValues(tags, 1600000000L + i, metrics)));
+    }
+    return batches;
+  }
+
+  private static void assertSameValues(List<MetricValues> expected, List<MetricValues> actual) {
+    Assert.assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      Assert.assertEquals(expected.get(i).getTags(), actual.get(i).getTags());
+      Assert.assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+      List<MetricValue> expectedMetrics = new ArrayList<>(expected.get(i).getMetrics());
+      List<MetricValue> actualMetrics = new ArrayList<>(actual.get(i).getMetrics());
+      Assert.assertEquals(expectedMetrics.size(), actualMetrics.size());
+      for (int j = 0; j < expectedMetrics.size(); j++) {
+        Assert.assertEquals(expectedMetrics.get(j).getName(), actualMetrics.get(j).getName());
+        Assert.assertEquals(expectedMetrics.get(j).getType(), actualMetrics.get(j).getType());
+        Assert.assertEquals(expectedMetrics.get(j).getValue(), actualMetrics.get(j).getValue());
+      }
+    }
+  }
+
+  private Path writeCapture(int length, byte[] payload) throws IOException {
+    Path file = tempFolder.newFile().toPath();
+    try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(file))) {
+      output.writeInt(MetricsCaptureWriter.MAGIC);
+      output.writeInt(MetricsCaptureWriter.VERSION);
+      output.writeInt(length);
+      output.write(payload);
+    }
+    return file;
+  }
+
+  private void assertCorrupt(Path file, String message) throws IOException {
+    try (MetricsCaptureReader reader = new MetricsCaptureReader(file)) {
+      reader.next();
+      Assert.fail("Expected a corrupt capture file");
+    } catch (IOException e) {
+      Assert.assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+    }
+  }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.api.MetricDescriptor;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.UnavailableException;
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import com.google.common.collect.ImmutableMap;
+import com.google.monitoring.v3.CreateTimeSeriesRequest;
+import com.google.monitoring.v3.Point;
+import com.google.monitoring.v3.TimeSeries;
+import io.cdap.cdap.api.metrics.MetricType;
+import io.grpc.Status;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test for {@link MonitoringDestination}
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({MetricServiceClient.class})
+public class MonitoringDestinationTest {
+
+  private static final String RESOURCE_TYPE = "datafusion.googleapis.com/testPipeline";
+
+  @Test
+  public void testPriorityLanes() {
+    MetricServiceClient mockServiceClient = PowerMockito.mock(MetricServiceClient.class);
+    MonitoringDestination destination = new MonitoringDestination("test-project", mockServiceClient,
+                                                                  SchedulingConfig.DEFAULT,
+                                                                  CircuitBreakerConfig.DEFAULT, null, null, null);
+    MetricsMapping bulk = createMapping("datafusion.googleapis.com/test_pipeline/records_out", null);
+    MetricsMapping failures = createMapping("datafusion.googleapis.com/test_pipeline/runs_failed_count",
+                                            Priority.HIGH);
+    Map<TimeSeriesMetadata, List<Long>> timeSeries = new LinkedHashMap<>();
+    for (int i = 0; i < 200; i++) {
+      timeSeries.put(createMetadata(bulk, "pipeline-" + i), Collections.singletonList(10L));
+    }
+    timeSeries.put(createMetadata(failures, "pipeline-1"), Collections.singletonList(1L));
+
+    destination.write(timeSeries, 1000, 1060);
+
+    // The high priority series is sent on its own, before the bulk requests
+    ArgumentCaptor<CreateTimeSeriesRequest> captor = ArgumentCaptor.forClass(CreateTimeSeriesRequest.class);
+    Mockito.verify(mockServiceClient, Mockito.times(3)).createTimeSeries(captor.capture());
+    List<CreateTimeSeriesRequest> requests = captor.getAllValues();
+    Assert.assertEquals(1, requests.get(0).getTimeSeriesCount());
+    Assert.assertEquals(failures.getMetricType(), requests.get(0).getTimeSeries(0).getMetric().getType());
+    Assert.assertEquals(150, requests.get(1).getTimeSeriesCount());
+    Assert.assertEquals(50, requests.get(2).getTimeSeriesCount());
+    Assert.assertEquals(0, destination.getQueuedSeries());
+    Assert.assertTrue(destination.getLane(Priority.HIGH).getLatencyMillis()
+                        <= destination.getLane(Priority.NORMAL).getLatencyMillis());
+  }
+
+  @Test
+  public void testRequestBudget() {
+    MetricServiceClient mockServiceClient = PowerMockito.mock(MetricServiceClient.class);
+    SchedulingConfig schedulingConfig = new SchedulingConfig(null, null, null, null, 2);
+    MonitoringDestination destination = new MonitoringDestination("test-project", mockServiceClient,
+                                                                  schedulingConfig, CircuitBreakerConfig.DEFAULT,
+                                                                  null, null, null);
+    MetricsMapping mapping = createMapping("datafusion.googleapis.com/test_pipeline/records_out", null);
+    Map<TimeSeriesMetadata, List<Long>> timeSeries = new LinkedHashMap<>();
+    for (int i = 0; i < 400; i++) {
+      timeSeries.put(createMetadata(mapping, "pipeline-" + i, "big"), Collections.singletonList(1L));
+    }
+    for (int i = 0; i < 10; i++) {
+      timeSeries.put(createMetadata(mapping, "pipeline-" + i, "small"), Collections.singletonList(1L));
+    }
+
+    destination.write(timeSeries, 1000, 1060);
+
+    // The budget allows two requests, which carry all the series of the small tenant
+    ArgumentCaptor<CreateTimeSeriesRequest> captor = ArgumentCaptor.forClass(CreateTimeSeriesRequest.class);
+    Mockito.verify(mockServiceClient, Mockito.times(2)).createTimeSeries(captor.capture());
+    int small = 0;
+    for (CreateTimeSeriesRequest request : captor.getAllValues()) {
+      Assert.assertEquals(150, request.getTimeSeriesCount());
+      for (TimeSeries series : request.getTimeSeriesList()) {
+        if (series.getResource().getLabelsOrThrow("namespace").equals("small")) {
+          small++;
+        }
+      }
+    }
+    Assert.assertEquals(10, small);
+    // The rest waits for the budget to refill
+    Assert.assertEquals(110, destination.getQueuedSeries());
+  }
+
+  @Test
+  public void testCircuitBreakerSuspendsSending() {
+    MetricServiceClient mockServiceClient = PowerMockito.mock(MetricServiceClient.class);
+    Mockito.doThrow(new UnavailableException(new RuntimeException("unavailable"),
+                                             GrpcStatusCode.of(Status.Code.UNAVAILABLE), true))
+      .when(mockServiceClient).createTimeSeries(Mockito.any(CreateTimeSeriesRequest.class));
+    CircuitBreakerConfig config = new CircuitBreakerConfig(true, 4, 2, 0.5, null, 60L, 1, "buffer");
+    MonitoringDestination destination = new MonitoringDestination("test-project", mockServiceClient,
+                                                                  SchedulingConfig.DEFAULT, config, null, null, null);
+    MetricsMapping mapping = createMapping("datafusion.googleapis.com/test_pipeline/records_out", null);
+    Map<TimeSeriesMetadata, List<Long>> timeSeries = new LinkedHashMap<>();
+    for (int i = 0; i < 10; i++) {
+      timeSeries.put(createMetadata(mapping, "pipeline-" + i), Collections.singletonList(10L));
+    }
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        destination.write(timeSeries, 1000, 1060);
+        Assert.fail("Expected the write to fail");
+      } catch (UnavailableException e) {
+        // expected
+      }
+    }
+    Assert.assertEquals(CircuitBreaker.State.OPEN,
+                        destination.getCircuitBreaker().getState(System.currentTimeMillis()));
+
+    // While open, writes return without sending and the series stay queued
+    destination.write(timeSeries, 1060, 1120);
+    Mockito.verify(mockServiceClient, Mockito.times(2)).createTimeSeries(Mockito.any(CreateTimeSeriesRequest.class));
+    Assert.assertEquals(10, destination.getQueuedSeries());
+  }
+
+  @Test
+  public void testOpenCircuitBreakerHoldsValues() {
+    for (String policy : new String[] {"buffer", "shed"}) {
+      MetricServiceClient mockServiceClient = PowerMockito.mock(MetricServiceClient.class);
+      Mockito.doThrow(new UnavailableException(new RuntimeException("unavailable"),
+                                               GrpcStatusCode.of(Status.Code.UNAVAILABLE), true))
+        .when(mockServiceClient).createTimeSeries(Mockito.any(CreateTimeSeriesRequest.class));
+      CircuitBreakerConfig config = new CircuitBreakerConfig(true, 4, 1, 0.5, null, 60L, 1, policy);
+      MonitoringDestination destination = new MonitoringDestination("test-project", mockServiceClient,
+                                                                    SchedulingConfig.DEFAULT, config, null, null,
+                                                                    null);
+      MetricsMapping mapping = createMapping("datafusion.googleapis.com/test_pipeline/records_out", null);
+      TimeSeriesMetadata metadata = createMetadata(mapping, "pipeline");
+      Assert.assertFalse(destination.holdIfOpen(1060));
+      destination.add(metadata, 10);
+      try {
+        destination.write(destination.flush(1060), 1000, 1060);
+        Assert.fail("Expected the write to fail");
+      } catch (UnavailableException e) {
+        // expected
+      }
+
+      // While open, the values are not flushed, they are kept accumulated or dropped depending on the policy
+      destination.add(metadata, 5);
+      Assert.assertTrue(destination.holdIfOpen(1120));
+      Map<TimeSeriesMetadata, List<Long>> expected = policy.equals("buffer") ?
+        Collections.singletonMap(metadata, Collections.singletonList(5L)) : Collections.emptyMap();
+      Assert.assertEquals(policy, expected, destination.flush(1120));
+      Mockito.verify(mockServiceClient, Mockito.times(1))
+        .createTimeSeries(Mockito.any(CreateTimeSeriesRequest.class));
+    }
+  }
+
+  @Test
+  public void testCircuitBreakerTransitions() {
+    CircuitBreaker breaker = new CircuitBreaker("test", new CircuitBreakerConfig(true, 4, 4, 0.5, 1000L, 10L, 2,
+                                                                                 null), null);
+    // Slow requests count as failures, the window needs 4 requests
+    breaker.onResult(false, 10, 0);
+    breaker.onResult(false, 2000, 0);
+    breaker.onResult(false, 10, 0);
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(0));
+    breaker.onResult(true, 10, 0);
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState(0));
+    Assert.assertFalse(breaker.allowRequest(9999));
+
+    // Half-open lets two probes through, a failed probe opens the breaker again
+    Assert.assertTrue(breaker.allowRequest(10000));
+    Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(10000));
+    Assert.assertTrue(breaker.allowRequest(10000));
+    Assert.assertFalse(breaker.allowRequest(10000));
+    breaker.onResult(true, 10, 10000);
+    Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState(10000));
+
+    Assert.assertTrue(breaker.allowRequest(20000));
+    Assert.assertTrue(breaker.allowRequest(20000));
+    breaker.onResult(false, 10, 20000);
+    Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(20000));
+    breaker.onResult(false, 10, 20000);
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(20000));
+    Assert.assertTrue(breaker.allowRequest(20000));
+  }
+
+  @Test
+  public void testRollups() {
+    MetricServiceClient mockServiceClient = PowerMockito.mock(MetricServiceClient.class);
+    MonitoringDestination destination = new MonitoringDestination("test-project", mockServiceClient,
+                                                                  SchedulingConfig.DEFAULT,
+                                                                  CircuitBreakerConfig.DEFAULT, null, null, null);
+    RollupMapping byNamespace = new RollupMapping(null, "_by_namespace", null, Collections.emptyList(),
+                                                  Collections.singletonList("namespace"));
+    MetricsMapping mapping = MetricsMapping.builder("datafusion.googleapis.com/test_pipeline/records_out",
+                                                    RESOURCE_TYPE)
+      .setRollups(Collections.singletonList(byNamespace)).build();
+    for (int i = 0; i < 4; i++) {
+      TimeSeriesMetadata metadata = new TimeSeriesMetadata(
+        mapping.getMetricType(), RESOURCE_TYPE, ImmutableMap.of("stage", "stage-" + i),
+        ImmutableMap.of("pipeline_id", "pipeline-" + i, "namespace", "ns" + (i % 2)), MetricType.COUNTER,
+        mapping.getAggregation(), mapping, null);
+      destination.add(metadata, 10 + i);
+      destination.add(metadata, 1);
+    }
+
+    Map<TimeSeriesMetadata, List<Long>> flushed = destination.flush(1060);
+    Assert.assertEquals(6, flushed.size());
+    String rollupType = mapping.getMetricType() + "_by_namespace";
+    Assert.assertEquals(Collections.singletonList(24L), flushed.get(new TimeSeriesMetadata(
+      rollupType, RESOURCE_TYPE, Collections.emptyMap(), ImmutableMap.of("namespace", "ns0"), MetricType.COUNTER,
+      mapping.getAggregation())));
+    Assert.assertEquals(Collections.singletonList(26L), flushed.get(new TimeSeriesMetadata(
+      rollupType, RESOURCE_TYPE, Collections.emptyMap(), ImmutableMap.of("namespace", "ns1"), MetricType.COUNTER,
+      mapping.getAggregation())));
+    Assert.assertTrue(destination.flush(1060).isEmpty());
+  }
+
+  @Test
+  public void testSeriesIdentity() {
+    MetricServiceClient mockServiceClient = PowerMockito.mock(MetricServiceClient.class);
+    MonitoringDestination destination = new MonitoringDestination("test-project", mockServiceClient,
+                                                                  SchedulingConfig.DEFAULT,
+                                                                  CircuitBreakerConfig.DEFAULT, null, null, null);
+    MetricsMapping mapping = createMapping("datafusion.googleapis.com/test_pipeline/records_out", null);
+    TimeSeriesMetadata counter = createMetadata(mapping, "pipeline-1");
+    TimeSeriesMetadata gauge = new TimeSeriesMetadata(mapping.getMetricType(), RESOURCE_TYPE, Collections.emptyMap(),
+                                                      ImmutableMap.of("pipeline_id", "pipeline-1"), MetricType.GAUGE,
+                                                      mapping.getAggregation(), mapping, "default");
+    // Same labels, so the label set is shared, but a different kind
+    Assert.assertSame(counter.getLabels(), gauge.getLabels());
+    Assert.assertNotEquals(counter, gauge);
+    Assert.assertEquals(counter, createMetadata(mapping, "pipeline-1"));
+
+    destination.add(counter, 3);
+    destination.add(gauge, 5);
+    destination.add(counter, 4);
+    Map<TimeSeriesMetadata, List<Long>> flushed = destination.flush(1060);
+    Assert.assertEquals(2, flushed.size());
+    Assert.assertEquals(Collections.singletonList(7L), flushed.get(counter));
+    Assert.assertEquals(Collections.singletonList(5L), flushed.get(gauge));
+  }
+
+  @Test
+  public void testRateSeries() {
+    MetricServiceClient mockServiceClient = PowerMockito.mock(MetricServiceClient.class);
+    MonitoringDestination destination = new MonitoringDestination("test-project", mockServiceClient,
+                                                                  SchedulingConfig.DEFAULT,
+                                                                  CircuitBreakerConfig.DEFAULT, null, null, null);
+    MetricsMapping mapping = MetricsMapping.builder("datafusion.googleapis.com/test_pipeline/records_out_rate",
+                                                    RESOURCE_TYPE).setRate(true).build();
+    destination.write(Collections.singletonMap(createMetadata(mapping, "pipeline-1"),
+                                               Collections.singletonList(120L)), 1001, 1060);
+
+    ArgumentCaptor<CreateTimeSeriesRequest> captor = ArgumentCaptor.forClass(CreateTimeSeriesRequest.class);
+    Mockito.verify(mockServiceClient).createTimeSeries(captor.capture());
+    TimeSeries series = captor.getValue().getTimeSeries(0);
+    Assert.assertEquals(MetricDescriptor.MetricKind.GAUGE, series.getMetricKind());
+    Assert.assertEquals(MetricDescriptor.ValueType.DOUBLE, series.getValueType());
+    Assert.assertEquals(2.0, series.getPoints(0).getValue().getDoubleValue(), 1e-9);
+    Assert.assertEquals(1060, series.getPoints(0).getInterval().getEndTime().getSeconds());
+  }
+
+  @Test
+  public void testCostEstimator() {
+    MetricServiceClient mockServiceClient = PowerMockito.mock(MetricServiceClient.class);
+    MetricsMapping bulk = createMapping("datafusion.googleapis.com/test_pipeline/records_out", null);
+    MetricsMapping failures = createMapping("datafusion.googleapis.com/test_pipeline/runs_failed_count",
+                                            Priority.HIGH);
+    CostEstimator estimator = new CostEstimator(ImmutableMap.of("user.records.out", bulk,
+                                                                "program.failed.runs", failures),
+                                                TimeUnit.HOURS.toMillis(1), null, 0);
+    MonitoringDestination destination = new MonitoringDestination("test-project", mockServiceClient,
+                                                                  SchedulingConfig.DEFAULT,
+                                                                  CircuitBreakerConfig.DEFAULT, null, null,
+                                                                  estimator);
+    for (int write = 0; write < 3; write++) {
+      Map<TimeSeriesMetadata, List<Long>> timeSeries = new LinkedHashMap<>();
+      for (int i = 0; i < 10; i++) {
+        timeSeries.put(createMetadata(bulk, "pipeline-" + i), Collections.singletonList(10L));
+      }
+      timeSeries.put(createMetadata(failures, "pipeline-1"), Collections.singletonList(1L));
+      destination.write(timeSeries, 1000 + write * 60, 1059 + write * 60);
+    }
+
+    Assert.assertTrue(estimator.reportIfDue(TimeUnit.MINUTES.toMillis(59)).isEmpty());
+    List<CostEstimator.MappingCost> costs = estimator.reportIfDue(TimeUnit.HOURS.toMillis(1));
+    Assert.assertEquals(2, costs.size());
+    // Sorted by decreasing projected volume
+    CostEstimator.MappingCost bulkCost = costs.get(0);
+    Assert.assertEquals("user.records.out", bulkCost.getKey());
+    Assert.assertEquals(10, bulkCost.getSeries());
+    Assert.assertEquals(30, bulkCost.getPoints());
+    Assert.assertTrue(bulkCost.getBytes() > 0);
+    // 720 hours in 30 days
+    Assert.assertEquals(30 * 720, bulkCost.getMonthlyPoints());
+    Assert.assertEquals(bulkCost.getBytes() * 720, bulkCost.getMonthlyBytes());
+    CostEstimator.MappingCost failureCost = costs.get(1);
+    Assert.assertEquals("program.failed.runs", failureCost.getKey());
+    Assert.assertEquals(1, failureCost.getSeries());
+    Assert.assertEquals(3, failureCost.getPoints());
+
+    // Totals keep growing across reports while the interval volumes restart
+    destination.write(Collections.singletonMap(createMetadata(failures, "pipeline-2"),
+                                               Collections.singletonList(1L)), 1180, 1239);
+    costs = estimator.report(TimeUnit.HOURS.toMillis(2));
+    Assert.assertEquals("program.failed.runs", costs.get(0).getKey());
+    Assert.assertEquals(1, costs.get(0).getPoints());
+    Assert.assertEquals(4, costs.get(0).getTotalPoints());
+    Assert.assertEquals(0, costs.get(1).getPoints());
+    Assert.assertEquals(30, costs.get(1).getTotalPoints());
+  }
+
+  @Test
+  public void testEmitInterval() {
+    MetricServiceClient mockServiceClient = PowerMockito.mock(MetricServiceClient.class);
+    MonitoringDestination destination = new MonitoringDestination("test-project", mockServiceClient,
+                                                                  SchedulingConfig.DEFAULT,
+                                                                  CircuitBreakerConfig.DEFAULT, null, null, null);
+    MetricsMapping everyWrite = createMapping("datafusion.googleapis.com/test_pipeline/records_out", null);
+    MetricsMapping fiveMinutes = MetricsMapping.builder("datafusion.googleapis.com/test_pipeline/capacity",
+                                                        RESOURCE_TYPE).setEmitIntervalSeconds(300L).build();
+    TimeSeriesMetadata frequent = createMetadata(everyWrite, "pipeline-1");
+    TimeSeriesMetadata scheduled = createMetadata(fiveMinutes, "pipeline-1");
+
+    // Values are accumulated until the next multiple of the interval
+    for (long now = 1000; now < 1200; now += 60) {
+      destination.add(frequent, 1);
+      destination.add(scheduled, 2);
+      Map<TimeSeriesMetadata, List<Long>> flushed = destination.flush(now);
+      Assert.assertEquals(Collections.singletonMap(frequent, Collections.singletonList(1L)), flushed);
+    }
+    destination.add(scheduled, 2);
+    Map<TimeSeriesMetadata, List<Long>> flushed = destination.flush(1210);
+    Assert.assertEquals(Collections.singletonMap(scheduled, Collections.singletonList(10L)), flushed);
+    Assert.assertTrue(destination.flush(1270).isEmpty());
+
+    // The point covers the interval that just ended
+    destination.write(flushed, 1151, 1210);
+    ArgumentCaptor<CreateTimeSeriesRequest> captor = ArgumentCaptor.forClass(CreateTimeSeriesRequest.class);
+    Mockito.verify(mockServiceClient).createTimeSeries(captor.capture());
+    Point point = captor.getValue().getTimeSeries(0).getPoints(0);
+    Assert.assertEquals(901, point.getInterval().getStartTime().getSeconds());
+    Assert.assertEquals(1200, point.getInterval().getEndTime().getSeconds());
+  }
+
+  @Test
+  public void testEmitIntervalShorterThanWrites() {
+    MetricServiceClient mockServiceClient = PowerMockito.mock(MetricServiceClient.class);
+    MonitoringDestination destination = new MonitoringDestination("test-project", mockServiceClient,
+                                                                  SchedulingConfig.DEFAULT,
+                                                                  CircuitBreakerConfig.DEFAULT, null, null, null);
+    MetricsMapping counter = MetricsMapping.builder("datafusion.googleapis.com/test_pipeline/records_out",
+                                                    RESOURCE_TYPE).setEmitIntervalSeconds(10L).build();
+    MetricsMapping rate = MetricsMapping.builder("datafusion.googleapis.com/test_pipeline/records_out_rate",
+                                                 RESOURCE_TYPE).setRate(true).setEmitIntervalSeconds(10L).build();
+    TimeSeriesMetadata counterSeries = createMetadata(counter, "pipeline-1");
+    TimeSeriesMetadata rateSeries = createMetadata(rate, "pipeline-1");
+
+    // Every write gets the values of the last 60 seconds, one per second
+    destination.flush(1000);
+    for (long now = 1060; now <= 1120; now += 60) {
+      for (int i = 0; i < 60; i++) {
+        destination.add(counterSeries, 1);
+        destination.add(rateSeries, 1);
+      }
+      destination.write(destination.flush(now), now - 59, now);
+    }
+
+    // The points start after the previous one, not one interval before their end
+    ArgumentCaptor<CreateTimeSeriesRequest> captor = ArgumentCaptor.forClass(CreateTimeSeriesRequest.class);
+    Mockito.verify(mockServiceClient, Mockito.times(2)).createTimeSeries(captor.capture());
+    long start = 1001;
+    for (CreateTimeSeriesRequest request : captor.getAllValues()) {
+      Assert.assertEquals(2, request.getTimeSeriesCount());
+      for (TimeSeries timeSeries : request.getTimeSeriesList()) {
+        Point point = timeSeries.getPoints(0);
+        if (timeSeries.getMetric().getType().equals(counter.getMetricType())) {
+          Assert.assertEquals(60, point.getValue().getInt64Value());
+          Assert.assertEquals(start, point.getInterval().getStartTime().getSeconds());
+          Assert.assertEquals(start + 59, point.getInterval().getEndTime().getSeconds());
+        } else {
+          Assert.assertEquals(1.0, point.getValue().getDoubleValue(), 0.0001);
+        }
+      }
+      start += 60;
+    }
+  }
+
+  private MetricsMapping createMapping(String metricType, Priority priority) {
+    return MetricsMapping.builder(metricType, RESOURCE_TYPE).setPriority(priority).build();
+  }
+
+  private TimeSeriesMetadata createMetadata(MetricsMapping mapping, String pipelineId) {
+    return new TimeSeriesMetadata(mapping.getMetricType(), RESOURCE_TYPE, Collections.emptyMap(),
+                                  ImmutableMap.of("pipeline_id", pipelineId), MetricType.COUNTER,
+                                  mapping.getAggregation(), mapping, "default");
+  }
+
+  private TimeSeriesMetadata createMetadata(MetricsMapping mapping, String pipelineId, String tenant) {
+    return new TimeSeriesMetadata(mapping.getMetricType(), RESOURCE_TYPE, Collections.emptyMap(),
+                                  ImmutableMap.of("pipeline_id", pipelineId, "namespace", tenant),
+                                  MetricType.COUNTER, mapping.getAggregation(), mapping, tenant);
+  }
+}
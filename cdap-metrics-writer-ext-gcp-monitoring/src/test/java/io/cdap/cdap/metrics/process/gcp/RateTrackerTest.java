@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.metrics.MetricType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Test for {@link RateTracker}
+ */
+public class RateTrackerTest {
+
+  private static final String METRIC_TYPE = "datafusion.googleapis.com/test_pipeline/records_out_rate";
+  private static final String RESOURCE_TYPE = "datafusion.googleapis.com/testPipeline";
+  private static final double DELTA = 1e-9;
+
+  @Test
+  public void testCounterRate() {
+    RateTracker tracker = new RateTracker();
+    TimeSeriesMetadata metadata = createMetadata(createMapping(null), MetricType.COUNTER, "test-pipeline-1");
+
+    // Increments are divided by the length of the write interval
+    Assert.assertEquals(2.0, tracker.getRate(metadata, Arrays.asList(100L, 20L), 1001, 1060), DELTA);
+    Assert.assertEquals(0.5, tracker.getRate(metadata, Collections.singletonList(15L), 1061, 1090), DELTA);
+    Assert.assertEquals(0, tracker.size());
+  }
+
+  @Test
+  public void testCumulativeRate() {
+    RateTracker tracker = new RateTracker();
+    TimeSeriesMetadata metadata = createMetadata(createMapping(300L), MetricType.GAUGE, "test-pipeline-1");
+
+    // The first reading only sets the base
+    Assert.assertNull(getRate(tracker, metadata, 1000L, 1000));
+    Assert.assertEquals(10.0, getRate(tracker, metadata, 1600L, 1060), DELTA);
+    Assert.assertNull(getRate(tracker, metadata, 1600L, 1060));
+    // Reset of the total, the rate is computed from zero
+    Assert.assertEquals(5.0, getRate(tracker, metadata, 300L, 1120), DELTA);
+    // No rate across a gap longer than the maximum gap, the reading becomes the new base
+    Assert.assertNull(getRate(tracker, metadata, 9000L, 1500));
+    Assert.assertEquals(1.0, getRate(tracker, metadata, 9060L, 1560), DELTA);
+  }
+
+  @Test
+  public void testStateExpiry() {
+    RateTracker tracker = new RateTracker();
+    TimeSeriesMetadata first = createMetadata(createMapping(100L), MetricType.GAUGE, "test-pipeline-1");
+    TimeSeriesMetadata second = createMetadata(createMapping(1000L), MetricType.GAUGE, "test-pipeline-2");
+    getRate(tracker, first, 1L, 1000);
+    getRate(tracker, second, 1L, 1000);
+    Assert.assertEquals(2, tracker.size());
+    tracker.expire(1100);
+    Assert.assertEquals(2, tracker.size());
+    tracker.expire(1101);
+    Assert.assertEquals(1, tracker.size());
+  }
+
+  private Double getRate(RateTracker tracker, TimeSeriesMetadata metadata, long value, long nowSeconds) {
+    return tracker.getRate(metadata, Collections.singletonList(value), nowSeconds - 59, nowSeconds);
+  }
+
+  private MetricsMapping createMapping(Long rateMaxGapSeconds) {
+    return MetricsMapping.builder(METRIC_TYPE, RESOURCE_TYPE).setRate(true).setRateMaxGapSeconds(rateMaxGapSeconds)
+      .build();
+  }
+
+  private TimeSeriesMetadata createMetadata(MetricsMapping mapping, MetricType metricKind, String pipelineId) {
+    return new TimeSeriesMetadata(METRIC_TYPE, RESOURCE_TYPE, Collections.emptyMap(),
+                                  ImmutableMap.of("pipeline_id", pipelineId), metricKind,
+                                  mapping.getAggregation(), mapping, null);
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiCallContext;
+import com.google.api.gax.rpc.InvalidArgumentException;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.monitoring.v3.stub.MetricServiceStub;
+import com.google.monitoring.v3.CreateTimeSeriesRequest;
+import com.google.monitoring.v3.ProjectName;
+import com.google.monitoring.v3.TimeSeries;
+import com.google.protobuf.Empty;
+import io.grpc.Status;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MetricServiceStub} that does not call Cloud Monitoring. It accepts every createTimeSeries request after
+ * an optional delay and counts the requests, points and distinct series it received, by project for the series,
+ * and sums the values of the points. When it counts distinct series, it rejects requests that hold two series of
+ * the same metric and resource with INVALID_ARGUMENT, as Cloud Monitoring does.
+ */
+public class RecordingMetricServiceStub extends MetricServiceStub {
+
+  private final long latencyMillis;
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong rejectedRequests = new AtomicLong();
+  private final AtomicLong points = new AtomicLong();
+  private final AtomicLong valueSum = new AtomicLong();
+  // Distinct series by the name of the project they were sent to
+  private final Map<String, Set<TimeSeries>> series = new ConcurrentHashMap<>();
+  private final boolean trackSeries;
+  private volatile boolean shutdown;
+
+  /**
+   * @param latencyMillis delay of every request
+   * @param trackSeries   whether to count distinct series, which keeps the metric and resource of every series
+   */
+  public RecordingMetricServiceStub(long latencyMillis, boolean trackSeries) {
+    this.latencyMillis = latencyMillis;
+    this.trackSeries = trackSeries;
+  }
+
+  @Override
+  public UnaryCallable<CreateTimeSeriesRequest, Empty> createTimeSeriesCallable() {
+    return new UnaryCallable<CreateTimeSeriesRequest, Empty>() {
+      @Override
+      public ApiFuture<Empty> futureCall(CreateTimeSeriesRequest request, ApiCallContext context) {
+        if (latencyMillis > 0) {
+          try {
+            TimeUnit.MILLISECONDS.sleep(latencyMillis);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ApiFutures.immediateFailedFuture(e);
+          }
+        }
+        requests.incrementAndGet();
+        if (trackSeries) {
+          Set<TimeSeries> requestSeries = new HashSet<>();
+          for (TimeSeries timeSeries : request.getTimeSeriesList()) {
+            if (!requestSeries.add(TimeSeries.newBuilder().setMetric(timeSeries.getMetric())
+                                     .setResource(timeSeries.getResource()).build())) {
+              rejectedRequests.incrementAndGet();
+              return ApiFutures.immediateFailedFuture(
+                new InvalidArgumentException("Duplicate series " + timeSeries.getMetric().getType() + " in request",
+                                             null, GrpcStatusCode.of(Status.Code.INVALID_ARGUMENT), false));
+            }
+          }
+          series.computeIfAbsent(request.getName(), name -> ConcurrentHashMap.newKeySet()).addAll(requestSeries);
+        }
+        points.addAndGet(request.getTimeSeriesCount());
+        for (TimeSeries timeSeries : request.getTimeSeriesList()) {
+          valueSum.addAndGet(timeSeries.getPoints(0).getValue().getInt64Value());
+        }
+        return ApiFutures.immediateFuture(Empty.getDefaultInstance());
+      }
+    };
+  }
+
+  public long getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * Returns the number of requests rejected because they held the same series twice.
+   */
+  public long getRejectedRequests() {
+    return rejectedRequests.get();
+  }
+
+  public long getPoints() {
+    return points.get();
+  }
+
+  /**
+   * Returns the sum of the int64 values of all the points received.
+   */
+  public long getValueSum() {
+    return valueSum.get();
+  }
+
+  /**
+   * Returns the number of distinct series received, or 0 if series are not tracked.
+   */
+  public int getDistinctSeries() {
+    return series.values().stream().mapToInt(Set::size).sum();
+  }
+
+  /**
+   * Returns the distinct series sent to the given project, with their metric and resource only, or an empty set if
+   * series are not tracked.
+   */
+  public Set<TimeSeries> getSeries(String projectName) {
+    return series.getOrDefault(ProjectName.of(projectName).toString(), Collections.emptySet());
+  }
+
+  @Override
+  public void close() {
+    shutdown = true;
+  }
+
+  @Override
+  public void shutdown() {
+    shutdown = true;
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return shutdown;
+  }
+
+  @Override
+  public void shutdownNow() {
+    shutdown = true;
+  }
+
+  @Override
+  public boolean awaitTermination(long duration, TimeUnit unit) {
+    return true;
+  }
+}
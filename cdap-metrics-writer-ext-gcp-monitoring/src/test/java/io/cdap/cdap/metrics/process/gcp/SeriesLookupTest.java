@@ -0,0 +1,66 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.common.collect.ImmutableList;
+import io.cdap.cdap.api.metrics.MetricType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Test for {@link SeriesLookup}
+ */
+public class SeriesLookupTest {
+
+  private static final String METRIC_TYPE = "datafusion.googleapis.com/test_pipeline/runs_completed_count";
+  private static final String RESOURCE_TYPE = "datafusion.googleapis.com/testPipeline";
+
+  @Test
+  public void testMetricKind() {
+    SeriesLookup undeclared = new SeriesLookup(MetricsMapping.builder(METRIC_TYPE, RESOURCE_TYPE).build());
+    Assert.assertEquals(MetricType.GAUGE, undeclared.resolveKind(MetricType.GAUGE));
+    // The first kind is kept
+    Assert.assertEquals(MetricType.GAUGE, undeclared.resolveKind(MetricType.COUNTER));
+
+    SeriesLookup declared = new SeriesLookup(MetricsMapping.builder(METRIC_TYPE, RESOURCE_TYPE)
+                                               .setMetricKind(MetricType.COUNTER).build());
+    Assert.assertEquals(MetricType.COUNTER, declared.resolveKind(MetricType.GAUGE));
+  }
+
+  @Test
+  public void testCopiedKeys() {
+    SeriesLookup lookup = new SeriesLookup(MetricsMapping.builder(METRIC_TYPE, RESOURCE_TYPE).build());
+    Map<String, String> tags = new HashMap<>();
+    tags.put("app", "app1");
+    TimeSeriesMetadata metadata = new TimeSeriesMetadata(METRIC_TYPE, RESOURCE_TYPE, Collections.emptyMap(),
+                                                         Collections.singletonMap("pipeline_id", "app1"),
+                                                         MetricType.COUNTER, null);
+    lookup.put(tags, Collections.emptyList(), metadata);
+    lookup.put(tags, ImmutableList.of("stage1"), metadata);
+    // The tags of the caller are reused for other values
+    tags.put("app", "app2");
+    Assert.assertNull(lookup.get(tags, Collections.emptyList()));
+    Assert.assertSame(metadata, lookup.get(Collections.singletonMap("app", "app1"), Collections.emptyList()));
+    Assert.assertSame(metadata, lookup.get(Collections.singletonMap("app", "app1"), ImmutableList.of("stage1")));
+    Assert.assertNull(lookup.get(Collections.singletonMap("app", "app1"), ImmutableList.of("stage2")));
+  }
+}
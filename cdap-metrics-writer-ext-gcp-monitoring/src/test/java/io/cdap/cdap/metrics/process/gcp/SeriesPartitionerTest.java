@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.metrics.MetricType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test for {@link SeriesPartitioner}
+ */
+public class SeriesPartitionerTest {
+
+  private static final String RESOURCE_TYPE = "datafusion.googleapis.com/testPipeline";
+
+  @Test
+  public void testSliceOwnership() {
+    MetricsMapping mapping = createMapping(null);
+    List<SeriesPartitioner> partitioners = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      partitioners.add(new SeriesPartitioner(i, 3, SeriesPartitioner.Mode.SLICE, SeriesPartitioner.DEFAULT_LABEL));
+    }
+    int[] owned = new int[3];
+    int moved = 0;
+    for (int series = 0; series < 3000; series++) {
+      TimeSeriesMetadata metadata = createMetadata(mapping, "pipeline-" + series);
+      int owners = 0;
+      for (int i = 0; i < partitioners.size(); i++) {
+        if (partitioners.get(i).owns(metadata)) {
+          Assert.assertTrue(partitioners.get(i).accepts(metadata));
+          owned[i]++;
+          owners++;
+        } else {
+          Assert.assertFalse(partitioners.get(i).accepts(metadata));
+        }
+      }
+      Assert.assertEquals(1, owners);
+      // A fourth instance only takes series from the others
+      int owner = SeriesPartitioner.getOwner(SeriesPartitioner.getKey(metadata), 3);
+      int newOwner = SeriesPartitioner.getOwner(SeriesPartitioner.getKey(metadata), 4);
+      if (newOwner != owner) {
+        Assert.assertEquals(3, newOwner);
+        moved++;
+      }
+    }
+    for (int count : owned) {
+      Assert.assertTrue("Unbalanced slices " + count, count > 850 && count < 1150);
+    }
+    Assert.assertTrue("Moved " + moved, moved > 600 && moved < 900);
+  }
+
+  @Test
+  public void testSliceWithRollups() {
+    RollupMapping rollup = new RollupMapping(null, "_total", null, Collections.emptyList(), Collections.emptyList());
+    MetricsMapping mapping = createMapping(Collections.singletonList(rollup));
+    SeriesPartitioner partitioner = new SeriesPartitioner(0, 2, SeriesPartitioner.Mode.SLICE,
+                                                          SeriesPartitioner.DEFAULT_LABEL);
+    Map<TimeSeriesMetadata, List<Long>> timeSeries = new HashMap<>();
+    for (int series = 0; series < 100; series++) {
+      TimeSeriesMetadata metadata = createMetadata(mapping, "pipeline-" + series);
+      // Values of all the series are needed by the roll-up
+      Assert.assertTrue(partitioner.accepts(metadata));
+      timeSeries.put(metadata, Collections.singletonList(1L));
+    }
+    Map<TimeSeriesMetadata, List<Long>> owned = partitioner.apply(timeSeries);
+    Assert.assertTrue(owned.size() > 30 && owned.size() < 70);
+    owned.keySet().forEach(metadata -> Assert.assertTrue(partitioner.owns(metadata)));
+  }
+
+  @Test
+  public void testSliceRollupOwner() {
+    RollupMapping rollup = new RollupMapping(null, "_total", null, Collections.emptyList(), Collections.emptyList());
+    MetricsMapping mapping = createMapping(Collections.singletonList(rollup));
+    List<SeriesPartitioner> partitioners = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      partitioners.add(new SeriesPartitioner(i, 2, SeriesPartitioner.Mode.SLICE, SeriesPartitioner.DEFAULT_LABEL));
+    }
+    // Each instance receives the values of a different pipeline, and its roll-up counts only those. This is why the
+    // writer only accepts slice mode when every instance receives all the values
+    TimeSeriesMetadata total = null;
+    List<Long> sent = new ArrayList<>();
+    for (int i = 0; i < partitioners.size(); i++) {
+      TimeSeriesMetadata metadata = createMetadata(mapping, "pipeline-" + i);
+      total = rollup.createMetadata(metadata, mapping);
+      Map<TimeSeriesMetadata, List<Long>> flushed = new HashMap<>();
+      flushed.put(metadata, Collections.singletonList(10L * (i + 1)));
+      flushed.put(total, Collections.singletonList(10L * (i + 1)));
+      List<Long> value = partitioners.get(i).apply(flushed).get(total);
+      if (value != null) {
+        sent.addAll(value);
+      }
+    }
+    // The roll-up is sent by its owner alone, with the values of that instance rather than the total of 30
+    Assert.assertEquals(1, sent.size());
+    int owner = partitioners.get(0).owns(total) ? 0 : 1;
+    Assert.assertEquals(Collections.singletonList(10L * (owner + 1)), sent);
+  }
+
+  @Test
+  public void testLabel() {
+    SeriesPartitioner partitioner = new SeriesPartitioner(2, 3, SeriesPartitioner.Mode.LABEL, "processor");
+    TimeSeriesMetadata metadata = createMetadata(createMapping(null), "pipeline-1");
+    Assert.assertTrue(partitioner.owns(metadata));
+    Map<TimeSeriesMetadata, List<Long>> result = partitioner.apply(
+      Collections.singletonMap(metadata, Collections.singletonList(5L)));
+    TimeSeriesMetadata labelled = result.keySet().iterator().next();
+    Assert.assertEquals(ImmutableMap.of("stage", "stage-1", "processor", "2"), labelled.getMetricLabels());
+    Assert.assertEquals(metadata.getResourceLabels(), labelled.getResourceLabels());
+    Assert.assertEquals(Collections.singletonList(5L), result.get(labelled));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidIndex() {
+    new SeriesPartitioner(3, 3, SeriesPartitioner.Mode.SLICE, SeriesPartitioner.DEFAULT_LABEL);
+  }
+
+  private MetricsMapping createMapping(List<RollupMapping> rollups) {
+    return MetricsMapping.builder("datafusion.googleapis.com/test_pipeline/records_out", RESOURCE_TYPE)
+      .setRollups(rollups).build();
+  }
+
+  private TimeSeriesMetadata createMetadata(MetricsMapping mapping, String pipelineId) {
+    return new TimeSeriesMetadata(mapping.getMetricType(), RESOURCE_TYPE, ImmutableMap.of("stage", "stage-1"),
+                                  ImmutableMap.of("pipeline_id", pipelineId), MetricType.COUNTER,
+                                  mapping.getAggregation(), mapping, null);
+  }
+}
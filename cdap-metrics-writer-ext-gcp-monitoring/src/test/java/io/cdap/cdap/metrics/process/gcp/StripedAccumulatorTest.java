@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Test for {@link StripedAccumulator}
+ */
+public class StripedAccumulatorTest {
+
+  @Test
+  public void testRollups() {
+    StripedAccumulator rollup = new StripedAccumulator();
+    StripedAccumulator accumulator = new StripedAccumulator(Collections.singletonList(rollup));
+    accumulator.add(3);
+    accumulator.add(4);
+    rollup.add(5);
+
+    long[] drained = new long[2];
+    accumulator.drain(drained);
+    Assert.assertArrayEquals(new long[] {7, 2}, drained);
+    rollup.drain(drained);
+    Assert.assertArrayEquals(new long[] {12, 3}, drained);
+    accumulator.drain(drained);
+    Assert.assertArrayEquals(new long[] {0, 0}, drained);
+  }
+
+  @Test(timeout = 60000)
+  public void testConcurrentDrains() throws Exception {
+    StripedAccumulator accumulator = new StripedAccumulator();
+    int threads = 8;
+    int valuesPerThread = 200000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          for (int j = 0; j < valuesPerThread; j++) {
+            accumulator.add(2);
+          }
+          return null;
+        }));
+      }
+      start.countDown();
+
+      // Every drain gets the sum and the count of the same values
+      long[] drained = new long[2];
+      long count = 0;
+      while (count < (long) threads * valuesPerThread) {
+        accumulator.drain(drained);
+        Assert.assertEquals(2 * drained[1], drained[0]);
+        count += drained[1];
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      accumulator.drain(drained);
+      Assert.assertArrayEquals(new long[] {0, 0}, drained);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testRaceOnOneCell() throws Exception {
+    // A single stripe, so that all the writers add to the same cell, drained by two threads like a flush and a writer
+    // reclaiming a closed accumulator
+    StripedAccumulator accumulator = new StripedAccumulator(Collections.emptyList(), 1);
+    long value = 0x100000001L;
+    int writers = 8;
+    int valuesPerThread = 200000;
+    ExecutorService executor = Executors.newFixedThreadPool(writers + 2);
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicBoolean done = new AtomicBoolean();
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < writers; i++) {
+        futures.add(executor.submit(() -> {
+          start.await();
+          for (int j = 0; j < valuesPerThread; j++) {
+            accumulator.add(value);
+          }
+          return null;
+        }));
+      }
+      List<Future<Long>> drainers = new ArrayList<>();
+      for (int i = 0; i < 2; i++) {
+        drainers.add(executor.submit(() -> {
+          start.await();
+          long[] drained = new long[2];
+          long count = 0;
+          while (!done.get()) {
+            accumulator.drain(drained);
+            // Every drain gets whole values, with both their sum and their count
+            Assert.assertEquals(value * drained[1], drained[0]);
+            count += drained[1];
+          }
+          return count;
+        }));
+      }
+      start.countDown();
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      done.set(true);
+
+      long[] drained = new long[2];
+      accumulator.drain(drained);
+      Assert.assertEquals(value * drained[1], drained[0]);
+      long count = drained[1];
+      for (Future<Long> drainer : drainers) {
+        count += drainer.get();
+      }
+      Assert.assertEquals((long) writers * valuesPerThread, count);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
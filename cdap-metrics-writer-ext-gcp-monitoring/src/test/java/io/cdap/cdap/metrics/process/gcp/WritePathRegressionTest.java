@@ -0,0 +1,233 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import io.cdap.cdap.api.metrics.MetricType;
+import io.cdap.cdap.api.metrics.MetricValue;
+import io.cdap.cdap.api.metrics.MetricValues;
+import io.cdap.cdap.api.metrics.MetricsContext;
+import io.cdap.cdap.api.metrics.MetricsWriterContext;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Guards the write path against regressions in allocation and latency. Each scenario writes representative batches
+ * through {@link CloudMonitoringWriter} to a {@link RecordingMetricServiceStub}, then checks the bytes allocated per
+ * {@link MetricValue} against the thresholds of write_path_thresholds.properties. A threshold can be overridden with
+ * a system property of the same name.
+ * <p>
+ * The 90th percentile latency of a write, which includes the flush, is measured over several rounds and the lowest
+ * one is checked against its budget. It can be skipped on a host known to be overloaded with
+ * {@code -Dwrite.path.check.latency=false}.
+ * <p>
+ * The thresholds are set 15% above the values measured on an idle host, see write_path_thresholds.properties for how
+ * to measure them again. They are only changed in a commit of their own, never along with a change of the write
+ * path, so that a regression cannot be hidden by raising them.
+ */
+public class WritePathRegressionTest {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WritePathRegressionTest.class);
+  private static final String CONFIG_PATH = "src/test/resources/write_path_config.json";
+  private static final int WARMUP_WRITES = 50;
+  private static final int MEASURED_WRITES = 50;
+  private static final int MEASURED_ROUNDS = 3;
+  private static final String CHECK_LATENCY = "write.path.check.latency";
+
+  private static Properties thresholds;
+  private static com.sun.management.ThreadMXBean threadBean;
+
+  private RecordingMetricServiceStub stub;
+  private CloudMonitoringWriter writer;
+
+  @BeforeClass
+  public static void loadThresholds() throws IOException {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean
+      && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+      threadBean = (com.sun.management.ThreadMXBean) bean;
+      threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+    thresholds = new Properties();
+    try (InputStream input = WritePathRegressionTest.class.getClassLoader()
+      .getResourceAsStream("write_path_thresholds.properties")) {
+      thresholds.load(input);
+    }
+  }
+
+  @Before
+  public void createWriter() {
+    Assume.assumeNotNull(threadBean);
+    stub = new RecordingMetricServiceStub(0, false);
+    writer = new CloudMonitoringWriter() {
+      @Override
+      MetricServiceClient createMetricServiceClient(String endPoint) {
+        return MetricServiceClient.create(stub);
+      }
+    };
+    Map<String, String> properties = new HashMap<>();
+    properties.put("config.file.path", CONFIG_PATH);
+    properties.put("project", "test-p");
+    properties.put("org_id", "1000");
+    properties.put("location", "us-east1");
+    properties.put("cluster_id", "cluster");
+    properties.put("instance_id", "instance");
+    properties.put("write.frequency.seconds", "60");
+    writer.initialize(new MetricsWriterContext() {
+      @Override
+      public Map<String, String> getProperties() {
+        return properties;
+      }
+
+      @Override
+      public MetricsContext getMetricsContext() {
+        return null;
+      }
+
+      @Override
+      public String getPlatformVersion() {
+        return "6.9.1";
+      }
+    });
+  }
+
+  @After
+  public void closeWriter() {
+    if (writer != null) {
+      writer.close();
+    }
+  }
+
+  /**
+   * Most values do not match any mapping, as with the default CDAP metrics.
+   */
+  @Test
+  public void testUnmappedHeavy() {
+    List<MetricValues> batch = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      Map<String, String> tags = createTags(i % 20, i % 5);
+      List<MetricValue> metrics = new ArrayList<>();
+      for (int j = 0; j < 19; j++) {
+        metrics.add(new MetricValue("system.unmapped." + j, MetricType.COUNTER, j));
+      }
+      metrics.add(new MetricValue("regression.mapped", MetricType.COUNTER, 1));
+      batch.add(new MetricValues(tags, 1000, metrics));
+    }
+    run("unmapped-heavy", batch);
+  }
+
+  /**
+   * Every value is mapped to a different series.
+   */
+  @Test
+  public void testHighCardinality() {
+    List<MetricValues> batch = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      batch.add(new MetricValues(createTags(i, i % 3), 1000, Arrays.asList(
+        new MetricValue("regression.mapped", MetricType.COUNTER, i),
+        new MetricValue("regression.mapped", MetricType.GAUGE, i))));
+    }
+    run("high-cardinality", batch);
+  }
+
+  /**
+   * Values are mapped to series with many labels, some of them computed by templates and transforms.
+   */
+  @Test
+  public void testManyLabels() {
+    List<MetricValues> batch = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      batch.add(new MetricValues(createTags(i % 50, i % 10), 1000, Arrays.asList(
+        new MetricValue("regression.labels", MetricType.COUNTER, i),
+        new MetricValue("system.unmapped", MetricType.COUNTER, i))));
+    }
+    run("many-labels", batch);
+  }
+
+  private void run(String scenario, List<MetricValues> batch) {
+    long values = batch.stream().mapToLong(metricValues -> metricValues.getMetrics().size()).sum();
+    for (int i = 0; i < WARMUP_WRITES; i++) {
+      writer.write(batch);
+    }
+    long threadId = Thread.currentThread().getId();
+    long[] latencies = new long[MEASURED_WRITES];
+    long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+    // The lowest p90 of the rounds, so that a pause of the host during one round does not fail the check
+    double p90Millis = Double.MAX_VALUE;
+    for (int round = 0; round < MEASURED_ROUNDS; round++) {
+      for (int i = 0; i < MEASURED_WRITES; i++) {
+        long startNanos = System.nanoTime();
+        writer.write(batch);
+        latencies[i] = System.nanoTime() - startNanos;
+      }
+      Arrays.sort(latencies);
+      p90Millis = Math.min(p90Millis, latencies[(int) Math.ceil(MEASURED_WRITES * 0.9) - 1] / 1e6);
+    }
+    long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+    double bytesPerValue = (double) allocated / (values * MEASURED_WRITES * MEASURED_ROUNDS);
+    LOG.info("Scenario {}: {} bytes per value, p90 write latency {} ms, {} points sent", scenario,
+             String.format("%.1f", bytesPerValue), String.format("%.3f", p90Millis), stub.getPoints());
+
+    Assert.assertTrue("No point was sent", stub.getPoints() > 0);
+    double maxBytesPerValue = getThreshold(scenario + ".bytes.per.value");
+    Assert.assertTrue(String.format("Scenario %s allocates %.1f bytes per value, more than the %.1f threshold",
+                                    scenario, bytesPerValue, maxBytesPerValue), bytesPerValue <= maxBytesPerValue);
+    if (Boolean.parseBoolean(System.getProperty(CHECK_LATENCY, "true"))) {
+      double maxMillis = getThreshold(scenario + ".write.p90.millis");
+      Assert.assertTrue(String.format("Scenario %s has a p90 write latency of %.3f ms, more than the %.3f ms budget",
+                                      scenario, p90Millis, maxMillis), p90Millis <= maxMillis);
+    }
+  }
+
+  private static double getThreshold(String name) {
+    String value = System.getProperty(name, thresholds.getProperty(name));
+    Assert.assertNotNull("Missing threshold " + name, value);
+    return Double.parseDouble(value);
+  }
+
+  private static Map<String, String> createTags(int app, int stage) {
+    Map<String, String> tags = new HashMap<>();
+    tags.put("ns", "default");
+    tags.put("app", "pipeline-" + app);
+    tags.put("stg", "stage-" + stage);
+    tags.put("prg", "DataPipelineWorkflow");
+    tags.put("prt", "Workflow");
+    tags.put("run", "7c3a5e2e-3f4b-11ee-be56-0242ac120002");
+    tags.put("hnd", "handler");
+    tags.put("mtd", "GET");
+    tags.put("cmp", "appfabric");
+    tags.put("ver", "6.9.1");
+    return tags;
+  }
+}
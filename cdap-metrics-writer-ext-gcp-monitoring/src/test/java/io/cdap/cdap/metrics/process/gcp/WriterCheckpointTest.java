@@ -0,0 +1,176 @@
+/*
+ * Copyright © 2026 Cask Data, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package io.cdap.cdap.metrics.process.gcp;
+
+import com.google.cloud.monitoring.v3.MetricServiceClient;
+import com.google.common.collect.ImmutableMap;
+import io.cdap.cdap.api.metrics.MetricType;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test for {@link WriterCheckpoint}
+ */
+public class WriterCheckpointTest {
+
+  private static final String RESOURCE_TYPE = "datafusion.googleapis.com/testPipeline";
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    Map<String, MetricsMapping> mappings = createMappings();
+    WriterCheckpoint checkpoint = new WriterCheckpoint(tempFolder.getRoot().toPath().resolve("checkpoint"),
+                                                       mappings);
+    Assert.assertNull(checkpoint.readHeader());
+    Assert.assertTrue(checkpoint.readSeries().isEmpty());
+
+    Map<String, List<WriterCheckpoint.SeriesState>> states = createStates(mappings);
+    checkpoint.write(1060L, states, 1061000L);
+    WriterCheckpoint.Header header = checkpoint.readHeader();
+    Assert.assertEquals(1060L, header.getLastEndTime());
+    Assert.assertEquals(1061000L, header.getCheckpointTimeMillis());
+    Map<String, List<WriterCheckpoint.SeriesState>> restored = checkpoint.readSeries();
+    Assert.assertEquals(states.keySet(), restored.keySet());
+    for (String project : states.keySet()) {
+      assertSameStates(states.get(project), restored.get(project));
+    }
+
+    // Series of mappings that are no longer configured are dropped
+    Map<String, MetricsMapping> remaining = Collections.singletonMap("stage.gauge", mappings.get("stage.gauge"));
+    restored = new WriterCheckpoint(checkpoint.getPath(), remaining).readSeries();
+    Assert.assertEquals(2, restored.get("project-1").size());
+    Assert.assertTrue(restored.get("project-2").isEmpty());
+  }
+
+  @Test
+  public void testWriteHeader() throws Exception {
+    Map<String, MetricsMapping> mappings = createMappings();
+    WriterCheckpoint checkpoint = new WriterCheckpoint(tempFolder.getRoot().toPath().resolve("checkpoint"),
+                                                       mappings);
+    // Without a checkpoint, one without series state is written
+    checkpoint.writeHeader(1000L, 1001000L);
+    Assert.assertEquals(1000L, checkpoint.readHeader().getLastEndTime());
+    Assert.assertTrue(checkpoint.readSeries().isEmpty());
+
+    // The header is updated in place and the series state is kept
+    Map<String, List<WriterCheckpoint.SeriesState>> states = createStates(mappings);
+    checkpoint.write(1060L, states, 1061000L);
+    checkpoint.writeHeader(1120L, 1121000L);
+    WriterCheckpoint.Header header = checkpoint.readHeader();
+    Assert.assertEquals(1120L, header.getLastEndTime());
+    Assert.assertEquals(1121000L, header.getCheckpointTimeMillis());
+    Map<String, List<WriterCheckpoint.SeriesState>> restored = checkpoint.readSeries();
+    for (String project : states.keySet()) {
+      assertSameStates(states.get(project), restored.get(project));
+    }
+
+    // A file that is not a checkpoint is replaced
+    Files.write(checkpoint.getPath(), "not a checkpoint file".getBytes(StandardCharsets.UTF_8));
+    checkpoint.writeHeader(1180L, 1181000L);
+    Assert.assertEquals(1180L, checkpoint.readHeader().getLastEndTime());
+  }
+
+  @Test
+  public void testRestoreToDestination() throws Exception {
+    Map<String, MetricsMapping> mappings = createMappings();
+    List<WriterCheckpoint.SeriesState> states = createStates(mappings).get("project-1");
+    MonitoringDestination destination = new MonitoringDestination(
+      "project-1", MetricServiceClient.create(new RecordingMetricServiceStub(0, false)), SchedulingConfig.DEFAULT,
+      CircuitBreakerConfig.DEFAULT, null, null, null);
+    destination.restore(states);
+    assertSameStates(states, destination.getState());
+  }
+
+  @Test(expected = IOException.class)
+  public void testInvalidFile() throws Exception {
+    Path file = tempFolder.newFile().toPath();
+    Files.write(file, "not a checkpoint file".getBytes(StandardCharsets.UTF_8));
+    new WriterCheckpoint(file, createMappings()).readHeader();
+  }
+
+  private Map<String, MetricsMapping> createMappings() {
+    Map<String, MetricsMapping> mappings = new HashMap<>();
+    mappings.put("stage.gauge", MetricsMapping.builder("datafusion.googleapis.com/test_pipeline/stage_gauge",
+                                                       RESOURCE_TYPE)
+      .setAggregation(AggregationType.MEAN).setEmitOnChangeOnly(true).setPriority(Priority.HIGH).build());
+    mappings.put("stage.total", MetricsMapping.builder("datafusion.googleapis.com/test_pipeline/stage_rate",
+                                                       RESOURCE_TYPE).setRate(true).build());
+    return mappings;
+  }
+
+  private Map<String, List<WriterCheckpoint.SeriesState>> createStates(Map<String, MetricsMapping> mappings) {
+    Map<String, List<WriterCheckpoint.SeriesState>> states = new HashMap<>();
+    MetricsMapping gauge = mappings.get("stage.gauge");
+    MetricsMapping total = mappings.get("stage.total");
+    states.put("project-1", Arrays.asList(
+      new WriterCheckpoint.SeriesState(WriterCheckpoint.SeriesState.Kind.EMITTED,
+                                       createMetadata(gauge, "pipeline-1", null), -5L, 1000L, 1600L),
+      new WriterCheckpoint.SeriesState(WriterCheckpoint.SeriesState.Kind.EMITTED,
+                                       createMetadata(gauge, "pipeline-2", "tenant-a"), 7L, 1030L, 1630L),
+      new WriterCheckpoint.SeriesState(WriterCheckpoint.SeriesState.Kind.RATE,
+                                       createMetadata(total, "pipeline-1", null), 1L << 40, 1060L, 1660L)));
+    states.put("project-2", Collections.singletonList(
+      new WriterCheckpoint.SeriesState(WriterCheckpoint.SeriesState.Kind.RATE,
+                                       createMetadata(total, "pipeline-3", "tenant-b"), 42L, 1060L, 1660L)));
+    return states;
+  }
+
+  private TimeSeriesMetadata createMetadata(MetricsMapping mapping, String pipelineId, String tenant) {
+    return new TimeSeriesMetadata(mapping.getMetricType(), RESOURCE_TYPE, ImmutableMap.of("stage", "stage-1"),
+                                  ImmutableMap.of("pipeline_id", pipelineId), MetricType.GAUGE,
+                                  mapping.getAggregation(), mapping, tenant);
+  }
+
+  private void assertSameStates(List<WriterCheckpoint.SeriesState> expected,
+                                List<WriterCheckpoint.SeriesState> actual) {
+    Comparator<WriterCheckpoint.SeriesState> order = Comparator.comparing(WriterCheckpoint.SeriesState::toString);
+    List<WriterCheckpoint.SeriesState> sortedExpected = new ArrayList<>(expected);
+    sortedExpected.sort(order);
+    List<WriterCheckpoint.SeriesState> sortedActual = new ArrayList<>(actual);
+    sortedActual.sort(order);
+    Assert.assertEquals(sortedExpected.size(), sortedActual.size());
+    for (int i = 0; i < sortedExpected.size(); i++) {
+      WriterCheckpoint.SeriesState state = sortedExpected.get(i);
+      WriterCheckpoint.SeriesState other = sortedActual.get(i);
+      Assert.assertEquals(state.getKind(), other.getKind());
+      Assert.assertEquals(state.getMetadata(), other.getMetadata());
+      Assert.assertEquals(state.getMetadata().getMetricKind(), other.getMetadata().getMetricKind());
+      Assert.assertEquals(state.getMetadata().getAggregation(), other.getMetadata().getAggregation());
+      Assert.assertEquals(state.getMetadata().getTenant(), other.getMetadata().getTenant());
+      Assert.assertSame(state.getMetadata().getMapping(), other.getMetadata().getMapping());
+      Assert.assertEquals(state.getValue(), other.getValue());
+      Assert.assertEquals(state.getTimeSeconds(), other.getTimeSeconds());
+      Assert.assertEquals(state.getExpirySeconds(), other.getExpirySeconds());
+    }
+  }
+}